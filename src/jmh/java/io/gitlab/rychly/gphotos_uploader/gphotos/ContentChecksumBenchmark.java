@@ -0,0 +1,59 @@
+package io.gitlab.rychly.gphotos_uploader.gphotos;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computation of content checksums of synthetic media files of various sizes by {@link MediaFile#setContentChecksum()}
+ * by the hashing strategies and the checksum algorithms (the files are read from the page cache after the first iteration).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentChecksumBenchmark {
+    @Param({"65536", "4194304", "67108864"})
+    private int fileSize;
+
+    @Param({"STREAM", "LARGE_BUFFER", "DIRECT_BUFFER", "MEMORY_MAPPED"})
+    private ContentHasher.Strategy strategy;
+
+    @Param({"SHA-1", "CRC32"})
+    private String algorithm;
+
+    private MediaFile mediaFile;
+
+    @Setup
+    public void setUp() throws IOException, NoSuchAlgorithmException {
+        final File file = File.createTempFile(ContentChecksumBenchmark.class.getSimpleName(), ".jpg");
+        final byte[] content = new byte[fileSize];
+        new Random(fileSize).nextBytes(content);
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.write(content);
+        }
+        mediaFile = new MediaFile(file);
+        MediaFile.setMediaFileIndex(null);
+        MediaFile.setChecksumAlgorithm(algorithm);
+        MediaFile.setHashingStrategy(strategy);
+    }
+
+    @TearDown
+    public void tearDown() throws NoSuchAlgorithmException {
+        mediaFile.delete();
+        MediaFile.setChecksumAlgorithm(MediaFile.CHECKSUM_ALGORITHM);
+    }
+
+    @Benchmark
+    public byte[] setContentChecksum() throws IOException, NoSuchAlgorithmException {
+        mediaFile.setContentChecksum();
+        return mediaFile.getContentChecksum();
+    }
+}
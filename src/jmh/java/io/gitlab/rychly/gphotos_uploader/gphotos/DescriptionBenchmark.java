@@ -0,0 +1,63 @@
+package io.gitlab.rychly.gphotos_uploader.gphotos;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting of the checksum strings and the descriptions of media files (with their checksums already computed)
+ * and parsing of the descriptions of media items.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DescriptionBenchmark {
+    private MediaFile mediaFile;
+    private String description;
+    private final MediaItemDescription parsedDescription = new MediaItemDescription();
+
+    @Setup
+    public void setUp() throws IOException, NoSuchAlgorithmException {
+        mediaFile = new MediaFile(File.createTempFile(DescriptionBenchmark.class.getSimpleName(), ".jpg"));
+        MediaFile.setMediaFileIndex(null);
+        mediaFile.setContentChecksum();
+        description = mediaFile.generateDescription();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mediaFile.delete();
+    }
+
+    @Benchmark
+    public String getContentChecksumString() throws IOException, NoSuchAlgorithmException {
+        return mediaFile.getContentChecksumString();
+    }
+
+    @Benchmark
+    public String generateDescription() throws IOException, NoSuchAlgorithmException {
+        return mediaFile.generateDescription();
+    }
+
+    @Benchmark
+    public String extractChecksumStringFromDescription() {
+        return MediaFile.extractChecksumStringFromDescription(description);
+    }
+
+    @Benchmark
+    public ZonedDateTime extractLastModifiedDateFromDescription() {
+        return MediaFile.extractLastModifiedDateFromDescription(description);
+    }
+
+    @Benchmark
+    public boolean isChecksumMatching() throws IOException, NoSuchAlgorithmException {
+        return parsedDescription.parse(description).isChecksumMatching(mediaFile);
+    }
+}
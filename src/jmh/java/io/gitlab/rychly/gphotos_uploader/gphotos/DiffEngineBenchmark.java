@@ -0,0 +1,95 @@
+package io.gitlab.rychly.gphotos_uploader.gphotos;
+
+import com.google.photos.types.proto.MediaItem;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comparison of the diff engines on a synthetic album of media items of which most match media files of a directory.
+ * The {@link DiffEngine#HASH} engine gets the media items in their listing order, the {@link DiffEngine#MERGE} engine gets them
+ * either sorted (as from the album media item index) or in the listing order, so they have to be sorted first.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiffEngineBenchmark {
+    @Param({"1000", "20000"})
+    private int mediaFilesCount;
+
+    @Param({"0.9"})
+    private double matchingRatio;
+
+    private List<MediaFile> mediaFiles;
+    private List<MediaItem> listedMediaItems;
+    private List<MediaItem> sortedMediaItems;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(mediaFilesCount);
+        final File directory = new File("benchmark");
+        mediaFiles = new ArrayList<>(mediaFilesCount);
+        listedMediaItems = new ArrayList<>(mediaFilesCount);
+        for (int i = 0; i < mediaFilesCount; i++) {
+            final String fileName = String.format("IMG_%06d.jpg", i);
+            mediaFiles.add(new MediaFile(directory, fileName));
+            // the media items either match the files, or they have names of other (removed) files
+            final String mediaItemFileName = random.nextDouble() < matchingRatio ? fileName : String.format("IMG_%06d_removed.jpg", i);
+            listedMediaItems.add(MediaItem.newBuilder()
+                    .setId("mediaItem" + i).setProductUrl("https://photos.google.com/lr/photo/" + i)
+                    .setDescription("file:" + mediaItemFileName).setFilename(mediaItemFileName).build());
+        }
+        Collections.shuffle(listedMediaItems, random);
+        sortedMediaItems = new ArrayList<>(listedMediaItems);
+        sortedMediaItems.sort(DiffEngine.MEDIA_ITEM_ORDER);
+    }
+
+    @Benchmark
+    public Collection<MediaFile> hash(Blackhole blackhole) throws IOException, NoSuchAlgorithmException {
+        return DiffEngine.HASH.diff(mediaFiles, listedMediaItems, new CountingVisitor(blackhole));
+    }
+
+    @Benchmark
+    public Collection<MediaFile> mergeSorted(Blackhole blackhole) throws IOException, NoSuchAlgorithmException {
+        return DiffEngine.MERGE.diff(mediaFiles, sortedMediaItems, new CountingVisitor(blackhole));
+    }
+
+    @Benchmark
+    public Collection<MediaFile> mergeListed(Blackhole blackhole) throws IOException, NoSuchAlgorithmException {
+        final List<MediaItem> mediaItems = new ArrayList<>(listedMediaItems);
+        mediaItems.sort(DiffEngine.MEDIA_ITEM_ORDER);
+        return DiffEngine.MERGE.diff(mediaFiles, mediaItems, new CountingVisitor(blackhole));
+    }
+
+    private static class CountingVisitor implements GPhotos.MediaItemVisitor {
+        private final Blackhole blackhole;
+
+        private CountingVisitor(@NotNull Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void visitMatching(@NotNull MediaItem mediaItem, @NotNull MediaFile mediaFile) {
+            blackhole.consume(mediaFile);
+        }
+
+        @Override
+        public void visitNonMatching(@NotNull MediaItem mediaItem) {
+            blackhole.consume(mediaItem);
+        }
+
+        @Override
+        public void visitMissing(@NotNull MediaFile mediaFile) {
+            blackhole.consume(mediaFile);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.gitlab.rychly.gphotos_uploader.gphotos;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Scanning of a synthetic media directory by {@link MediaFile#fileFinder(File)} (the extension lookup)
+ * and by {@link MediaFile#fileFinder(File, String)} (the regular expression), where a fifth of the files are not media files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileFinderBenchmark {
+    private static final String[] EXTENSIONS = {"jpg", "JPG", "cr2", "mp4", "txt"};
+
+    @Param({"100", "10000"})
+    private int filesCount;
+
+    private File directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory(FileFinderBenchmark.class.getSimpleName()).toFile();
+        for (int i = 0; i < filesCount; i++) {
+            Files.createFile(new File(directory, String.format("IMG_%06d.%s", i, EXTENSIONS[i % EXTENSIONS.length])).toPath());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (final Stream<java.nio.file.Path> paths = Files.walk(directory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(java.nio.file.Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public long fileFinder() throws IOException {
+        return MediaFile.fileFinder(directory).count();
+    }
+
+    @Benchmark
+    public long fileFinderByRegularExpression() throws IOException {
+        return MediaFile.fileFinder(directory, MediaFile.MEDIA_FILENAME_REGEXP).count();
+    }
+}
@@ -0,0 +1,152 @@
+package io.gitlab.rychly.gphotos_uploader.loadtest;
+
+import com.google.api.gax.core.FixedCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.UnaryCallSettings;
+import com.google.auth.Credentials;
+import com.google.photos.library.v1.PhotosLibraryClient;
+import com.google.photos.library.v1.PhotosLibrarySettings;
+import io.gitlab.rychly.gphotos_uploader.gphotos.ClientFactory;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-process fake of the Google Photos API, i.e., the gRPC Photos Library service on an in-process transport
+ * and the upload service on a local HTTP endpoint, creating the clients connected to the fake without any authorization.
+ * The upload endpoint must be set as the endpoint of the upload sessions of the clients.
+ */
+public class FakePhotosLibraryServer implements ClientFactory, AutoCloseable {
+    private static final Credentials NO_CREDENTIALS = new Credentials() {
+        @Override
+        public String getAuthenticationType() {
+            return "none";
+        }
+
+        @Override
+        public Map<String, List<String>> getRequestMetadata(URI uri) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public boolean hasRequestMetadata() {
+            return false;
+        }
+
+        @Override
+        public boolean hasRequestMetadataOnly() {
+            return true;
+        }
+
+        @Override
+        public void refresh() {
+        }
+    };
+
+    private final String serverName = InProcessServerBuilder.generateName();
+    private final FakeUploadServer uploadServer;
+    private final FakePhotosLibraryService photosLibraryService;
+    private final Server server;
+    private final List<ManagedChannel> channels = Collections.synchronizedList(new ArrayList<>());
+    private volatile int uploadAttempts = 0;
+
+    /**
+     * Start a new fake with an empty photos library.
+     *
+     * @param faultInjector the injector of the latency, errors, and quota of the requests
+     * @throws IOException cannot start the servers
+     */
+    public FakePhotosLibraryServer(@NotNull FaultInjector faultInjector) throws IOException {
+        uploadServer = new FakeUploadServer(faultInjector);
+        photosLibraryService = new FakePhotosLibraryService(faultInjector, uploadServer);
+        server = InProcessServerBuilder.forName(serverName).addService(photosLibraryService).build().start();
+    }
+
+    /**
+     * Get the URL of the upload endpoint.
+     *
+     * @return the URL
+     */
+    @NotNull
+    public String getUploadEndpoint() {
+        return uploadServer.getUploadEndpoint();
+    }
+
+    /**
+     * Get the upload service.
+     *
+     * @return the upload service
+     */
+    @NotNull
+    public FakeUploadServer getUploadServer() {
+        return uploadServer;
+    }
+
+    /**
+     * Get the Photos Library service.
+     *
+     * @return the Photos Library service
+     */
+    @NotNull
+    public FakePhotosLibraryService getPhotosLibraryService() {
+        return photosLibraryService;
+    }
+
+    /**
+     * Set the maximal number of attempts of each upload request of the clients created since, i.e., of the retries of failed chunks
+     * by the clients themselves (e.g., to fail the uploads interrupted by the fake instead of retrying them).
+     *
+     * @param uploadAttempts the number of attempts or zero for the default retries
+     */
+    public void setUploadAttempts(int uploadAttempts) {
+        this.uploadAttempts = uploadAttempts;
+    }
+
+    /**
+     * Create a new client connected to the fake, the credentials are ignored.
+     *
+     * @param credentialsPath               the ignored key file
+     * @param selectedScopes                the ignored scopes
+     * @param credentialsDataStoreDirectory the ignored credentials data storage directory
+     * @return the client
+     * @throws IOException cannot create the client
+     */
+    @NotNull
+    @Override
+    public PhotosLibraryClient createClient(@NotNull String credentialsPath, @NotNull List<String> selectedScopes, @NotNull File credentialsDataStoreDirectory)
+            throws IOException {
+        final ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+        channels.add(channel);
+        final PhotosLibrarySettings.Builder photosLibrarySettingsBuilder = PhotosLibrarySettings.newBuilder()
+                .setCredentialsProvider(FixedCredentialsProvider.create(NO_CREDENTIALS))
+                .setTransportChannelProvider(FixedTransportChannelProvider.create(GrpcTransportChannel.create(channel)));
+        if (uploadAttempts > 0) {
+            final UnaryCallSettings.Builder<?, ?> uploadSettingsBuilder = photosLibrarySettingsBuilder.uploadMediaItemSettingsBuilder();
+            uploadSettingsBuilder.setRetrySettings(uploadSettingsBuilder.getRetrySettings().toBuilder().setMaxAttempts(uploadAttempts).build());
+        }
+        return PhotosLibraryClient.initialize(photosLibrarySettingsBuilder.build());
+    }
+
+    /**
+     * Disconnect the clients and stop the servers.
+     */
+    @Override
+    public void close() {
+        synchronized (channels) {
+            channels.forEach(ManagedChannel::shutdownNow);
+        }
+        server.shutdownNow();
+        uploadServer.close();
+    }
+}
@@ -0,0 +1,362 @@
+package io.gitlab.rychly.gphotos_uploader.loadtest;
+
+import com.google.photos.library.v1.proto.*;
+import com.google.photos.types.proto.Album;
+import com.google.photos.types.proto.MediaItem;
+import com.google.photos.types.proto.ShareInfo;
+import com.google.rpc.Code;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.jetbrains.annotations.NotNull;
+
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory stand-in of the gRPC Photos Library service implementing the methods used by the uploader,
+ * i.e., the albums, the shared albums, the listing of media items of the library, the searching of media items in albums,
+ * and the creation of media items of uploaded contents.
+ * Each request is delayed, failed, or rejected by a given fault injector before it is processed.
+ */
+public class FakePhotosLibraryService extends PhotosLibraryGrpc.PhotosLibraryImplBase {
+    private static final int ALBUMS_PAGE_SIZE = 20;
+    private static final int ALBUMS_MAX_PAGE_SIZE = 50;
+    private static final int MEDIA_ITEMS_PAGE_SIZE = 25;
+    private static final int MEDIA_ITEMS_MAX_PAGE_SIZE = 100;
+    private static final int BATCH_LIMIT = 50;
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+
+    private final FaultInjector faultInjector;
+    private final FakeUploadServer uploadServer;
+    private final Map<String, Album> albums = new LinkedHashMap<>();
+    private final Map<String, List<String>> albumMediaItemIds = new HashMap<>();
+    private final Map<String, MediaItem> mediaItems = new LinkedHashMap<>();
+    private final Map<String, String> shareTokenAlbumIds = new HashMap<>();
+    private long lastId = 0;
+
+    /**
+     * Create a new empty photos library.
+     *
+     * @param faultInjector the injector of the latency, errors, and quota of the requests
+     * @param uploadServer  the upload server resolving the upload tokens of new media items
+     */
+    public FakePhotosLibraryService(@NotNull FaultInjector faultInjector, @NotNull FakeUploadServer uploadServer) {
+        this.faultInjector = faultInjector;
+        this.uploadServer = uploadServer;
+    }
+
+    /**
+     * Get the number of media items created so far.
+     *
+     * @return the number of media items
+     */
+    public synchronized int getMediaItemsCount() {
+        return mediaItems.size();
+    }
+
+    @Override
+    public void listAlbums(ListAlbumsRequest request, StreamObserver<ListAlbumsResponse> responseObserver) {
+        if (!isFaulty(responseObserver)) {
+            final List<Album> albumList;
+            synchronized (this) {
+                albumList = new ArrayList<>(albums.values());
+            }
+            respondPage(responseObserver, albumList, request.getPageToken(), pageSize(request.getPageSize(), ALBUMS_PAGE_SIZE, ALBUMS_MAX_PAGE_SIZE),
+                    (page, nextPageToken) -> ListAlbumsResponse.newBuilder().addAllAlbums(page).setNextPageToken(nextPageToken).build());
+        }
+    }
+
+    @Override
+    public void listSharedAlbums(ListSharedAlbumsRequest request, StreamObserver<ListSharedAlbumsResponse> responseObserver) {
+        if (!isFaulty(responseObserver)) {
+            final List<Album> albumList = new ArrayList<>();
+            synchronized (this) {
+                for (Album album : albums.values()) {
+                    if (album.hasShareInfo()) {
+                        albumList.add(album);
+                    }
+                }
+            }
+            respondPage(responseObserver, albumList, request.getPageToken(), pageSize(request.getPageSize(), ALBUMS_PAGE_SIZE, ALBUMS_MAX_PAGE_SIZE),
+                    (page, nextPageToken) -> ListSharedAlbumsResponse.newBuilder().addAllSharedAlbums(page).setNextPageToken(nextPageToken).build());
+        }
+    }
+
+    @Override
+    public void getAlbum(GetAlbumRequest request, StreamObserver<Album> responseObserver) {
+        if (!isFaulty(responseObserver)) {
+            final Album album;
+            synchronized (this) {
+                album = albums.get(request.getAlbumId());
+            }
+            respond(responseObserver, album, request.getAlbumId());
+        }
+    }
+
+    @Override
+    public void createAlbum(CreateAlbumRequest request, StreamObserver<Album> responseObserver) {
+        if (!isFaulty(responseObserver)) {
+            final Album album;
+            synchronized (this) {
+                album = Album.newBuilder().setId(nextId("album")).setTitle(request.getAlbum().getTitle()).setIsWriteable(true).build();
+                albums.put(album.getId(), album);
+                albumMediaItemIds.put(album.getId(), new ArrayList<>());
+            }
+            respond(responseObserver, album, null);
+        }
+    }
+
+    @Override
+    public void shareAlbum(ShareAlbumRequest request, StreamObserver<ShareAlbumResponse> responseObserver) {
+        if (!isFaulty(responseObserver)) {
+            ShareInfo shareInfo = null;
+            synchronized (this) {
+                final Album album = albums.get(request.getAlbumId());
+                if (album != null) {
+                    shareInfo = album.hasShareInfo() ? album.getShareInfo() : ShareInfo.newBuilder()
+                            .setShareToken(nextId("share-token")).setIsOwned(true).setIsJoined(true).build();
+                    shareInfo = shareInfo.toBuilder().setSharedAlbumOptions(request.getSharedAlbumOptions()).build();
+                    albums.put(album.getId(), album.toBuilder().setShareInfo(shareInfo).build());
+                    shareTokenAlbumIds.put(shareInfo.getShareToken(), album.getId());
+                }
+            }
+            respond(responseObserver, shareInfo == null ? null : ShareAlbumResponse.newBuilder().setShareInfo(shareInfo).build(), request.getAlbumId());
+        }
+    }
+
+    @Override
+    public void unshareAlbum(UnshareAlbumRequest request, StreamObserver<UnshareAlbumResponse> responseObserver) {
+        if (!isFaulty(responseObserver)) {
+            Album album;
+            synchronized (this) {
+                album = albums.get(request.getAlbumId());
+                if (album != null && album.hasShareInfo()) {
+                    shareTokenAlbumIds.remove(album.getShareInfo().getShareToken());
+                    album = album.toBuilder().clearShareInfo().build();
+                    albums.put(album.getId(), album);
+                }
+            }
+            respond(responseObserver, album == null ? null : UnshareAlbumResponse.getDefaultInstance(), request.getAlbumId());
+        }
+    }
+
+    @Override
+    public void joinSharedAlbum(JoinSharedAlbumRequest request, StreamObserver<JoinSharedAlbumResponse> responseObserver) {
+        if (!isFaulty(responseObserver)) {
+            final Album album;
+            synchronized (this) {
+                album = albums.get(shareTokenAlbumIds.get(request.getShareToken()));
+            }
+            respond(responseObserver, album == null ? null : JoinSharedAlbumResponse.newBuilder().setAlbum(album).build(), request.getShareToken());
+        }
+    }
+
+    @Override
+    public void leaveSharedAlbum(LeaveSharedAlbumRequest request, StreamObserver<LeaveSharedAlbumResponse> responseObserver) {
+        if (!isFaulty(responseObserver)) {
+            final boolean isShared;
+            synchronized (this) {
+                isShared = shareTokenAlbumIds.containsKey(request.getShareToken());
+            }
+            respond(responseObserver, isShared ? LeaveSharedAlbumResponse.getDefaultInstance() : null, request.getShareToken());
+        }
+    }
+
+    @Override
+    public void listMediaItems(ListMediaItemsRequest request, StreamObserver<ListMediaItemsResponse> responseObserver) {
+        if (!isFaulty(responseObserver)) {
+            final List<MediaItem> mediaItemList;
+            synchronized (this) {
+                mediaItemList = new ArrayList<>(mediaItems.values());
+            }
+            respondPage(responseObserver, mediaItemList, request.getPageToken(), pageSize(request.getPageSize(), MEDIA_ITEMS_PAGE_SIZE, MEDIA_ITEMS_MAX_PAGE_SIZE),
+                    (page, nextPageToken) -> ListMediaItemsResponse.newBuilder().addAllMediaItems(page).setNextPageToken(nextPageToken).build());
+        }
+    }
+
+    @Override
+    public void searchMediaItems(SearchMediaItemsRequest request, StreamObserver<SearchMediaItemsResponse> responseObserver) {
+        if (!isFaulty(responseObserver)) {
+            final List<MediaItem> mediaItemList = new ArrayList<>();
+            synchronized (this) {
+                final List<String> mediaItemIds = albumMediaItemIds.get(request.getAlbumId());
+                if (mediaItemIds == null) {
+                    responseObserver.onError(Status.NOT_FOUND.withDescription(request.getAlbumId()).asRuntimeException());
+                    return;
+                }
+                for (String mediaItemId : mediaItemIds) {
+                    mediaItemList.add(mediaItems.get(mediaItemId));
+                }
+            }
+            respondPage(responseObserver, mediaItemList, request.getPageToken(), pageSize(request.getPageSize(), MEDIA_ITEMS_PAGE_SIZE, MEDIA_ITEMS_MAX_PAGE_SIZE),
+                    (page, nextPageToken) -> SearchMediaItemsResponse.newBuilder().addAllMediaItems(page).setNextPageToken(nextPageToken).build());
+        }
+    }
+
+    @Override
+    public void getMediaItem(GetMediaItemRequest request, StreamObserver<MediaItem> responseObserver) {
+        if (!isFaulty(responseObserver)) {
+            final MediaItem mediaItem;
+            synchronized (this) {
+                mediaItem = mediaItems.get(request.getMediaItemId());
+            }
+            respond(responseObserver, mediaItem, request.getMediaItemId());
+        }
+    }
+
+    @Override
+    public void batchCreateMediaItems(BatchCreateMediaItemsRequest request, StreamObserver<BatchCreateMediaItemsResponse> responseObserver) {
+        if (isFaulty(responseObserver) || isOverBatchLimit(responseObserver, request.getNewMediaItemsCount())) {
+            return;
+        }
+        final BatchCreateMediaItemsResponse.Builder responseBuilder = BatchCreateMediaItemsResponse.newBuilder();
+        synchronized (this) {
+            final List<String> mediaItemIds = request.getAlbumId().isEmpty() ? null : albumMediaItemIds.get(request.getAlbumId());
+            if (!request.getAlbumId().isEmpty() && mediaItemIds == null) {
+                responseObserver.onError(Status.NOT_FOUND.withDescription(request.getAlbumId()).asRuntimeException());
+                return;
+            }
+            for (NewMediaItem newMediaItem : request.getNewMediaItemsList()) {
+                final String uploadToken = newMediaItem.getSimpleMediaItem().getUploadToken();
+                final String fileName = uploadServer.getUploadedFileName(uploadToken);
+                final NewMediaItemResult.Builder resultBuilder = NewMediaItemResult.newBuilder().setUploadToken(uploadToken);
+                if (fileName == null) {
+                    resultBuilder.setStatus(com.google.rpc.Status.newBuilder()
+                            .setCode(Code.INVALID_ARGUMENT_VALUE).setMessage("Invalid upload token: " + uploadToken));
+                } else {
+                    final String mimeType = URLConnection.guessContentTypeFromName(fileName);
+                    final MediaItem mediaItem = MediaItem.newBuilder().setId(nextId("media-item"))
+                            .setFilename(fileName).setDescription(newMediaItem.getDescription())
+                            .setMimeType(mimeType == null ? DEFAULT_MIME_TYPE : mimeType).build();
+                    mediaItems.put(mediaItem.getId(), mediaItem);
+                    if (mediaItemIds != null) {
+                        mediaItemIds.add(mediaItem.getId());
+                    }
+                    resultBuilder.setStatus(com.google.rpc.Status.newBuilder().setCode(Code.OK_VALUE).setMessage("OK")).setMediaItem(mediaItem);
+                }
+                responseBuilder.addNewMediaItemResults(resultBuilder);
+            }
+            if (mediaItemIds != null) {
+                updateMediaItemsCount(request.getAlbumId());
+            }
+        }
+        respond(responseObserver, responseBuilder.build(), null);
+    }
+
+    @Override
+    public void batchAddMediaItemsToAlbum(BatchAddMediaItemsToAlbumRequest request, StreamObserver<BatchAddMediaItemsToAlbumResponse> responseObserver) {
+        if (isFaulty(responseObserver) || isOverBatchLimit(responseObserver, request.getMediaItemIdsCount())) {
+            return;
+        }
+        synchronized (this) {
+            final List<String> mediaItemIds = albumMediaItemIds.get(request.getAlbumId());
+            if (mediaItemIds == null) {
+                responseObserver.onError(Status.NOT_FOUND.withDescription(request.getAlbumId()).asRuntimeException());
+                return;
+            }
+            for (String mediaItemId : request.getMediaItemIdsList()) {
+                if (!mediaItems.containsKey(mediaItemId)) {
+                    responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(mediaItemId).asRuntimeException());
+                    return;
+                }
+            }
+            for (String mediaItemId : request.getMediaItemIdsList()) {
+                if (!mediaItemIds.contains(mediaItemId)) {
+                    mediaItemIds.add(mediaItemId);
+                }
+            }
+            updateMediaItemsCount(request.getAlbumId());
+        }
+        respond(responseObserver, BatchAddMediaItemsToAlbumResponse.getDefaultInstance(), null);
+    }
+
+    private void updateMediaItemsCount(@NotNull String albumId) {
+        albums.put(albumId, albums.get(albumId).toBuilder().setMediaItemsCount(albumMediaItemIds.get(albumId).size()).build());
+    }
+
+    @NotNull
+    private String nextId(@NotNull String prefix) {
+        return prefix + "-" + ++lastId;
+    }
+
+    /**
+     * Delay a request and fail it by its fault, if any.
+     *
+     * @param responseObserver the observer of the response of the request
+     * @return <code>true</code> iff the request has been failed
+     */
+    private boolean isFaulty(@NotNull StreamObserver<?> responseObserver) {
+        final FaultInjector.Fault fault;
+        try {
+            fault = faultInjector.inject();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            responseObserver.onError(Status.CANCELLED.asRuntimeException());
+            return true;
+        }
+        switch (fault) {
+            case QUOTA_EXCEEDED:
+                responseObserver.onError(Status.RESOURCE_EXHAUSTED.withDescription("Quota exceeded").asRuntimeException());
+                return true;
+            case ERROR:
+                responseObserver.onError(Status.UNAVAILABLE.withDescription("Injected error").asRuntimeException());
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isOverBatchLimit(@NotNull StreamObserver<?> responseObserver, int batchSize) {
+        if (batchSize > BATCH_LIMIT) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("Too many items in a batch: " + batchSize).asRuntimeException());
+            return true;
+        }
+        return false;
+    }
+
+    private static <T> void respond(@NotNull StreamObserver<T> responseObserver, T response, String notFoundId) {
+        if (response == null) {
+            responseObserver.onError(Status.NOT_FOUND.withDescription(notFoundId).asRuntimeException());
+        } else {
+            responseObserver.onNext(response);
+            responseObserver.onCompleted();
+        }
+    }
+
+    private static int pageSize(int requestedPageSize, int defaultPageSize, int maxPageSize) {
+        return requestedPageSize <= 0 ? defaultPageSize : Math.min(requestedPageSize, maxPageSize);
+    }
+
+    /**
+     * Respond by a page of given values, the page tokens are the offsets of the pages.
+     *
+     * @param responseObserver the observer of the response
+     * @param values           all the values
+     * @param pageToken        the token of the page or an empty string for the first page
+     * @param pageSize         the size of the page
+     * @param pageResponse     the function building the response of the values of the page and the token of the next page
+     * @param <V>              the type of the values
+     * @param <T>              the type of the response
+     */
+    private static <V, T> void respondPage(@NotNull StreamObserver<T> responseObserver, @NotNull List<V> values,
+                                           @NotNull String pageToken, int pageSize, @NotNull PageResponse<V, T> pageResponse) {
+        final int from;
+        try {
+            from = pageToken.isEmpty() ? 0 : Integer.parseInt(pageToken);
+        } catch (NumberFormatException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(pageToken).asRuntimeException());
+            return;
+        }
+        final int to = Math.min(values.size(), from + pageSize);
+        respond(responseObserver, pageResponse.build(values.subList(Math.min(from, to), to), to < values.size() ? String.valueOf(to) : ""), null);
+    }
+
+    @FunctionalInterface
+    private interface PageResponse<V, T> {
+        T build(List<V> page, String nextPageToken);
+    }
+}
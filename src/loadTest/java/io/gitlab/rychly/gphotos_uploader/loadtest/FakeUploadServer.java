@@ -0,0 +1,285 @@
+package io.gitlab.rychly.gphotos_uploader.loadtest;
+
+import com.google.common.base.Strings;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local HTTP stand-in of the Google Photos upload service implementing the resumable upload protocol,
+ * see https://developers.google.com/photos/library/guides/resumable-uploads
+ * <p>
+ * The uploaded contents are just counted, not stored. The upload tokens of finalized uploads are resolved to their file names
+ * by {@link #getUploadedFileName(String)}.
+ */
+public class FakeUploadServer implements AutoCloseable {
+    /**
+     * Path of the upload endpoint.
+     */
+    public static final String PATH = "/v1/uploads";
+
+    private static final String UPLOAD_COMMAND_HEADER = "X-Goog-Upload-Command";
+    private static final String UPLOAD_STATUS_HEADER = "X-Goog-Upload-Status";
+    private static final String UPLOAD_URL_HEADER = "X-Goog-Upload-URL";
+    private static final String UPLOAD_OFFSET_HEADER = "X-Goog-Upload-Offset";
+    private static final String UPLOAD_GRANULARITY_HEADER = "X-Goog-Upload-Chunk-Granularity";
+    private static final String RECEIVED_BYTE_COUNT_HEADER = "X-Goog-Upload-Size-Received";
+    private static final String FILE_NAME_HEADER = "X-Goog-Upload-File-Name";
+    private static final String FILE_SIZE_HEADER = "X-Goog-Upload-Raw-Size";
+    private static final String UPLOAD_ID_PARAMETER = "upload_id=";
+    private static final String STATUS_ACTIVE = "active";
+    private static final String STATUS_FINAL = "final";
+    private static final int UPLOAD_GRANULARITY = 256 * 1024;
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_BAD_REQUEST = 400;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+    private final FaultInjector faultInjector;
+    private final HttpServer httpServer;
+    private final ExecutorService executorService = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, FakeUploadServer.class.getSimpleName());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, UploadSession> uploadSessions = new ConcurrentHashMap<>();
+    private final Map<String, String> uploadTokenFileNames = new ConcurrentHashMap<>();
+    private final AtomicLong lastId = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong startedSessions = new AtomicLong();
+    private volatile long sessionByteLimit = 0;
+
+    /**
+     * Start a new upload server on any free port of the loopback address.
+     *
+     * @param faultInjector the injector of the latency, errors, and quota of the upload requests
+     * @throws IOException cannot bind a port
+     */
+    public FakeUploadServer(@NotNull FaultInjector faultInjector) throws IOException {
+        this.faultInjector = faultInjector;
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        httpServer.createContext(PATH, this::handle);
+        httpServer.setExecutor(executorService);
+        httpServer.start();
+    }
+
+    /**
+     * Get the URL of the upload endpoint.
+     *
+     * @return the URL
+     */
+    @NotNull
+    public String getUploadEndpoint() {
+        final InetSocketAddress address = httpServer.getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + PATH;
+    }
+
+    /**
+     * Get the file name of a content uploaded with a given upload token.
+     *
+     * @param uploadToken the upload token
+     * @return the file name or <code>null</code> if there is no finalized upload of the token
+     */
+    @Nullable
+    public String getUploadedFileName(@NotNull String uploadToken) {
+        return uploadTokenFileNames.get(uploadToken);
+    }
+
+    /**
+     * Get the number of bytes received so far.
+     *
+     * @return the number of received bytes
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * Get the number of upload sessions started so far.
+     *
+     * @return the number of started sessions
+     */
+    public long getStartedSessions() {
+        return startedSessions.get();
+    }
+
+    /**
+     * Interrupt the upload sessions after a given number of received bytes, i.e., fail their next chunks by HTTP 503
+     * (e.g., to simulate a run killed during an upload).
+     *
+     * @param sessionByteLimit the number of received bytes of each session or zero for no limit
+     */
+    public void setSessionByteLimit(long sessionByteLimit) {
+        this.sessionByteLimit = sessionByteLimit;
+    }
+
+    private void handle(@NotNull HttpExchange httpExchange) throws IOException {
+        try {
+            final long requestBytes = drainRequestBody(httpExchange);
+            final List<String> commands = Arrays.asList(Strings.nullToEmpty(httpExchange.getRequestHeaders().getFirst(UPLOAD_COMMAND_HEADER))
+                    .toLowerCase(Locale.ROOT).replace(" ", "").split(","));
+            FaultInjector.Fault fault = FaultInjector.Fault.NONE;
+            try {
+                if (commands.contains("query")) {
+                    // the client cannot recover from failed queries of the received bytes, so they are just delayed
+                    faultInjector.delay();
+                } else {
+                    fault = faultInjector.inject();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sendResponse(httpExchange, HTTP_SERVICE_UNAVAILABLE, null);
+                return;
+            }
+            if (fault == FaultInjector.Fault.QUOTA_EXCEEDED) {
+                sendResponse(httpExchange, HTTP_TOO_MANY_REQUESTS, null);
+                return;
+            }
+            if (fault == FaultInjector.Fault.ERROR) {
+                sendResponse(httpExchange, HTTP_SERVICE_UNAVAILABLE, null);
+                return;
+            }
+            if (commands.contains("start")) {
+                startSession(httpExchange);
+                return;
+            }
+            final String query = httpExchange.getRequestURI().getRawQuery();
+            final UploadSession uploadSession = query != null && query.startsWith(UPLOAD_ID_PARAMETER)
+                    ? uploadSessions.get(query.substring(UPLOAD_ID_PARAMETER.length())) : null;
+            if (uploadSession == null) {
+                sendResponse(httpExchange, HTTP_NOT_FOUND, null);
+            } else if (commands.contains("query")) {
+                synchronized (uploadSession) {
+                    httpExchange.getResponseHeaders().set(RECEIVED_BYTE_COUNT_HEADER, String.valueOf(uploadSession.receivedBytes));
+                    sendStatusResponse(httpExchange, uploadSession, null);
+                }
+            } else if (commands.contains("upload")) {
+                upload(httpExchange, uploadSession, requestBytes, commands.contains("finalize"));
+            } else {
+                sendResponse(httpExchange, HTTP_BAD_REQUEST, null);
+            }
+        } finally {
+            httpExchange.close();
+        }
+    }
+
+    private void startSession(@NotNull HttpExchange httpExchange) throws IOException {
+        final long fileSize;
+        try {
+            fileSize = Long.parseLong(Strings.nullToEmpty(httpExchange.getRequestHeaders().getFirst(FILE_SIZE_HEADER)));
+        } catch (NumberFormatException e) {
+            sendResponse(httpExchange, HTTP_BAD_REQUEST, null);
+            return;
+        }
+        final String uploadId = String.valueOf(lastId.incrementAndGet());
+        final UploadSession uploadSession = new UploadSession(
+                Strings.nullToEmpty(httpExchange.getRequestHeaders().getFirst(FILE_NAME_HEADER)), fileSize);
+        uploadSessions.put(uploadId, uploadSession);
+        startedSessions.incrementAndGet();
+        httpExchange.getResponseHeaders().set(UPLOAD_URL_HEADER, getUploadEndpoint() + "?" + UPLOAD_ID_PARAMETER + uploadId);
+        sendStatusResponse(httpExchange, uploadSession, null);
+    }
+
+    private void upload(@NotNull HttpExchange httpExchange, @NotNull UploadSession uploadSession, long requestBytes, boolean isFinalizing)
+            throws IOException {
+        final long offset;
+        try {
+            offset = Long.parseLong(Strings.nullToEmpty(httpExchange.getRequestHeaders().getFirst(UPLOAD_OFFSET_HEADER)));
+        } catch (NumberFormatException e) {
+            sendResponse(httpExchange, HTTP_BAD_REQUEST, null);
+            return;
+        }
+        synchronized (uploadSession) {
+            if (uploadSession.uploadToken != null || offset != uploadSession.receivedBytes) {
+                // a finalized session or a chunk not continuing the received bytes
+                sendResponse(httpExchange, HTTP_BAD_REQUEST, null);
+                return;
+            }
+            if (sessionByteLimit > 0 && uploadSession.receivedBytes >= sessionByteLimit) {
+                sendResponse(httpExchange, HTTP_SERVICE_UNAVAILABLE, null);
+                return;
+            }
+            uploadSession.receivedBytes += requestBytes;
+            receivedBytes.addAndGet(requestBytes);
+            if (isFinalizing) {
+                if (uploadSession.receivedBytes != uploadSession.fileSize) {
+                    sendResponse(httpExchange, HTTP_BAD_REQUEST, null);
+                    return;
+                }
+                uploadSession.uploadToken = "upload-token-" + lastId.incrementAndGet();
+                uploadTokenFileNames.put(uploadSession.uploadToken, uploadSession.fileName);
+            }
+            sendStatusResponse(httpExchange, uploadSession, uploadSession.uploadToken);
+        }
+    }
+
+    private static long drainRequestBody(@NotNull HttpExchange httpExchange) throws IOException {
+        final byte[] buffer = new byte[64 * 1024];
+        long length = 0;
+        try (final InputStream inputStream = httpExchange.getRequestBody()) {
+            for (int read; (read = inputStream.read(buffer)) >= 0; ) {
+                length += read;
+            }
+        }
+        return length;
+    }
+
+    private static void sendStatusResponse(@NotNull HttpExchange httpExchange, @NotNull UploadSession uploadSession, @Nullable String body)
+            throws IOException {
+        httpExchange.getResponseHeaders().set(UPLOAD_STATUS_HEADER, uploadSession.uploadToken == null ? STATUS_ACTIVE : STATUS_FINAL);
+        httpExchange.getResponseHeaders().set(UPLOAD_GRANULARITY_HEADER, String.valueOf(UPLOAD_GRANULARITY));
+        sendResponse(httpExchange, HTTP_OK, body);
+    }
+
+    private static void sendResponse(@NotNull HttpExchange httpExchange, int statusCode, @Nullable String body) throws IOException {
+        final byte[] bytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        // a zero length is an unknown length (chunked encoding) for the HTTP server, an empty body has the length of -1
+        httpExchange.sendResponseHeaders(statusCode, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (final OutputStream outputStream = httpExchange.getResponseBody()) {
+                outputStream.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Stop the server.
+     */
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        executorService.shutdownNow();
+    }
+
+    /**
+     * A resumable upload session.
+     */
+    private static class UploadSession {
+        private final String fileName;
+        private final long fileSize;
+        private long receivedBytes = 0;
+        private String uploadToken = null;
+
+        private UploadSession(@NotNull String fileName, long fileSize) {
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+        }
+    }
+}
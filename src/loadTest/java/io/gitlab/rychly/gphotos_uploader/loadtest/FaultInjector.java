@@ -0,0 +1,126 @@
+package io.gitlab.rychly.gphotos_uploader.loadtest;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An injector of the latency, the transient errors, and the quota of requests of a fake backend.
+ * The quota is a number of requests per second (in fixed one-second windows) shared by all the requests,
+ * the requests over the quota are rejected as rate-limited.
+ */
+public class FaultInjector {
+    private static final long QUOTA_WINDOW_MILLIS = 1000;
+
+    private final long latencyMillis;
+    private final double errorRate;
+    private final int quotaPerSecond;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private long quotaWindowStartMillis = 0;
+    private int quotaWindowRequests = 0;
+
+    /**
+     * Create a new injector.
+     *
+     * @param latencyMillis  the latency of each request in milliseconds
+     * @param errorRate      the probability of a transient error of a request (from 0 to 1)
+     * @param quotaPerSecond the maximal number of requests per second (a non-positive number for no quota)
+     */
+    public FaultInjector(long latencyMillis, double errorRate, int quotaPerSecond) {
+        this.latencyMillis = Math.max(0, latencyMillis);
+        this.errorRate = errorRate;
+        this.quotaPerSecond = quotaPerSecond;
+    }
+
+    /**
+     * Delay a request by the latency and decide its fault.
+     *
+     * @return the fault of the request
+     * @throws InterruptedException the current thread has been interrupted while delaying the request
+     */
+    @NotNull
+    public Fault inject() throws InterruptedException {
+        delay();
+        if (isOverQuota()) {
+            rejectedRequests.incrementAndGet();
+            return Fault.QUOTA_EXCEEDED;
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            errors.incrementAndGet();
+            return Fault.ERROR;
+        }
+        return Fault.NONE;
+    }
+
+    /**
+     * Delay a request by the latency without any fault.
+     *
+     * @throws InterruptedException the current thread has been interrupted while delaying the request
+     */
+    public void delay() throws InterruptedException {
+        requests.incrementAndGet();
+        if (latencyMillis > 0) {
+            Thread.sleep(latencyMillis);
+        }
+    }
+
+    private synchronized boolean isOverQuota() {
+        if (quotaPerSecond <= 0) {
+            return false;
+        }
+        final long nowMillis = System.currentTimeMillis();
+        if (nowMillis - quotaWindowStartMillis >= QUOTA_WINDOW_MILLIS) {
+            quotaWindowStartMillis = nowMillis;
+            quotaWindowRequests = 0;
+        }
+        return ++quotaWindowRequests > quotaPerSecond;
+    }
+
+    /**
+     * Get the number of requests so far.
+     *
+     * @return the number of requests
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Get the number of requests failed by the injected errors so far.
+     *
+     * @return the number of failed requests
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * Get the number of requests rejected by the quota so far.
+     *
+     * @return the number of rejected requests
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    /**
+     * Faults of requests.
+     */
+    public enum Fault {
+        /**
+         * The request succeeds.
+         */
+        NONE,
+        /**
+         * The request fails by a transient error (UNAVAILABLE or HTTP 503).
+         */
+        ERROR,
+        /**
+         * The request is rejected by the quota (RESOURCE_EXHAUSTED or HTTP 429).
+         */
+        QUOTA_EXCEEDED
+    }
+}
@@ -0,0 +1,152 @@
+package io.gitlab.rychly.gphotos_uploader.loadtest;
+
+import io.gitlab.rychly.gphotos_uploader.GPhotosUploader;
+import io.gitlab.rychly.gphotos_uploader.config.Config;
+import io.gitlab.rychly.gphotos_uploader.gphotos.UploadSessions;
+import io.gitlab.rychly.gphotos_uploader.i18n.Messages;
+import io.gitlab.rychly.gphotos_uploader.i18n.ResourceBundleFactory;
+import io.gitlab.rychly.gphotos_uploader.logger.LoggerFactory;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+@CommandLine.Command(name = "LoadTest",
+        description = "Synchronizes a generated tree of media directories with an in-process fake of the Google Photos API and reports the end-to-end throughput. " +
+                "The unmatched options are passed to the uploader, e.g., --request-rate=0 --upload-threads=8.",
+        mixinStandardHelpOptions = true, // add --help and --version options
+        showDefaultValues = true, // show default values of all non-null options and positional parameters
+        sortOptions = false // display options in the order they are declared in your class
+)
+public class LoadTest implements Runnable {
+    private static final String TREE_DIRECTORY_PREFIX = "gphotos-uploader-load-test";
+    private static final String CONFIG_FILE = LoadTest.class.getSimpleName() + ".properties";
+
+    @CommandLine.Option(names = {"--directories"}, description = "Number of generated media directories (each directory is synchronized with its own album).")
+    private int directories = 10;
+
+    @CommandLine.Option(names = {"--files"}, description = "Number of generated media files in each directory.")
+    private int files = 100;
+
+    @CommandLine.Option(names = {"--file-size"}, description = "Size in KiB of each generated media file (of random contents).")
+    private int fileSizeKiB = 64;
+
+    @CommandLine.Option(names = {"--latency"}, description = "Latency in milliseconds of each request of the fake (including each upload request).")
+    private long latencyMillis = 20;
+
+    @CommandLine.Option(names = {"--error-rate"}, description = "Probability of a transient error of each request of the fake (UNAVAILABLE or HTTP 503).")
+    private double errorRate = 0;
+
+    @CommandLine.Option(names = {"--quota"}, description = "Maximal number of requests of the fake per second, the requests over the quota are rate-limited " +
+            "(RESOURCE_EXHAUSTED or HTTP 429; zero for no quota).")
+    private int quota = 0;
+
+    @CommandLine.Option(names = {"--keep-tree"}, description = "Keep the generated tree of media directories after the test.")
+    private boolean keepTree = false;
+
+    @CommandLine.Unmatched
+    private List<String> uploaderArgs = new ArrayList<>();
+
+    public static void main(String[] args) {
+        CommandLine.run(new LoadTest(), args);
+    }
+
+    @Override
+    public void run() {
+        Path treeDirectory = null;
+        try {
+            treeDirectory = Files.createTempDirectory(TREE_DIRECTORY_PREFIX);
+            final List<String> mediaDirectories = generateTree(treeDirectory);
+            final FaultInjector faultInjector = new FaultInjector(latencyMillis, errorRate, quota);
+            try (final FakePhotosLibraryServer fakePhotosLibraryServer = new FakePhotosLibraryServer(faultInjector)) {
+                UploadSessions.setUploadEndpoint(fakePhotosLibraryServer.getUploadEndpoint());
+                // the indexes are not used, so each run measures the synchronization of a tree not seen before
+                final List<String> args = new ArrayList<>();
+                args.add("--config=" + writeConfigFile(treeDirectory));
+                args.add("--no-media-file-index");
+                args.add("--no-album-media-item-index");
+                args.addAll(uploaderArgs);
+                args.addAll(mediaDirectories);
+                final long startNanos = System.nanoTime();
+                CommandLine.run(new GPhotosUploader(new Config(LoadTest.class.getSimpleName()), fakePhotosLibraryServer), args.toArray(new String[0]));
+                final double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+                final int mediaItems = fakePhotosLibraryServer.getPhotosLibraryService().getMediaItemsCount();
+                final long receivedBytes = fakePhotosLibraryServer.getUploadServer().getReceivedBytes();
+                LoggerFactory.getLogger().info(
+                        ResourceBundleFactory.msg(Messages.GENERATED_LOAD_TEST_TREE_4, directories, files, fileSizeKiB * 1024L, treeDirectory));
+                LoggerFactory.getLogger().info(
+                        ResourceBundleFactory.msg(Messages.LOAD_TEST_THROUGHPUT_5, mediaItems, receivedBytes, elapsedSeconds,
+                                mediaItems / elapsedSeconds, receivedBytes / elapsedSeconds / (1024 * 1024)));
+                LoggerFactory.getLogger().info(
+                        ResourceBundleFactory.msg(Messages.LOAD_TEST_REQUESTS_3, faultInjector.getRequests(), faultInjector.getErrors(),
+                                faultInjector.getRejectedRequests()));
+                if (mediaItems < directories * files) {
+                    LoggerFactory.getLogger().warning(
+                            ResourceBundleFactory.msg(Messages.LOAD_TEST_INCOMPLETE_2, mediaItems, directories * files));
+                }
+            }
+        } catch (IOException e) {
+            LoggerFactory.getLogger().log(Level.SEVERE,
+                    ResourceBundleFactory.msg(Messages.CANNOT_RUN_LOAD_TEST_1, e.getMessage()),
+                    e);
+        } finally {
+            if (treeDirectory != null && !keepTree) {
+                deleteTree(treeDirectory);
+            }
+            LoggerFactory.flushHandlers();
+        }
+    }
+
+    /**
+     * Write a config file of the uploader with the credentials in a given directory (the credentials are not used by the fake).
+     *
+     * @param treeDirectory the directory
+     * @return the path of the config file
+     * @throws IOException cannot write the config file
+     */
+    private static String writeConfigFile(Path treeDirectory) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty(GPhotosUploader.CONFIG_KEY_CREDENTIALS_FILE, treeDirectory.resolve("client_secret.json").toString());
+        properties.setProperty(GPhotosUploader.CONFIG_KEY_CREDENTIALS_DIRECTORY, treeDirectory.resolve("credentials").toString());
+        final Path configFile = treeDirectory.resolve(CONFIG_FILE);
+        try (final Writer writer = Files.newBufferedWriter(configFile, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        return configFile.toString();
+    }
+
+    private List<String> generateTree(Path treeDirectory) throws IOException {
+        final List<String> mediaDirectories = new ArrayList<>(directories);
+        final byte[] content = new byte[fileSizeKiB * 1024];
+        final Random random = new Random(0);
+        for (int directory = 1; directory <= directories; directory++) {
+            final Path mediaDirectory = Files.createDirectory(treeDirectory.resolve(String.format("album-%05d", directory)));
+            for (int file = 1; file <= files; file++) {
+                // distinct contents, so the media files are not deduplicated
+                random.nextBytes(content);
+                Files.write(mediaDirectory.resolve(String.format("IMG_%05d.jpg", file)), content);
+            }
+            mediaDirectories.add(mediaDirectory.toString());
+        }
+        return mediaDirectories;
+    }
+
+    private static void deleteTree(Path treeDirectory) {
+        try (final Stream<Path> paths = Files.walk(treeDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            LoggerFactory.getLogger().log(Level.WARNING, e.getMessage(), e);
+        }
+    }
+}
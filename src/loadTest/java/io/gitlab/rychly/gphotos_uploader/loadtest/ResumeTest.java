@@ -0,0 +1,137 @@
+package io.gitlab.rychly.gphotos_uploader.loadtest;
+
+import com.google.photos.library.v1.PhotosLibraryClient;
+import io.gitlab.rychly.gphotos_uploader.gphotos.ContentHasher;
+import io.gitlab.rychly.gphotos_uploader.gphotos.GPhotos;
+import io.gitlab.rychly.gphotos_uploader.gphotos.MediaFile;
+import io.gitlab.rychly.gphotos_uploader.gphotos.UploadSessions;
+import io.gitlab.rychly.gphotos_uploader.i18n.Messages;
+import io.gitlab.rychly.gphotos_uploader.i18n.ResourceBundleFactory;
+import io.gitlab.rychly.gphotos_uploader.index.MediaFileIndex;
+import io.gitlab.rychly.gphotos_uploader.logger.LoggerFactory;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+@CommandLine.Command(name = "ResumeTest",
+        description = "Checks the resumption of an interrupted resumable upload recorded in the index of media files against an in-process fake of the Google Photos API. " +
+                "The upload of a generated media file is interrupted, the journal of the index is saved and loaded again as by the next run, and the upload is resumed " +
+                "by the recorded session without re-sending the received bytes, even after a transient failure of the resumed upload (exits with a non-zero status on a failed check).",
+        mixinStandardHelpOptions = true, // add --help and --version options
+        showDefaultValues = true, // show default values of all non-null options and positional parameters
+        sortOptions = false // display options in the order they are declared in your class
+)
+public class ResumeTest implements Runnable {
+    private static final String TREE_DIRECTORY_PREFIX = "gphotos-uploader-resume-test";
+    private static final int UPLOAD_CHUNK_SIZE = 256 * 1024;
+
+    @CommandLine.Option(names = {"--chunks"}, description = "Number of upload chunks of 256 KiB of the generated media file.")
+    private int chunks = 4;
+
+    @CommandLine.Option(names = {"--interrupted-chunks"}, description = "Number of upload chunks received before the upload is interrupted.")
+    private int interruptedChunks = 2;
+
+    private boolean passed = true;
+
+    public static void main(String[] args) {
+        final ResumeTest resumeTest = new ResumeTest();
+        CommandLine.run(resumeTest, args);
+        if (!resumeTest.passed) {
+            System.exit(1);
+        }
+    }
+
+    @Override
+    public void run() {
+        Path treeDirectory = null;
+        try {
+            treeDirectory = Files.createTempDirectory(TREE_DIRECTORY_PREFIX);
+            final File mediaFile = generateMediaFile(treeDirectory);
+            final File indexFile = treeDirectory.resolve(MediaFileIndex.DEFAULT_INDEX_FILE).toFile();
+            try (final FakePhotosLibraryServer fakePhotosLibraryServer = new FakePhotosLibraryServer(new FaultInjector(0, 0, 0))) {
+                final FakeUploadServer uploadServer = fakePhotosLibraryServer.getUploadServer();
+                UploadSessions.setUploadEndpoint(fakePhotosLibraryServer.getUploadEndpoint());
+                GPhotos.setUploadChunkSize(UPLOAD_CHUNK_SIZE);
+                GPhotos.setUploadAttempts(1);
+                fakePhotosLibraryServer.setUploadAttempts(1);
+                final PhotosLibraryClient photosLibraryClient = fakePhotosLibraryServer.createClient(
+                        "", Collections.emptyList(), treeDirectory.toFile());
+                // the first run is killed during the upload, the index is saved just into its journal as by the periodic saving of the uploader
+                uploadServer.setSessionByteLimit((long) interruptedChunks * UPLOAD_CHUNK_SIZE);
+                final MediaFileIndex interruptedMediaFileIndex = MediaFileIndex.load(indexFile);
+                boolean isInterrupted = false;
+                try {
+                    GPhotos.uploadMedia(photosLibraryClient, mediaFile, interruptedMediaFileIndex.forProfile(null), null);
+                } catch (IOException e) {
+                    isInterrupted = true;
+                }
+                check(isInterrupted, "the upload has not been interrupted");
+                interruptedMediaFileIndex.saveJournalIfModified();
+                final long interruptedBytes = uploadServer.getReceivedBytes();
+                // the next run resumes the recorded session, but it fails transiently again and keeps the session for another attempt
+                uploadServer.setSessionByteLimit(interruptedBytes + UPLOAD_CHUNK_SIZE);
+                final MediaFileIndex.Profile mediaFileIndex = MediaFileIndex.load(indexFile).forProfile(null);
+                check(mediaFileIndex.getUploadUrl(mediaFile) != null, "the upload session has not been recorded in the index");
+                try {
+                    GPhotos.uploadMedia(photosLibraryClient, mediaFile, mediaFileIndex, null);
+                    check(false, "the resumed upload has not been interrupted");
+                } catch (IOException e) {
+                    check(mediaFileIndex.getUploadUrl(mediaFile) != null, "the upload session has been dropped after a transient failure");
+                }
+                uploadServer.setSessionByteLimit(0);
+                final ContentHasher.Digest digest = ContentHasher.newDigest(MediaFile.CHECKSUM_ALGORITHM);
+                final String uploadToken = GPhotos.uploadMedia(photosLibraryClient, mediaFile, mediaFileIndex, digest);
+                check(mediaFile.getName().equals(uploadServer.getUploadedFileName(uploadToken)), "the upload token is not of the media file");
+                check(uploadServer.getStartedSessions() == 1, "a new upload session has been started");
+                check(uploadServer.getReceivedBytes() == mediaFile.length(), "the received bytes have been sent again");
+                check(Arrays.equals(digest.digest(), ContentHasher.hash(mediaFile, MediaFile.CHECKSUM_ALGORITHM, MediaFile.getHashingStrategy())),
+                        "the digest does not cover the whole content");
+                if (passed) {
+                    LoggerFactory.getLogger().info(
+                            ResourceBundleFactory.msg(Messages.RESUME_TEST_PASSED_2, mediaFile.length() - interruptedBytes, interruptedBytes));
+                }
+            }
+        } catch (IOException | NoSuchAlgorithmException e) {
+            passed = false;
+            LoggerFactory.getLogger().log(Level.SEVERE,
+                    ResourceBundleFactory.msg(Messages.CANNOT_RUN_LOAD_TEST_1, e.getMessage()),
+                    e);
+        } finally {
+            if (treeDirectory != null) {
+                deleteTree(treeDirectory);
+            }
+            LoggerFactory.flushHandlers();
+        }
+    }
+
+    private void check(boolean condition, String failure) {
+        if (!condition) {
+            passed = false;
+            LoggerFactory.getLogger().severe(ResourceBundleFactory.msg(Messages.RESUME_TEST_FAILED_1, failure));
+        }
+    }
+
+    private File generateMediaFile(Path treeDirectory) throws IOException {
+        final byte[] content = new byte[chunks * UPLOAD_CHUNK_SIZE];
+        new Random(0).nextBytes(content);
+        return Files.write(treeDirectory.resolve("VID_00001.mp4"), content).toFile();
+    }
+
+    private static void deleteTree(Path treeDirectory) {
+        try (final Stream<Path> paths = Files.walk(treeDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            LoggerFactory.getLogger().log(Level.WARNING, e.getMessage(), e);
+        }
+    }
+}
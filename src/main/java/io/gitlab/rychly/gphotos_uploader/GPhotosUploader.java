@@ -3,33 +3,57 @@ package io.gitlab.rychly.gphotos_uploader;
 import com.google.api.gax.rpc.ApiException;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
-import com.google.photos.library.sample.factories.PhotosLibraryClientFactory;
 import com.google.photos.library.v1.PhotosLibraryClient;
 import com.google.photos.types.proto.Album;
-import com.google.photos.types.proto.MediaItem;
 import com.google.photos.types.proto.SharedAlbumOptions;
 import io.gitlab.rychly.gphotos_uploader.config.Config;
+import io.gitlab.rychly.gphotos_uploader.gphotos.AlbumCache;
+import io.gitlab.rychly.gphotos_uploader.gphotos.ChecksumIndex;
+import io.gitlab.rychly.gphotos_uploader.gphotos.ClientFactory;
+import io.gitlab.rychly.gphotos_uploader.gphotos.ContentHasher;
+import io.gitlab.rychly.gphotos_uploader.gphotos.DiffEngine;
 import io.gitlab.rychly.gphotos_uploader.gphotos.GPhotos;
 import io.gitlab.rychly.gphotos_uploader.gphotos.MediaFile;
+import io.gitlab.rychly.gphotos_uploader.gphotos.MediaTypeClassifier;
+import io.gitlab.rychly.gphotos_uploader.gphotos.RequestScheduler;
 import io.gitlab.rychly.gphotos_uploader.i18n.Messages;
 import io.gitlab.rychly.gphotos_uploader.i18n.ResourceBundleFactory;
+import io.gitlab.rychly.gphotos_uploader.index.AlbumMediaItemIndex;
+import io.gitlab.rychly.gphotos_uploader.index.DirectorySnapshotIndex;
+import io.gitlab.rychly.gphotos_uploader.index.MediaFileIndex;
+import io.gitlab.rychly.gphotos_uploader.logger.AsyncHandler;
 import io.gitlab.rychly.gphotos_uploader.logger.LoggerFactory;
+import io.gitlab.rychly.gphotos_uploader.metrics.Metrics;
+import io.gitlab.rychly.gphotos_uploader.metrics.MetricsServer;
+import io.gitlab.rychly.gphotos_uploader.sync.ChecksumVerifier;
+import io.gitlab.rychly.gphotos_uploader.sync.MediaDirectorySync;
+import io.gitlab.rychly.gphotos_uploader.sync.MediaDirectoryWatcher;
+import io.gitlab.rychly.gphotos_uploader.sync.MediaScan;
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.commons.lang3.tuple.Triple;
 import org.fusesource.jansi.AnsiConsole;
-import org.jetbrains.annotations.NotNull;
 import picocli.CommandLine;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
-import java.security.NoSuchAlgorithmException;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -43,8 +67,12 @@ import java.util.stream.Stream;
         sortOptions = false // display options in the order they are declared in your class
 )
 public class GPhotosUploader implements Runnable {
-    private static final String CONFIG_KEY_CREDENTIALS_FILE = "google.api.credentials.client-secret.file";
-    private static final String CONFIG_KEY_CREDENTIALS_DIRECTORY = "google.api.credentials.directory";
+    public static final String CONFIG_KEY_CREDENTIALS_FILE = "google.api.credentials.client-secret.file";
+    public static final String CONFIG_KEY_CREDENTIALS_DIRECTORY = "google.api.credentials.directory";
+    /**
+     * Exit status of a run which has found media files not matching the checksums in the descriptions of their media items (or failed to verify them).
+     */
+    public static final int EXIT_STATUS_MISMATCHES = 2;
     /**
      * For names of the logger levels, see https://docs.oracle.com/javase/8/docs/api/java/util/logging/Level.html#field.summary
      */
@@ -64,7 +92,21 @@ public class GPhotosUploader implements Runnable {
             // Access to create an album, share it, upload media items to it, and join a shared album.
             "https://www.googleapis.com/auth/photoslibrary.sharing"
     );
+    private static final int DEFAULT_UPLOAD_THREADS = 4;
+    private static final int DEFAULT_PROFILE_THREADS = 4;
+    private static final int UPLOAD_CHUNK_GRANULARITY_KIB = 256;
+    private static final String ALBUM_CACHE_SNAPSHOT_FILE_PREFIX = "albums";
+    private static final String ALBUM_CACHE_SNAPSHOT_FILE_SUFFIX = ".pb";
     private Config config;
+    private final ClientFactory clientFactory;
+    private ExecutorService uploadExecutorService;
+    private ChecksumVerifier checksumVerifier;
+    private int exitStatus = 0;
+    private ScheduledExecutorService indexSaveExecutorService;
+    private MediaScan mediaScan;
+    private final Object clientCreationLock = new Object();
+    private DirectorySnapshotIndex directorySnapshotIndex;
+    private final List<MediaDirectorySync> watchedMediaDirectorySyncs = Collections.synchronizedList(new ArrayList<>());
 
     @CommandLine.Option(names = {"-v", "--verbose"}, description = "Verbose mode; -v, -vv, or -vvv for FINE, FINER, or FINEST logging level.")
     private boolean[] verbose = new boolean[0];
@@ -72,6 +114,18 @@ public class GPhotosUploader implements Runnable {
     @CommandLine.Option(names = {"-q", "--quiet", "--silent"}, description = "Quiet/silent mode; -q, -qq, or -qqq for INFO, WARNING, SEVERE logging level.")
     private boolean[] quiet = new boolean[0];
 
+    @CommandLine.Option(names = {"--log-file-level"}, description = "Level of log messages in the temporary log file, i.e., ALL, FINEST, FINER, FINE, CONFIG, INFO, WARNING, SEVERE, or OFF " +
+            "(the messages of levels published neither to the console nor to the log file are not formatted at all).")
+    private String logFileLevelName = LoggerFactory.DEFAULT_FILE_LOG_LEVEL.getName();
+
+    @CommandLine.Option(names = {"--log-buffer"}, description = "Capacity of the buffers of log records published asynchronously to the console and to the log file " +
+            "(zero for the synchronous publishing).")
+    private int logBufferCapacity = AsyncHandler.DEFAULT_CAPACITY;
+
+    @CommandLine.Option(names = {"--log-overflow"}, description = "Policy of logging into a full log buffer: BLOCK (wait for a free slot) " +
+            "or DROP (drop the records less severe than warnings).")
+    private AsyncHandler.OverflowPolicy logOverflowPolicy = AsyncHandler.OverflowPolicy.DROP;
+
     @CommandLine.Option(names = {"-c", "--config"}, description = "Name of or path to the configuration file.")
     private String configFile = CONFIG_FILE;
 
@@ -111,49 +165,431 @@ public class GPhotosUploader implements Runnable {
     @CommandLine.Option(names = {"-d", "--leave-share-tokens"}, description = "Use share tokens from a file to leave their shared online albums (see the import-export file option).")
     private boolean leaveShareTokens;
 
+    @CommandLine.Option(names = {"-x", "--media-file-index"}, description = "Name of or path to the index file of media files with their checksums and upload states " +
+            "(relative to the cache directory; the files are re-hashed only if they changed since their indexing).")
+    private String mediaFileIndexFile = MediaFileIndex.DEFAULT_INDEX_FILE;
+
+    @CommandLine.Option(names = {"--media-file-index-save-interval"}, description = "Interval in seconds of saving the modified entries of the index of media files " +
+            "into its journal during the synchronization (e.g., to keep the unfinished resumable uploads recorded if the run is killed; " +
+            "zero to save the index at the end of the run only, when the journal is compacted into the index file).")
+    private long mediaFileIndexSaveInterval = MediaFileIndex.DEFAULT_SAVE_INTERVAL_SECONDS;
+
+    @CommandLine.Option(names = {"-X", "--no-media-file-index"}, description = "Do not use the index file of media files (i.e., re-hash all the media files).")
+    private boolean noMediaFileIndex = false;
+
+    @CommandLine.Option(names = {"--album-media-item-index"}, description = "Name of or path to the index file of media items of albums " +
+            "(relative to the cache directory; the media items of an album are listed again only if the count of media items in the album changed).")
+    private String albumMediaItemIndexFile = AlbumMediaItemIndex.DEFAULT_INDEX_FILE;
+
+    @CommandLine.Option(names = {"--no-album-media-item-index"}, description = "Do not use the index file of media items of albums (i.e., list the media items of all the albums).")
+    private boolean noAlbumMediaItemIndex = false;
+
+    @CommandLine.Option(names = {"-n", "--incremental"}, description = "Incremental synchronization, i.e., skip the directories not changed since their last successful synchronization " +
+            "(by their snapshots of the directory and file modification times and the file sizes; the albums are not checked for remote changes).")
+    private boolean incremental = false;
+
+    @CommandLine.Option(names = {"--directory-snapshot-index"}, description = "Name of or path to the index file of directory snapshots for the incremental synchronization " +
+            "(relative to the cache directory).")
+    private String directorySnapshotIndexFile = DirectorySnapshotIndex.DEFAULT_INDEX_FILE;
+
+    @CommandLine.Option(names = {"--deduplicate"}, description = "Deduplicate the uploads by the content checksums, i.e., add the existing media items of the same contents " +
+            "as the missing media files into the albums instead of uploading the files again (the files are hashed before their uploads; " +
+            "the media items are known from the media file index and from the listing of the whole library before the first upload, " +
+            "so the deduplication does not depend on the order of the directories).")
+    private boolean deduplicate = false;
+
+    @CommandLine.Option(names = {"--diff-engine"}, description = "Engine comparing the media files with the media items of the albums: " +
+            "HASH (a hash map of the media files, the media items are classified as they are listed) or " +
+            "MERGE (a merge of the media files and the media items sorted by their names, the sorted media items are taken from the album media item index if possible).")
+    private DiffEngine diffEngine = DiffEngine.HASH;
+
+    @CommandLine.Option(names = {"--photo-extensions"}, split = ",", description = "Comma-separated extensions of the photo files (case-insensitive; " +
+            "the default extensions are the photo formats supported by Google Photos).")
+    private String[] photoExtensions = MediaTypeClassifier.DEFAULT_PHOTO_EXTENSIONS;
+
+    @CommandLine.Option(names = {"--video-extensions"}, split = ",", description = "Comma-separated extensions of the video files (case-insensitive; " +
+            "the default extensions are the video formats supported by Google Photos).")
+    private String[] videoExtensions = MediaTypeClassifier.DEFAULT_VIDEO_EXTENSIONS;
+
+    @CommandLine.Option(names = {"--checksum-algorithm"}, description = "Algorithm of the content checksums in descriptions of new media items, e.g., SHA-1, SHA-256, MD5, or non-cryptographic CRC32 or ADLER32 " +
+            "(the existing descriptions are verified by the algorithms in their checksums).")
+    private String checksumAlgorithm = MediaFile.CHECKSUM_ALGORITHM;
+
+    @CommandLine.Option(names = {"--hashing-strategy"}, description = "Strategy to read media files to compute their checksums: " +
+            "STREAM (8 KiB buffered stream), LARGE_BUFFER (1 MiB heap buffer), DIRECT_BUFFER (1 MiB direct buffer), or MEMORY_MAPPED (64 MiB mapped regions).")
+    private ContentHasher.Strategy hashingStrategy = ContentHasher.Strategy.LARGE_BUFFER;
+
+    @CommandLine.Option(names = {"--request-rate"}, description = "Maximal rate of requests per second of each operation of the Google Photos API " +
+            "(zero for no limit; the operations are LIST, SEARCH, GET, CREATE_ALBUM, UPLOAD, BATCH_CREATE, BATCH_ADD, SHARE, and JOIN).")
+    private double requestRate = RequestScheduler.DEFAULT_REQUESTS_PER_SECOND;
+
+    @CommandLine.Option(names = {"--operation-request-rate"}, description = "Maximal rate of requests per second of a particular operation of the Google Photos API, " +
+            "e.g., --operation-request-rate=UPLOAD=2 (overrides the request rate for the operation).")
+    private Map<RequestScheduler.Operation, Double> operationRequestRates = new EnumMap<>(RequestScheduler.Operation.class);
+
+    @CommandLine.Option(names = {"--request-concurrency"}, description = "Maximal number of concurrent requests of each operation of the Google Photos API " +
+            "(the number is halved when the requests are rate-limited and it grows back by the successful requests).")
+    private int requestConcurrency = RequestScheduler.DEFAULT_MAX_CONCURRENCY;
+
+    @CommandLine.Option(names = {"--metrics-report"}, description = "File to write a JSON report of metrics of the run into at its end " +
+            "(counters, throughput, and latency percentiles of hashing, uploads, and requests of the Google Photos API by their operations).")
+    private File metricsReportFile;
+
+    @CommandLine.Option(names = {"--metrics-port"}, description = "Port of a local HTTP endpoint serving the metrics of the run in the Prometheus text format " +
+            "at " + MetricsServer.PATH + " of the loopback address (zero for no endpoint).")
+    private int metricsPort = 0;
+
+    @CommandLine.Option(names = {"--profile-threads"}, description = "Number of credentials profiles processed concurrently " +
+            "(the profiles share a single scan and checksum computation of the media files and the upload threads).")
+    private int profileThreads = DEFAULT_PROFILE_THREADS;
+
+    @CommandLine.Option(names = {"-t", "--upload-threads"}, description = "Number of media files to upload concurrently (new media items are created in batches as soon as the uploads are completed).")
+    private int uploadThreads = DEFAULT_UPLOAD_THREADS;
+
+    @CommandLine.Option(names = {"--upload-chunk-size"}, description = "Size in KiB of chunks of the resumable uploads (rounded to a multiple of 256 KiB); " +
+            "interrupted uploads of files larger than a chunk are resumed by the next attempt or by the next run.")
+    private int uploadChunkSizeKiB = GPhotos.DEFAULT_UPLOAD_CHUNK_SIZE / 1024;
+
+    @CommandLine.Option(names = {"--upload-attempts"}, description = "Number of attempts to upload a media file (the next attempt resumes the upload if possible).")
+    private int uploadAttempts = GPhotos.DEFAULT_UPLOAD_ATTEMPTS;
+
+    @CommandLine.Option(names = {"--create-attempts"}, description = "Number of attempts to create new media items of uploaded media files " +
+            "(the items failed by transient errors or rate limiting are retried with their upload tokens after a backoff).")
+    private int createMediaItemsAttempts = GPhotos.DEFAULT_CREATE_MEDIA_ITEMS_ATTEMPTS;
+
+    @CommandLine.Option(names = {"-a", "--album-cache-ttl"}, description = "Time-to-live in seconds of an on-disk snapshot of the albums listed for each credentials profile " +
+            "(zero to not use the snapshot, i.e., to list the albums once per run).")
+    private long albumCacheTimeToLive = 0;
+
+    @CommandLine.Option(names = {"--album-resolve-threads"}, description = "Number of directories for which their albums are resolved concurrently.")
+    private int albumResolveThreads = 1;
+
+    @CommandLine.Option(names = {"--diff-threads"}, description = "Number of directories compared concurrently with their albums (listing of media items and checksum verification).")
+    private int diffThreads = 2;
+
+    @CommandLine.Option(names = {"--verify-threads"}, description = "Number of threads verifying the media files matching the media items of the albums by the checksums " +
+            "in the descriptions of the media items (shared by all the directories and profiles; zero to verify them by the diff threads one by one).")
+    private int verifyThreads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = {"--verify-device-concurrency"}, description = "Maximal number of media files read concurrently by the verification on each storage device " +
+            "(e.g., 1 for a rotational disk, more for an SSD).")
+    private int verifyDeviceConcurrency = ChecksumVerifier.DEFAULT_DEVICE_CONCURRENCY;
+
+    @CommandLine.Option(names = {"--verify-report"}, description = "File to write a JSON report of the media files not matching the checksums in the descriptions " +
+            "of their media items (or failed to verify) into at the end of the run (the run exits with the status " + EXIT_STATUS_MISMATCHES + " if there are any).")
+    private File verifyReportFile;
+
+    @CommandLine.Option(names = {"--album-upload-threads"}, description = "Number of albums into which the missing media files are uploaded concurrently (see also the upload threads).")
+    private int albumUploadThreads = 2;
+
+    @CommandLine.Option(names = {"--pipeline-queue-capacity"}, description = "Capacity of the queues of directories between the stages of the directory processing.")
+    private int pipelineQueueCapacity = 16;
+
+    @CommandLine.Option(names = {"-w", "--watch"}, description = "Watch mode, i.e., after the synchronization of the media directories, keep the connections and the album caches " +
+            "and upload new media files into their albums as soon as they are completely written into the directories (until interrupted).")
+    private boolean watch = false;
+
+    @CommandLine.Option(names = {"--watch-debounce"}, description = "Quiet period in seconds of a changed directory in the watch mode; " +
+            "the directory is synchronized after its media files have not changed during two quiet periods (i.e., they are completely written).")
+    private long watchDebounce = MediaDirectoryWatcher.DEFAULT_DEBOUNCE_MILLIS / 1000;
+
     @CommandLine.Parameters(arity = "0..*", paramLabel = "media-directory", description = "Directory(ies) of media files to process (recursively; the album name will be a plain directory name, without its parent path).")
     private File[] inputDirectories;
 
     private GPhotosUploader(Config config) {
+        this(config, ClientFactory.GOOGLE);
+    }
+
+    /**
+     * Create a new uploader connecting to the photos libraries by clients of a given factory,
+     * e.g., to run the uploader against a local stand-in of the Google Photos API.
+     *
+     * @param config        the configuration
+     * @param clientFactory the factory of clients of the photos libraries
+     */
+    public GPhotosUploader(Config config, ClientFactory clientFactory) {
         super();
         this.config = config;
+        this.clientFactory = clientFactory;
     }
 
     public static void main(String[] args) {
-        CommandLine.run(new GPhotosUploader(new Config(GPhotosUploader.class.getSimpleName())), args);
+        final GPhotosUploader gPhotosUploader = new GPhotosUploader(new Config(GPhotosUploader.class.getSimpleName()));
+        CommandLine.run(gPhotosUploader, args);
+        if (gPhotosUploader.exitStatus != 0) {
+            System.exit(gPhotosUploader.exitStatus);
+        }
     }
 
     @Override
     public void run() {
         AnsiConsole.systemInstall();
         LoggerFactory.init(GPhotosUploader.class.getCanonicalName());
+        LoggerFactory.setAsyncHandlers(logBufferCapacity, logOverflowPolicy);
         final Handler ansiConsoleHandler = LoggerFactory.addAnsiConsoleHandler(LoggerFactory.loggingLevelForVerbosity(verbose.length - quiet.length));
-        LoggerFactory.addFileHandler(LoggerFactory.tempLogFilePatternForName(GPhotosUploader.class.getCanonicalName()));
+        LoggerFactory.addFileHandler(LoggerFactory.tempLogFilePatternForName(GPhotosUploader.class.getCanonicalName()), Level.parse(logFileLevelName));
+        Metrics.gauge("run_seconds", "Duration of the run so far.", Metrics::getElapsedSeconds);
+        final MetricsServer metricsServer = startMetricsServer();
         try {
             final Properties configProperties = this.config.loadPropertiesFromConfigFileOrEmpty(configFile);
             // logging verbosity from the config file if not set by args
             if ((verbose.length == 0) && (quiet.length == 0)) {
                 final String consoleLevelName = configProperties.getProperty(CONFIG_KEY_LOGGER_CONSOLE_LEVEL_NAME);
                 if ((consoleLevelName != null) && !consoleLevelName.isEmpty()) {
-                    ansiConsoleHandler.setLevel(Level.parse(consoleLevelName));
+                    LoggerFactory.setHandlerLevel(ansiConsoleHandler, Level.parse(consoleLevelName));
                 }
             }
+            // index of media files
+            if (!noMediaFileIndex) {
+                final File indexFile = this.config.getCacheFile(mediaFileIndexFile);
+                LoggerFactory.getLogger().fine(
+                        ResourceBundleFactory.msg(Messages.LOADING_MEDIA_FILE_INDEX_1, indexFile.getAbsolutePath()));
+                MediaFile.setMediaFileIndex(MediaFileIndex.load(indexFile));
+            }
+            // index of media items of albums
+            if (!noAlbumMediaItemIndex) {
+                final File indexFile = this.config.getCacheFile(albumMediaItemIndexFile);
+                LoggerFactory.getLogger().fine(
+                        ResourceBundleFactory.msg(Messages.LOADING_ALBUM_MEDIA_ITEM_INDEX_1, indexFile.getAbsolutePath()));
+                GPhotos.setAlbumMediaItemIndex(AlbumMediaItemIndex.load(indexFile));
+            }
+            // index of directory snapshots
+            if (incremental) {
+                final File indexFile = this.config.getCacheFile(directorySnapshotIndexFile);
+                LoggerFactory.getLogger().fine(
+                        ResourceBundleFactory.msg(Messages.LOADING_DIRECTORY_SNAPSHOT_INDEX_1, indexFile.getAbsolutePath()));
+                directorySnapshotIndex = DirectorySnapshotIndex.load(indexFile);
+            }
+            // media files by their extensions
+            MediaFile.setMediaTypeClassifier(new MediaTypeClassifier(Arrays.asList(photoExtensions), Arrays.asList(videoExtensions)));
+            // comparison of media files with media items
+            GPhotos.setDiffEngine(diffEngine);
+            // pacing of requests
+            GPhotos.setRequestScheduler(new RequestScheduler(requestRate, requestConcurrency, operationRequestRates));
+            // content hashing
+            MediaFile.setChecksumAlgorithm(checksumAlgorithm);
+            MediaFile.setHashingStrategy(hashingStrategy);
+            // resumable uploads
+            GPhotos.setUploadChunkSize(Math.max(1, uploadChunkSizeKiB / UPLOAD_CHUNK_GRANULARITY_KIB) * UPLOAD_CHUNK_GRANULARITY_KIB * 1024);
+            GPhotos.setUploadAttempts(uploadAttempts);
+            GPhotos.setCreateMediaItemsAttempts(createMediaItemsAttempts);
+            // periodic saving of the index of media files (the uploads record their sessions and tokens in the index)
+            if (MediaFile.getMediaFileIndex() != null && mediaFileIndexSaveInterval > 0) {
+                indexSaveExecutorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, MediaFileIndex.class.getSimpleName());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                indexSaveExecutorService.scheduleWithFixedDelay(this::saveMediaFileIndexJournal,
+                        mediaFileIndexSaveInterval, mediaFileIndexSaveInterval, TimeUnit.SECONDS);
+            }
+            // pool of upload workers
+            uploadExecutorService = Executors.newFixedThreadPool(Math.max(1, uploadThreads));
+            // scan of media directories shared by the profiles (a directory is forgotten when all the profiles are done with it)
+            mediaScan = new MediaScan(credentialsProfiles == null ? 1 : credentialsProfiles.length);
+            // pool of verification workers
+            checksumVerifier = new ChecksumVerifier(verifyThreads, verifyDeviceConcurrency);
             if (credentialsProfiles == null) {
                 runForCredentialsProfile(configProperties, null);
             } else {
-                for (String credentialsProfile : credentialsProfiles) {
-                    runForCredentialsProfile(configProperties, credentialsProfile);
-                }
+                runForCredentialsProfiles(configProperties, credentialsProfiles);
+            }
+            if (watch && !watchedMediaDirectorySyncs.isEmpty()) {
+                saveMediaFileIndex();
+                saveAlbumMediaItemIndex();
+                saveDirectorySnapshotIndex();
+                watchMediaDirectories();
             }
         } catch (IOException | GeneralSecurityException e) {
             LoggerFactory.getLogger().log(Level.SEVERE,
                     ResourceBundleFactory.msg(Messages.UNKNOWN_ERROR_1, e.getMessage()),
                     e);
         } finally {
+            if (uploadExecutorService != null) {
+                uploadExecutorService.shutdownNow();
+            }
+            if (indexSaveExecutorService != null) {
+                indexSaveExecutorService.shutdownNow();
+            }
+            if (checksumVerifier != null) {
+                checksumVerifier.close();
+                writeVerifyReport();
+            }
+            saveMediaFileIndex();
+            saveAlbumMediaItemIndex();
+            saveDirectorySnapshotIndex();
+            writeMetricsReport();
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
+            LoggerFactory.flushHandlers();
             AnsiConsole.systemUninstall();
         }
     }
 
+    private MetricsServer startMetricsServer() {
+        if (metricsPort <= 0) {
+            return null;
+        }
+        try {
+            final MetricsServer metricsServer = new MetricsServer(metricsPort);
+            LoggerFactory.getLogger().info(
+                    ResourceBundleFactory.msg(Messages.SERVING_METRICS_1, metricsServer.getUrl()));
+            return metricsServer;
+        } catch (IOException e) {
+            LoggerFactory.getLogger().log(Level.SEVERE,
+                    ResourceBundleFactory.msg(Messages.CANNOT_SERVE_METRICS_1, e.getMessage()),
+                    e);
+            return null;
+        }
+    }
+
+    private void writeMetricsReport() {
+        if (metricsReportFile == null) {
+            return;
+        }
+        try (final Writer writer = Files.newBufferedWriter(metricsReportFile.toPath(), StandardCharsets.UTF_8)) {
+            Metrics.writeJsonReport(writer);
+        } catch (IOException e) {
+            LoggerFactory.getLogger().log(Level.SEVERE,
+                    ResourceBundleFactory.msg(Messages.CANNOT_WRITE_METRICS_REPORT_2, metricsReportFile.getAbsolutePath(), e.getMessage()),
+                    e);
+        }
+    }
+
+    private void writeVerifyReport() {
+        final int mismatches = checksumVerifier.getMismatches().size();
+        if (checksumVerifier.getVerifiedMediaItems() > 0) {
+            LoggerFactory.getLogger().info(
+                    ResourceBundleFactory.msg(Messages.VERIFIED_MEDIA_ITEMS_2, checksumVerifier.getVerifiedMediaItems(), mismatches));
+        }
+        if (mismatches > 0) {
+            exitStatus = EXIT_STATUS_MISMATCHES;
+        }
+        if (verifyReportFile == null) {
+            return;
+        }
+        try (final Writer writer = Files.newBufferedWriter(verifyReportFile.toPath(), StandardCharsets.UTF_8)) {
+            checksumVerifier.writeJsonReport(writer);
+        } catch (IOException e) {
+            LoggerFactory.getLogger().log(Level.SEVERE,
+                    ResourceBundleFactory.msg(Messages.CANNOT_WRITE_VERIFICATION_REPORT_2, verifyReportFile.getAbsolutePath(), e.getMessage()),
+                    e);
+        }
+    }
+
+    private void saveMediaFileIndex() {
+        final MediaFileIndex mediaFileIndex = MediaFile.getMediaFileIndex();
+        if (mediaFileIndex != null) {
+            try {
+                mediaFileIndex.saveIfModified();
+            } catch (IOException e) {
+                LoggerFactory.getLogger().log(Level.SEVERE,
+                        ResourceBundleFactory.msg(Messages.CANNOT_SAVE_MEDIA_FILE_INDEX_1, e.getMessage()),
+                        e);
+            }
+        }
+    }
+
+    private void saveMediaFileIndexJournal() {
+        final MediaFileIndex mediaFileIndex = MediaFile.getMediaFileIndex();
+        if (mediaFileIndex != null) {
+            try {
+                mediaFileIndex.saveJournalIfModified();
+            } catch (IOException e) {
+                LoggerFactory.getLogger().log(Level.SEVERE,
+                        ResourceBundleFactory.msg(Messages.CANNOT_SAVE_MEDIA_FILE_INDEX_1, e.getMessage()),
+                        e);
+            }
+        }
+    }
+
+    private void saveAlbumMediaItemIndex() {
+        final AlbumMediaItemIndex albumMediaItemIndex = GPhotos.getAlbumMediaItemIndex();
+        if (albumMediaItemIndex != null) {
+            try {
+                albumMediaItemIndex.saveIfModified();
+            } catch (IOException e) {
+                LoggerFactory.getLogger().log(Level.SEVERE,
+                        ResourceBundleFactory.msg(Messages.CANNOT_SAVE_ALBUM_MEDIA_ITEM_INDEX_1, e.getMessage()),
+                        e);
+            }
+        }
+    }
+
+    private void saveDirectorySnapshotIndex() {
+        if (directorySnapshotIndex != null) {
+            try {
+                directorySnapshotIndex.saveIfModified();
+            } catch (IOException e) {
+                LoggerFactory.getLogger().log(Level.SEVERE,
+                        ResourceBundleFactory.msg(Messages.CANNOT_SAVE_DIRECTORY_SNAPSHOT_INDEX_1, e.getMessage()),
+                        e);
+            }
+        }
+    }
+
+    private void watchMediaDirectories() {
+        try {
+            new MediaDirectoryWatcher(watchDebounce * 1000).watch(inputDirectories, directories -> {
+                LoggerFactory.getLogger().info(
+                        ResourceBundleFactory.msg(Messages.SYNCHRONIZING_CHANGED_DIRECTORIES_1, directories.size()));
+                mediaScan.invalidate(directories);
+                synchronized (watchedMediaDirectorySyncs) {
+                    for (MediaDirectorySync mediaDirectorySync : watchedMediaDirectorySyncs) {
+                        try {
+                            mediaDirectorySync.synchronizeDirectories(directories, albumResolveThreads, diffThreads, albumUploadThreads, pipelineQueueCapacity);
+                            mediaDirectorySync.getAlbumCache().saveSnapshotIfModified();
+                        } catch (IOException e) {
+                            LoggerFactory.getLogger().log(Level.SEVERE,
+                                    ResourceBundleFactory.msg(Messages.UNKNOWN_ERROR_1, e.getMessage()),
+                                    e);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                }
+                saveMediaFileIndex();
+                saveAlbumMediaItemIndex();
+                saveDirectorySnapshotIndex();
+            });
+        } catch (IOException e) {
+            LoggerFactory.getLogger().log(Level.SEVERE,
+                    ResourceBundleFactory.msg(Messages.WATCH_ERROR_1, e.getMessage()),
+                    e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runForCredentialsProfiles(Properties configProperties, String[] credentialsProfiles) {
+        final ExecutorService profileExecutorService = Executors.newFixedThreadPool(Math.max(1, Math.min(profileThreads, credentialsProfiles.length)));
+        try {
+            final List<Pair<String, Future<?>>> profileFutures = new ArrayList<>(credentialsProfiles.length);
+            for (String credentialsProfile : credentialsProfiles) {
+                profileFutures.add(Pair.of(credentialsProfile, profileExecutorService.submit(() -> {
+                    runForCredentialsProfile(configProperties, credentialsProfile);
+                    return null;
+                })));
+            }
+            for (Pair<String, Future<?>> profileFuture : profileFutures) {
+                try {
+                    profileFuture.getRight().get();
+                } catch (ExecutionException e) {
+                    LoggerFactory.getLogger().log(Level.SEVERE,
+                            ResourceBundleFactory.msg(Messages.CREDENTIALS_PROFILE_ERROR_2, Strings.nullToEmpty(profileFuture.getLeft()),
+                                    e.getCause().getMessage()),
+                            e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            profileExecutorService.shutdownNow();
+        }
+    }
+
     private void runForCredentialsProfile(Properties configProperties, String credentialsProfile) throws IOException, GeneralSecurityException {
         // login credentials filename
         final String credentialsFile = this.config.getConfigFile(
@@ -164,8 +600,12 @@ public class GPhotosUploader implements Runnable {
         // login/connect into Google Photos
         LoggerFactory.getLogger().fine(
                 ResourceBundleFactory.msg(Messages.CONNECTING_TO_GPHOTOS_1, Strings.nullToEmpty(credentialsProfile)));
-        final PhotosLibraryClient photosLibraryClient = PhotosLibraryClientFactory.createClient(
-                credentialsFile, REQUIRED_SCOPES, new File(credentialsDirectory));
+        final PhotosLibraryClient photosLibraryClient;
+        synchronized (clientCreationLock) {
+            // the profiles are connected one by one as their interactive authorizations would use the same local receiver
+            photosLibraryClient = clientFactory.createClient(
+                    credentialsFile, REQUIRED_SCOPES, new File(credentialsDirectory));
+        }
         // actions
         boolean actionPerformed = false;
         if (listAlbums != null) {
@@ -224,7 +664,24 @@ public class GPhotosUploader implements Runnable {
             // process directories
             LoggerFactory.getLogger().fine(
                     ResourceBundleFactory.msg(Messages.SCANNING_DIRECTORIES));
-            processMediaDirectories(photosLibraryClient, inputDirectories);
+            final File albumCacheSnapshotFile = albumCacheTimeToLive > 0
+                    ? this.config.getCacheFile(ALBUM_CACHE_SNAPSHOT_FILE_PREFIX + (credentialsProfile != null ? "-profile-" + credentialsProfile : "") + ALBUM_CACHE_SNAPSHOT_FILE_SUFFIX)
+                    : null;
+            final AlbumCache albumCache = AlbumCache.load(photosLibraryClient, albumCacheSnapshotFile, albumCacheTimeToLive * 1000);
+            final MediaFileIndex.Profile mediaFileIndexProfile = getMediaFileIndexProfile(credentialsProfile);
+            final MediaDirectorySync mediaDirectorySync = new MediaDirectorySync(photosLibraryClient, albumCache, mediaFileIndexProfile,
+                    uploadExecutorService, mediaScan, directorySnapshotIndex == null ? null : directorySnapshotIndex.forProfile(credentialsProfile),
+                    deduplicate ? new ChecksumIndex(mediaFileIndexProfile, photosLibraryClient) : null, checksumVerifier);
+            try {
+                mediaDirectorySync.synchronize(inputDirectories, albumResolveThreads, diffThreads, albumUploadThreads, pipelineQueueCapacity);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            albumCache.saveSnapshotIfModified();
+            if (watch) {
+                // keep the connected client and the warm album cache for the watch mode
+                watchedMediaDirectorySyncs.add(mediaDirectorySync);
+            }
             actionPerformed = true;
         }
         if (!actionPerformed) {
@@ -257,7 +714,7 @@ public class GPhotosUploader implements Runnable {
                 .sorted(Comparator.comparing(Album::getTitle))
                 .flatMap(album -> {
                     try {
-                        return Stream.of(Pair.of(album, photosLibraryClient.shareAlbum(album.getId(), sharedAlbumOptions)));
+                        return Stream.of(Pair.of(album, GPhotos.shareAlbum(photosLibraryClient, album.getId(), sharedAlbumOptions)));
                     } catch (ApiException e) { // e.g., io.grpc.StatusRuntimeException: PERMISSION_DENIED: Request had insufficient authentication scopes.
                         LoggerFactory.getLogger().log(Level.SEVERE,
                                 ResourceBundleFactory.msg(Messages.SKIPPING_SHARE_2,
@@ -276,7 +733,7 @@ public class GPhotosUploader implements Runnable {
                 .sorted(Comparator.comparing(Album::getTitle))
                 .flatMap(album -> {
                     try {
-                        return Stream.of(Pair.of(album, photosLibraryClient.unshareAlbum(album.getId())));
+                        return Stream.of(Pair.of(album, GPhotos.unshareAlbum(photosLibraryClient, album.getId())));
                     } catch (ApiException e) { // e.g., io.grpc.StatusRuntimeException: PERMISSION_DENIED: Request had insufficient authentication scopes.
                         LoggerFactory.getLogger().log(Level.SEVERE,
                                 ResourceBundleFactory.msg(Messages.SKIPPING_UNSHARE_2,
@@ -319,7 +776,7 @@ public class GPhotosUploader implements Runnable {
                     .limit(tokensToNo + 1).skip(tokensFromNo) // first limit, then skip, must be in this order
                     .flatMap(indexTokenPair -> {
                         try {
-                            return Stream.of(Pair.of(indexTokenPair.getLeft(), photosLibraryClient.joinSharedAlbum(indexTokenPair.getRight()).getAlbum()));
+                            return Stream.of(Pair.of(indexTokenPair.getLeft(), GPhotos.joinSharedAlbum(photosLibraryClient, indexTokenPair.getRight()).getAlbum()));
                         } catch (ApiException | NullPointerException e) {
                             LoggerFactory.getLogger().log(Level.SEVERE,
                                     ResourceBundleFactory.msg(Messages.SKIPPING_IMPORT_4,
@@ -347,7 +804,7 @@ public class GPhotosUploader implements Runnable {
                     })
                     .flatMap(token -> {
                         try {
-                            return Stream.of(Pair.of(token, photosLibraryClient.leaveSharedAlbum(token)));
+                            return Stream.of(Pair.of(token, GPhotos.leaveSharedAlbum(photosLibraryClient, token)));
                         } catch (ApiException | NullPointerException e) {
                             LoggerFactory.getLogger().log(Level.SEVERE,
                                     ResourceBundleFactory.msg(Messages.SKIPPING_LEAVE_3,
@@ -365,88 +822,9 @@ public class GPhotosUploader implements Runnable {
         }
     }
 
-    private void processMediaDirectories(PhotosLibraryClient photosLibraryClient, @NotNull File[] directories) {
-        for (File directory : directories) {
-            // process media files in the directory
-            LoggerFactory.getLogger().info(
-                    ResourceBundleFactory.msg(Messages.PROCESSING_DIRECTORY_1, directory.getAbsolutePath()));
-            try {
-                processMediaDirectory(photosLibraryClient, directory, directory.getName());
-            } catch (IOException | NoSuchAlgorithmException e) {
-                LoggerFactory.getLogger().log(Level.SEVERE,
-                        ResourceBundleFactory.msg(Messages.PROCESSING_DIRECTORY_ERROR_2, directory.getAbsolutePath(), e.getMessage()),
-                        e);
-            }
-            // process sub-directories in the directory
-            final File[] subDirectories = directory.listFiles(pathname -> pathname.isDirectory() && !pathname.isHidden());
-            if (subDirectories != null) {
-                processMediaDirectories(photosLibraryClient, subDirectories);
-            }
-        }
-    }
-
-    private void processMediaDirectory(PhotosLibraryClient photosLibraryClient, File directory, String albumTitle) throws
-            IOException, NoSuchAlgorithmException {
-        // album
-        LoggerFactory.getLogger().info(
-                ResourceBundleFactory.msg(Messages.OPENING_ALBUM_1, albumTitle));
-        final Album album = GPhotos.getOrCreateAlbum(photosLibraryClient, albumTitle);
-        LoggerFactory.getLogger().fine(
-                ResourceBundleFactory.msg(Messages.ALBUM_URL_1, album.getProductUrl()));
-        // files
-        final Triple<Collection<MediaItem>, Collection<MediaItem>, Collection<MediaFile>> triple =
-                GPhotos.classifyMediaItemsByFilesAndGetMissingFiles(photosLibraryClient, album, MediaFile.fileFinder(directory));
-        final Collection<MediaItem> matchingMediaItems = triple.getLeft();
-        final Collection<MediaItem> nonMatchingMediaItems = triple.getMiddle();
-        final Collection<MediaFile> mediaFilesOfMissingMediaItems = triple.getRight();
-        // matching media item
-        LoggerFactory.getLogger().info(
-                ResourceBundleFactory.msg(Messages.MATCHING_MEDIA_ITEMS_1, matchingMediaItems.size()));
-        for (MediaItem mediaItem : matchingMediaItems) {
-            final MediaFile mediaFile = new MediaFile(directory, mediaItem.getFilename());
-            final String mediaItemDescription = mediaItem.getDescription();
-            LoggerFactory.getLogger().finer(
-                    ResourceBundleFactory.msg(Messages.MEDIA_ITEM_FILE_4,
-                            mediaFile.getAbsolutePath(), mediaFile.generateDescription(),
-                            mediaItem.getProductUrl(), mediaItemDescription));
-            if (!mediaFile.isChecksumStringMatching(MediaFile.extractChecksumStringFromDescription(mediaItemDescription))) {
-                LoggerFactory.getLogger().warning(
-                        ResourceBundleFactory.msg(Messages.MATCHING_MEDIA_ITEM_ACTION_2,
-                                mediaFile.getAbsolutePath(), mediaItem.getProductUrl()));
-            }
-        }
-        // non-matching media items
-        LoggerFactory.getLogger().info(
-                ResourceBundleFactory.msg(Messages.NON_MATCHING_MEDIA_ITEMS_1, nonMatchingMediaItems.size()));
-        for (MediaItem mediaItem : nonMatchingMediaItems) {
-            final MediaFile mediaFile = new MediaFile(directory, mediaItem.getFilename());
-            final String mediaItemDescription = mediaItem.getDescription();
-            LoggerFactory.getLogger().finer(
-                    ResourceBundleFactory.msg(Messages.MEDIA_ITEM_FILE_4,
-                            mediaFile.getAbsolutePath(), Messages.MISSING,
-                            mediaItem.getProductUrl(), mediaItemDescription));
-            LoggerFactory.getLogger().warning(
-                    ResourceBundleFactory.msg(Messages.NON_MATCHING_MEDIA_ITEM_ACTION_2,
-                            mediaFile.getAbsolutePath(), mediaItem.getProductUrl()));
-        }
-        // missing media items
-        LoggerFactory.getLogger().info(
-                ResourceBundleFactory.msg(Messages.MISSING_MEDIA_ITEMS_1, mediaFilesOfMissingMediaItems.size()));
-        for (MediaFile mediaFile : mediaFilesOfMissingMediaItems) {
-            LoggerFactory.getLogger().finer(
-                    ResourceBundleFactory.msg(Messages.MEDIA_ITEM_FILE_4,
-                            mediaFile.getAbsolutePath(), mediaFile.generateDescription(),
-                            Messages.MISSING, Messages.MISSING));
-            LoggerFactory.getLogger().warning(
-                    ResourceBundleFactory.msg(Messages.MISSING_MEDIA_ITEM_ACTION_1,
-                            mediaFile.getAbsolutePath()));
-        }
-        LoggerFactory.getLogger().info(
-                ResourceBundleFactory.msg(Messages.UPLOADING_MEDIA_ITEMS));
-        GPhotos.createMediaItems(photosLibraryClient, album, mediaFilesOfMissingMediaItems)
-                .forEach(mediaItem -> LoggerFactory.getLogger().info(
-                        ResourceBundleFactory.msg(Messages.UPLOADED_MEDIA_ITEM_2,
-                                mediaItem.getFilename(), mediaItem.getProductUrl())));
+    private MediaFileIndex.Profile getMediaFileIndexProfile(String credentialsProfile) {
+        final MediaFileIndex mediaFileIndex = MediaFile.getMediaFileIndex();
+        return mediaFileIndex == null ? null : mediaFileIndex.forProfile(credentialsProfile);
     }
 
     /**
@@ -23,6 +23,11 @@ public class Config {
      */
     private static final String XDG_CONFIG_DIRS = "XDG_CONFIG_DIRS";
 
+    /**
+     * Base directory relative to which user-specific non-essential (cached) data should be written.
+     */
+    private static final String XDG_CACHE_HOME = "XDG_CACHE_HOME";
+
     private static Map<String, String> environment = System.getenv();
 
     private String applicationDirectoryName;
@@ -147,6 +152,25 @@ public class Config {
         }
     }
 
+    /**
+     * Get a file of a particular name in the home cache directory (the file itself is not created, just its parent directories).
+     *
+     * @param fileName the cache file name (absolute or relative to the home cache directory)
+     * @return the File object
+     * @throws IOException cannot create the parent directories of the file
+     */
+    public File getCacheFile(String fileName) throws IOException {
+        final File file = new File(fileName);
+        final File cacheFile = file.isAbsolute() ? file
+                : new File(getEnvironmentVariableValueOrDefault(XDG_CACHE_HOME, environment.get("HOME") + File.separator + ".cache")
+                + File.separator + applicationDirectoryName, fileName);
+        final File cacheFileParentDirectory = cacheFile.getParentFile();
+        if (cacheFileParentDirectory != null && !cacheFileParentDirectory.exists()) {
+            Files.createDirectories(cacheFileParentDirectory.toPath());
+        }
+        return cacheFile;
+    }
+
     /**
      * Load properties from a config file given by its basename or, in the case of error, get an empty properties.
      * The new file, if needed, will be create in a home configuration directory, not in the working directory.
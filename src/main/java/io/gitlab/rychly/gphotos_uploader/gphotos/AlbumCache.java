@@ -0,0 +1,154 @@
+package io.gitlab.rychly.gphotos_uploader.gphotos;
+
+import com.google.photos.library.v1.PhotosLibraryClient;
+import com.google.photos.types.proto.Album;
+import io.gitlab.rychly.gphotos_uploader.index.IndexFiles;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An in-memory cache of albums of a user's library by their titles, optionally backed by an on-disk snapshot.
+ * The albums are listed only once (or loaded from a fresh snapshot) and the albums created by the cache are added into the cache.
+ */
+public class AlbumCache {
+    private final PhotosLibraryClient photosLibraryClient;
+    private final ConcurrentMap<String, Album> titleAlbumMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Album>> titleCreatedAlbumMap = new ConcurrentHashMap<>();
+    private final File snapshotFile;
+    private volatile boolean modified = false;
+    private long snapshotTime = System.currentTimeMillis();
+
+    private AlbumCache(@NotNull PhotosLibraryClient photosLibraryClient, @Nullable File snapshotFile) {
+        this.photosLibraryClient = photosLibraryClient;
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Create a cache of all albums in the user's library.
+     * The albums are loaded from a given snapshot file if it is not older than a given time-to-live, or listed from the library otherwise.
+     *
+     * @param photosLibraryClient the photos library client
+     * @param snapshotFile        the snapshot file or <code>null</code> to not use any snapshot
+     * @param timeToLiveMillis    the time-to-live of the snapshot in milliseconds
+     * @return the album cache
+     */
+    @NotNull
+    public static AlbumCache load(@NotNull PhotosLibraryClient photosLibraryClient, @Nullable File snapshotFile, long timeToLiveMillis) {
+        final AlbumCache albumCache = new AlbumCache(photosLibraryClient, snapshotFile);
+        if (snapshotFile == null || !albumCache.loadSnapshot(timeToLiveMillis)) {
+            for (Album album : GPhotos.getAlbums(photosLibraryClient)) {
+                albumCache.titleAlbumMap.putIfAbsent(album.getTitle(), album);
+            }
+            albumCache.modified = true;
+        }
+        return albumCache;
+    }
+
+    private boolean loadSnapshot(long timeToLiveMillis) {
+        if (!snapshotFile.isFile() || snapshotFile.lastModified() + timeToLiveMillis < System.currentTimeMillis()) {
+            return false;
+        }
+        snapshotTime = snapshotFile.lastModified();
+        try (final InputStream inputStream = new BufferedInputStream(new FileInputStream(snapshotFile))) {
+            Album album;
+            while ((album = Album.parseDelimitedFrom(inputStream)) != null) {
+                titleAlbumMap.putIfAbsent(album.getTitle(), album);
+            }
+            return true;
+        } catch (IOException e) {
+            // a broken snapshot, the albums will be listed
+            titleAlbumMap.clear();
+            snapshotTime = System.currentTimeMillis();
+            return false;
+        }
+    }
+
+    /**
+     * Save the albums into the snapshot file (if any) if they have been modified since their loading.
+     *
+     * @throws IOException cannot write the snapshot file
+     */
+    public synchronized void saveSnapshotIfModified() throws IOException {
+        if (snapshotFile == null || !modified) {
+            return;
+        }
+        modified = false;
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (Album album : titleAlbumMap.values()) {
+            album.writeDelimitedTo(outputStream);
+        }
+        IndexFiles.writeBytes(snapshotFile, outputStream.toByteArray());
+        // keep the time of the listing of the albums, the albums added later do not extend the time-to-live of the snapshot
+        snapshotFile.setLastModified(snapshotTime);
+    }
+
+    /**
+     * Get an album of a given title from the cache.
+     *
+     * @param title the album title
+     * @return the album or <code>null</code> if there is no such album
+     */
+    @Nullable
+    public Album getAlbum(String title) {
+        return titleAlbumMap.get(title);
+    }
+
+    /**
+     * Get or create an album of a given title. A newly created album is added into the cache.
+     * The album is created outside of any lock of the cache, the concurrent calls for the same title wait for the single creation.
+     *
+     * @param title the album title
+     * @return the album
+     */
+    @NotNull
+    public Album getOrCreateAlbum(String title) {
+        final Album album = titleAlbumMap.get(title);
+        if (album != null) {
+            return album;
+        }
+        final CompletableFuture<Album> createdAlbum = new CompletableFuture<>();
+        final CompletableFuture<Album> otherCreatedAlbum = titleCreatedAlbumMap.putIfAbsent(title, createdAlbum);
+        if (otherCreatedAlbum != null) {
+            // another thread is creating the album
+            try {
+                return otherCreatedAlbum.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            // the album might have been created since the first look into the cache
+            Album newAlbum = titleAlbumMap.get(title);
+            if (newAlbum == null) {
+                newAlbum = GPhotos.createAlbum(photosLibraryClient, title);
+                titleAlbumMap.put(title, newAlbum);
+                modified = true;
+            }
+            createdAlbum.complete(newAlbum);
+            return newAlbum;
+        } catch (RuntimeException e) {
+            createdAlbum.completeExceptionally(e);
+            throw e;
+        } finally {
+            titleCreatedAlbumMap.remove(title, createdAlbum);
+        }
+    }
+
+    /**
+     * Get all the cached albums.
+     *
+     * @return the unmodifiable collection of the albums
+     */
+    @NotNull
+    public Collection<Album> getAlbums() {
+        return Collections.unmodifiableCollection(titleAlbumMap.values());
+    }
+}
@@ -0,0 +1,119 @@
+package io.gitlab.rychly.gphotos_uploader.gphotos;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.photos.library.v1.PhotosLibraryClient;
+import com.google.photos.types.proto.MediaItem;
+import io.gitlab.rychly.gphotos_uploader.i18n.Messages;
+import io.gitlab.rychly.gphotos_uploader.i18n.ResourceBundleFactory;
+import io.gitlab.rychly.gphotos_uploader.index.MediaFileIndex;
+import io.gitlab.rychly.gphotos_uploader.logger.LoggerFactory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+
+/**
+ * An in-memory index of media items in a user's library by the content checksums in their descriptions
+ * (see {@link MediaFile#generateDescription()}), so the media files of the same content as some existing media items
+ * can be added into albums without uploading them again.
+ * <p>
+ * The index is filled by the media items created from the indexed media files, by the media items of the listed albums,
+ * and by the media items of the listed library (see {@link GPhotos#getLibraryMediaItems(PhotosLibraryClient)}).
+ * The library is listed lazily, i.e., just once when the index is needed for the first time (see {@link #indexLibraryMediaItems()}),
+ * so the runs with nothing to upload (e.g., incremental runs with unchanged directories) do not list the whole library.
+ * The media items which cannot be added into albums are removed from the index, so their media files are uploaded again and replace them.
+ */
+public class ChecksumIndex {
+    private final ConcurrentMap<String, String> checksumStringMediaItemIdMap = new ConcurrentHashMap<>();
+    private final PhotosLibraryClient photosLibraryClient;
+    private boolean isLibraryIndexed;
+
+    /**
+     * Create a new index of media items filled by the media items created from media files indexed in a given index.
+     *
+     * @param mediaFileIndex      the view of the index of media files for the profile of the library or <code>null</code> to create an empty index
+     * @param photosLibraryClient the photos library client to list the library lazily or <code>null</code> to not index the library
+     */
+    public ChecksumIndex(@Nullable MediaFileIndex.Profile mediaFileIndex, @Nullable PhotosLibraryClient photosLibraryClient) {
+        this.photosLibraryClient = photosLibraryClient;
+        this.isLibraryIndexed = photosLibraryClient == null;
+        if (mediaFileIndex != null) {
+            mediaFileIndex.forEachMediaItemId(checksumStringMediaItemIdMap::putIfAbsent);
+        }
+    }
+
+    /**
+     * Add the media items of the whole library into the index if they have not been added yet.
+     * The library is listed just by the first call, the next calls (e.g., for other directories) wait for it and return immediately.
+     * A failed listing is not repeated, the index keeps the media items known from the other sources.
+     */
+    public synchronized void indexLibraryMediaItems() {
+        if (isLibraryIndexed) {
+            return;
+        }
+        isLibraryIndexed = true;
+        try {
+            final int mediaItemsCount = addMediaItems(GPhotos.getLibraryMediaItems(photosLibraryClient));
+            LoggerFactory.getLogger().fine(
+                    ResourceBundleFactory.msg(Messages.INDEXED_LIBRARY_MEDIA_ITEMS_1, mediaItemsCount));
+        } catch (ApiException e) {
+            LoggerFactory.getLogger().log(Level.WARNING,
+                    ResourceBundleFactory.msg(Messages.CANNOT_LIST_LIBRARY_MEDIA_ITEMS_1, e.getMessage()),
+                    e);
+        }
+    }
+
+    /**
+     * Add a given media item into the index if its description contains a content checksum.
+     *
+     * @param mediaItem the media item
+     */
+    public void addMediaItem(@NotNull MediaItem mediaItem) {
+        final MediaItemDescription parsedDescription = new MediaItemDescription().parse(mediaItem.getDescription());
+        if (parsedDescription.hasChecksum()) {
+            checksumStringMediaItemIdMap.putIfAbsent(parsedDescription.getChecksumString(), mediaItem.getId());
+        }
+    }
+
+    /**
+     * Add given media items into the index (only those with content checksums in their descriptions).
+     *
+     * @param mediaItems the media items
+     * @return the number of the media items with content checksums
+     */
+    public int addMediaItems(@NotNull Iterable<MediaItem> mediaItems) {
+        final MediaItemDescription parsedDescription = new MediaItemDescription();
+        int count = 0;
+        for (MediaItem mediaItem : mediaItems) {
+            if (parsedDescription.parse(mediaItem.getDescription()).hasChecksum()) {
+                checksumStringMediaItemIdMap.putIfAbsent(parsedDescription.getChecksumString(), mediaItem.getId());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get an identifier of a media item of a given content checksum.
+     *
+     * @param checksumString the content checksum string
+     * @return the media item identifier or <code>null</code> if there is no such media item in the index
+     */
+    @Nullable
+    public String getMediaItemId(@NotNull String checksumString) {
+        return checksumStringMediaItemIdMap.get(checksumString);
+    }
+
+    /**
+     * Remove a given media item of a given content checksum from the index, e.g., if it cannot be added into albums anymore.
+     * Another media item of the checksum, e.g., added meanwhile by another album, is kept.
+     *
+     * @param checksumString the content checksum string
+     * @param mediaItemId    the identifier of the media item
+     */
+    public void removeMediaItem(@NotNull String checksumString, @NotNull String mediaItemId) {
+        checksumStringMediaItemIdMap.remove(checksumString, mediaItemId);
+    }
+}
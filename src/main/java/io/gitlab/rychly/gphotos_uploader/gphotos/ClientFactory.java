@@ -0,0 +1,36 @@
+package io.gitlab.rychly.gphotos_uploader.gphotos;
+
+import com.google.photos.library.sample.factories.PhotosLibraryClientFactory;
+import com.google.photos.library.v1.PhotosLibraryClient;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+/**
+ * A factory of photos library clients for credentials profiles, e.g., of clients of Google Photos authorized by OAuth 2.0
+ * or of clients of a local stand-in of the Google Photos API.
+ */
+@FunctionalInterface
+public interface ClientFactory {
+    /**
+     * The factory of clients of Google Photos authorized interactively by OAuth 2.0 (the authorized credentials are stored for the next runs).
+     */
+    ClientFactory GOOGLE = PhotosLibraryClientFactory::createClient;
+
+    /**
+     * Create a new photos library client with given credentials and scopes.
+     *
+     * @param credentialsPath               the key file
+     * @param selectedScopes                the scopes
+     * @param credentialsDataStoreDirectory the credentials data storage directory
+     * @return the photos library client
+     * @throws IOException              cannot open or read the key file or create the client
+     * @throws GeneralSecurityException cannot get the credentials
+     */
+    @NotNull
+    PhotosLibraryClient createClient(@NotNull String credentialsPath, @NotNull List<String> selectedScopes, @NotNull File credentialsDataStoreDirectory)
+            throws IOException, GeneralSecurityException;
+}
@@ -0,0 +1,267 @@
+package io.gitlab.rychly.gphotos_uploader.gphotos;
+
+import io.gitlab.rychly.gphotos_uploader.metrics.Metrics;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Security;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Computation of checksums of file contents by various checksum algorithms and reading strategies.
+ * The algorithms are those of {@link MessageDigest} (e.g., "SHA-1") and also fast non-cryptographic "CRC32" and "ADLER32".
+ */
+public final class ContentHasher {
+    /**
+     * Name of the CRC-32 non-cryptographic checksum algorithm.
+     */
+    public static final String CRC32_ALGORITHM = "CRC32";
+
+    /**
+     * Name of the Adler-32 non-cryptographic checksum algorithm.
+     */
+    public static final String ADLER32_ALGORITHM = "ADLER32";
+
+    /**
+     * Size of the buffer of the stream strategy.
+     */
+    public static final int STREAM_BUFFER_SIZE = 8192;
+
+    /**
+     * Size of the buffers of the large-buffer strategies.
+     */
+    public static final int LARGE_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Size of the regions of the memory-mapped strategy.
+     */
+    public static final long MAPPED_REGION_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Names of the algorithms of {@link MessageDigest} of the installed providers (in upper case).
+     */
+    private static final Set<String> MESSAGE_DIGEST_ALGORITHMS = Security.getAlgorithms("MessageDigest");
+
+    private static final ThreadLocal<ByteBuffer> HEAP_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(LARGE_BUFFER_SIZE));
+    private static final ThreadLocal<ByteBuffer> DIRECT_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(LARGE_BUFFER_SIZE));
+
+    private static final Metrics.Counter HASHED_BYTES = Metrics.counter("hashed_bytes_total", "Bytes of media files read to compute their checksums.");
+    private static final Metrics.Counter HASHED_FILES = Metrics.counter("hashed_files_total", "Media files read to compute their checksums.");
+    private static final Metrics.Histogram HASHING_SECONDS = Metrics.histogram("hashing_seconds",
+            "Duration of the checksum computation of a media file.", Metrics.SECONDS_BUCKETS);
+
+    static {
+        Metrics.rate("hashed_bytes_per_second", "Average rate of bytes of media files read to compute their checksums.", HASHED_BYTES);
+    }
+
+    private ContentHasher() {
+    }
+
+    /**
+     * Check whether a given checksum algorithm is supported, e.g., before an algorithm of an arbitrary checksum string is used.
+     * The aliases of the algorithms (e.g., "SHA1") are not recognized.
+     *
+     * @param algorithm the checksum algorithm
+     * @return <code>true</code> iff the algorithm is supported (the names are case-insensitive)
+     */
+    public static boolean isSupported(@NotNull String algorithm) {
+        final String upperCaseAlgorithm = algorithm.toUpperCase(Locale.ROOT);
+        return CRC32_ALGORITHM.equals(upperCaseAlgorithm) || ADLER32_ALGORITHM.equals(upperCaseAlgorithm)
+                || MESSAGE_DIGEST_ALGORITHMS.contains(upperCaseAlgorithm);
+    }
+
+    /**
+     * Create a new digest of a given checksum algorithm.
+     *
+     * @param algorithm the checksum algorithm
+     * @return the digest
+     * @throws NoSuchAlgorithmException cannot find the checksum algorithm
+     */
+    @NotNull
+    public static Digest newDigest(@NotNull String algorithm) throws NoSuchAlgorithmException {
+        if (CRC32_ALGORITHM.equalsIgnoreCase(algorithm)) {
+            return new ChecksumDigest(new CRC32());
+        } else if (ADLER32_ALGORITHM.equalsIgnoreCase(algorithm)) {
+            return new ChecksumDigest(new Adler32());
+        } else {
+            return new MessageDigestDigest(MessageDigest.getInstance(algorithm));
+        }
+    }
+
+    /**
+     * Compute a checksum of the content of a given file.
+     *
+     * @param file      the file
+     * @param algorithm the checksum algorithm
+     * @param strategy  the strategy to read the file
+     * @return the checksum
+     * @throws NoSuchAlgorithmException cannot find the checksum algorithm
+     * @throws IOException              cannot read the file
+     */
+    @NotNull
+    public static byte[] hash(@NotNull File file, @NotNull String algorithm, @NotNull Strategy strategy)
+            throws NoSuchAlgorithmException, IOException {
+        final Digest digest = newDigest(algorithm);
+        final long startNanos = System.nanoTime();
+        switch (strategy) {
+            case STREAM:
+                try (final InputStream fileInputStream = new FileInputStream(file)) {
+                    final byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+                    int n;
+                    while ((n = fileInputStream.read(buffer)) != -1) {
+                        digest.update(buffer, 0, n);
+                    }
+                }
+                break;
+            case LARGE_BUFFER:
+            case DIRECT_BUFFER:
+                try (final FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    final ByteBuffer buffer = (strategy == Strategy.DIRECT_BUFFER ? DIRECT_BUFFER : HEAP_BUFFER).get();
+                    buffer.clear();
+                    while (fileChannel.read(buffer) != -1) {
+                        buffer.flip();
+                        digest.update(buffer);
+                        buffer.clear();
+                    }
+                }
+                break;
+            case MEMORY_MAPPED:
+                try (final FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    final long size = fileChannel.size();
+                    for (long position = 0; position < size; position += MAPPED_REGION_SIZE) {
+                        final MappedByteBuffer mappedByteBuffer =
+                                fileChannel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_REGION_SIZE, size - position));
+                        digest.update(mappedByteBuffer);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(strategy.name());
+        }
+        HASHING_SECONDS.observeNanosSince(startNanos);
+        HASHED_FILES.increment();
+        HASHED_BYTES.add(file.length());
+        return digest.digest();
+    }
+
+    /**
+     * Strategy to read a file to compute its checksum.
+     */
+    public enum Strategy {
+        /**
+         * Read the file by an input stream with a small buffer.
+         */
+        STREAM,
+        /**
+         * Read the file by a file channel into a large heap buffer.
+         */
+        LARGE_BUFFER,
+        /**
+         * Read the file by a file channel into a large direct buffer.
+         */
+        DIRECT_BUFFER,
+        /**
+         * Map regions of the file into memory.
+         */
+        MEMORY_MAPPED
+    }
+
+    /**
+     * A digest computing a checksum by a particular algorithm.
+     */
+    public interface Digest {
+        /**
+         * Update the digest by given bytes.
+         *
+         * @param bytes  the array of the bytes
+         * @param offset the offset of the first byte in the array
+         * @param length the number of the bytes
+         */
+        void update(byte[] bytes, int offset, int length);
+
+        /**
+         * Update the digest by the remaining bytes of a given buffer.
+         *
+         * @param byteBuffer the buffer
+         */
+        void update(ByteBuffer byteBuffer);
+
+        /**
+         * Complete the computation and get the checksum.
+         *
+         * @return the checksum
+         */
+        byte[] digest();
+    }
+
+    private static class MessageDigestDigest implements Digest {
+        private final MessageDigest messageDigest;
+
+        private MessageDigestDigest(@NotNull MessageDigest messageDigest) {
+            this.messageDigest = messageDigest;
+        }
+
+        @Override
+        public void update(byte[] bytes, int offset, int length) {
+            messageDigest.update(bytes, offset, length);
+        }
+
+        @Override
+        public void update(ByteBuffer byteBuffer) {
+            messageDigest.update(byteBuffer);
+        }
+
+        @Override
+        public byte[] digest() {
+            return messageDigest.digest();
+        }
+    }
+
+    private static class ChecksumDigest implements Digest {
+        private final Checksum checksum;
+
+        private ChecksumDigest(@NotNull Checksum checksum) {
+            this.checksum = checksum;
+        }
+
+        @Override
+        public void update(byte[] bytes, int offset, int length) {
+            checksum.update(bytes, offset, length);
+        }
+
+        @Override
+        public void update(ByteBuffer byteBuffer) {
+            if (checksum instanceof CRC32) {
+                ((CRC32) checksum).update(byteBuffer);
+            } else if (checksum instanceof Adler32) {
+                ((Adler32) checksum).update(byteBuffer);
+            } else if (byteBuffer.hasArray()) {
+                checksum.update(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.position(), byteBuffer.remaining());
+                byteBuffer.position(byteBuffer.limit());
+            } else {
+                while (byteBuffer.hasRemaining()) {
+                    checksum.update(byteBuffer.get());
+                }
+            }
+        }
+
+        @Override
+        public byte[] digest() {
+            final long value = checksum.getValue();
+            return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package io.gitlab.rychly.gphotos_uploader.gphotos;
+
+import com.google.photos.types.proto.MediaItem;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Engines comparing local media files with media items of an album.
+ * Both the engines match the media items to the files by their exact file names, or by their case-folded file names
+ * (see {@link MediaItemMatcher#foldName(String)}) and their content checksums, see {@link MediaItemMatcher}.
+ */
+public enum DiffEngine {
+    /**
+     * An engine which builds a hash map of the media files and looks up each media item in it, the media items can be in any order.
+     */
+    HASH {
+        @NotNull
+        @Override
+        public Collection<MediaFile> diff(@NotNull Collection<MediaFile> mediaFiles, @NotNull Iterable<MediaItem> mediaItems,
+                                          @NotNull GPhotos.MediaItemVisitor mediaItemVisitor) throws IOException, NoSuchAlgorithmException {
+            final MediaItemMatcher mediaItemMatcher = new MediaItemMatcher(mediaFiles);
+            final MediaItemDescription parsedDescription = new MediaItemDescription();
+            for (MediaItem mediaItem : mediaItems) {
+                final MediaFile mediaFile = mediaItemMatcher.match(mediaItem.getFilename(),
+                        parsedDescription.parse(mediaItem.getDescription()).getChecksumString());
+                if (mediaFile != null) {
+                    mediaItemVisitor.visitMatching(mediaItem, mediaFile);
+                } else {
+                    mediaItemVisitor.visitNonMatching(mediaItem);
+                }
+            }
+            final List<MediaFile> missingMediaFiles = mediaItemMatcher.getUnmatchedMediaFiles();
+            for (MediaFile mediaFile : missingMediaFiles) {
+                mediaItemVisitor.visitMissing(mediaFile);
+            }
+            return missingMediaFiles;
+        }
+
+        @Override
+        public boolean isRequiringSortedMediaItems() {
+            return false;
+        }
+    },
+    /**
+     * An engine which merges the media files sorted by their case-folded names with the media items sorted by {@link #MEDIA_ITEM_ORDER}
+     * and emits the matching, non-matching, and missing events as it goes, so it needs no extra memory except for the sorted media files.
+     */
+    MERGE {
+        @NotNull
+        @Override
+        public Collection<MediaFile> diff(@NotNull Collection<MediaFile> mediaFiles, @NotNull Iterable<MediaItem> mediaItems,
+                                          @NotNull GPhotos.MediaItemVisitor mediaItemVisitor) throws IOException, NoSuchAlgorithmException {
+            final MediaFile[] sortedMediaFiles = mediaFiles.toArray(new MediaFile[0]);
+            final String[] sortedKeys = new String[sortedMediaFiles.length];
+            for (int i = 0; i < sortedMediaFiles.length; i++) {
+                sortedKeys[i] = MediaItemMatcher.foldName(sortedMediaFiles[i].getName());
+            }
+            sortByKeys(sortedMediaFiles, sortedKeys);
+            final MediaItemDescription parsedDescription = new MediaItemDescription();
+            final List<MediaFile> missingMediaFiles = new ArrayList<>();
+            final Iterator<MediaItem> mediaItemIterator = mediaItems.iterator();
+            MediaItem mediaItem = mediaItemIterator.hasNext() ? mediaItemIterator.next() : null;
+            String mediaItemKey = mediaItem == null ? null : MediaItemMatcher.foldName(mediaItem.getFilename());
+            int fileIndex = 0;
+            while (mediaItem != null || fileIndex < sortedMediaFiles.length) {
+                final int comparison = mediaItem == null ? -1
+                        : fileIndex >= sortedMediaFiles.length ? 1
+                        : sortedKeys[fileIndex].compareTo(mediaItemKey);
+                if (comparison < 0) {
+                    // no media item of the file name
+                    missingMediaFiles.add(sortedMediaFiles[fileIndex]);
+                    mediaItemVisitor.visitMissing(sortedMediaFiles[fileIndex]);
+                    fileIndex++;
+                    continue;
+                }
+                if (comparison > 0) {
+                    // no file of the media item name
+                    mediaItemVisitor.visitNonMatching(mediaItem);
+                } else {
+                    // a group of the files of the same key matched to the media items of the same key
+                    int groupEnd = fileIndex + 1;
+                    while (groupEnd < sortedMediaFiles.length && sortedKeys[groupEnd].equals(mediaItemKey)) {
+                        groupEnd++;
+                    }
+                    final String groupKey = mediaItemKey;
+                    if (groupEnd == fileIndex + 1) {
+                        // the usual case of a single file, the media items of the key match the file if of the same name or content
+                        final MediaFile mediaFile = sortedMediaFiles[fileIndex];
+                        boolean isMatched = false;
+                        do {
+                            // the description is parsed only for a name differing in letter cases
+                            if (mediaFile.getName().equals(mediaItem.getFilename()) || MediaItemMatcher.isMatching(mediaFile,
+                                    mediaItem.getFilename(), parsedDescription.parse(mediaItem.getDescription()).getChecksumString())) {
+                                mediaItemVisitor.visitMatching(mediaItem, mediaFile);
+                                isMatched = true;
+                            } else {
+                                mediaItemVisitor.visitNonMatching(mediaItem);
+                            }
+                            mediaItem = mediaItemIterator.hasNext() ? mediaItemIterator.next() : null;
+                            mediaItemKey = mediaItem == null ? null : MediaItemMatcher.foldName(mediaItem.getFilename());
+                        } while (mediaItem != null && groupKey.equals(mediaItemKey));
+                        if (!isMatched) {
+                            missingMediaFiles.add(mediaFile);
+                            mediaItemVisitor.visitMissing(mediaFile);
+                        }
+                        fileIndex = groupEnd;
+                        continue;
+                    }
+                    final MediaItemMatcher mediaItemMatcher = new MediaItemMatcher(Arrays.asList(sortedMediaFiles).subList(fileIndex, groupEnd));
+                    do {
+                        final MediaFile mediaFile = mediaItemMatcher.match(mediaItem.getFilename(),
+                                parsedDescription.parse(mediaItem.getDescription()).getChecksumString());
+                        if (mediaFile != null) {
+                            mediaItemVisitor.visitMatching(mediaItem, mediaFile);
+                        } else {
+                            mediaItemVisitor.visitNonMatching(mediaItem);
+                        }
+                        mediaItem = mediaItemIterator.hasNext() ? mediaItemIterator.next() : null;
+                        mediaItemKey = mediaItem == null ? null : MediaItemMatcher.foldName(mediaItem.getFilename());
+                    } while (mediaItem != null && groupKey.equals(mediaItemKey));
+                    for (MediaFile mediaFile : mediaItemMatcher.getUnmatchedMediaFiles()) {
+                        missingMediaFiles.add(mediaFile);
+                        mediaItemVisitor.visitMissing(mediaFile);
+                    }
+                    fileIndex = groupEnd;
+                    continue;
+                }
+                mediaItem = mediaItemIterator.hasNext() ? mediaItemIterator.next() : null;
+                mediaItemKey = mediaItem == null ? null : MediaItemMatcher.foldName(mediaItem.getFilename());
+            }
+            return missingMediaFiles;
+        }
+
+        @Override
+        public boolean isRequiringSortedMediaItems() {
+            return true;
+        }
+    };
+
+    /**
+     * Order of media items by their case-folded file names required by the {@link #MERGE} engine.
+     */
+    public static final Comparator<MediaItem> MEDIA_ITEM_ORDER = Comparator.comparing(mediaItem -> MediaItemMatcher.foldName(mediaItem.getFilename()));
+
+    /**
+     * Compare given media files with given media items of an album and provide the matching, non-matching, and missing events to a given visitor.
+     *
+     * @param mediaFiles       the media files
+     * @param mediaItems       the media items (sorted by {@link #MEDIA_ITEM_ORDER} if required by the engine)
+     * @param mediaItemVisitor the visitor of the matching and non-matching media items and the missing media files
+     * @return the collection of media files missing in the media items
+     * @throws IOException              the visitor cannot access a media file
+     * @throws NoSuchAlgorithmException the visitor cannot find a checksum algorithm
+     */
+    @NotNull
+    public abstract Collection<MediaFile> diff(@NotNull Collection<MediaFile> mediaFiles, @NotNull Iterable<MediaItem> mediaItems,
+                                               @NotNull GPhotos.MediaItemVisitor mediaItemVisitor) throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * Check whether the engine requires the media items sorted by {@link #MEDIA_ITEM_ORDER}.
+     *
+     * @return <code>true</code> iff the media items must be sorted
+     */
+    public abstract boolean isRequiringSortedMediaItems();
+
+    private static void sortByKeys(@NotNull MediaFile[] mediaFiles, @NotNull String[] keys) {
+        // the media files are usually sorted by their names already, so the stable sort of the indices is nearly linear
+        final Integer[] indices = new Integer[mediaFiles.length];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        Arrays.sort(indices, Comparator.comparing(index -> keys[index]));
+        final MediaFile[] originalMediaFiles = mediaFiles.clone();
+        final String[] originalKeys = keys.clone();
+        for (int i = 0; i < indices.length; i++) {
+            mediaFiles[i] = originalMediaFiles[indices[i]];
+            keys[i] = originalKeys[indices[i]];
+        }
+    }
+}
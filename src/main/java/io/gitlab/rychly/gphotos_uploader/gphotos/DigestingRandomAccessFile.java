@@ -0,0 +1,118 @@
+package io.gitlab.rychly.gphotos_uploader.gphotos;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * A read-only random access file which updates a digest by the bytes read from the file, so the file content is hashed
+ * while it is read by another consumer (e.g., while it is uploaded).
+ * <p>
+ * The digest is updated by a contiguous prefix of the file only. The bytes read again (e.g., a chunk re-sent after a seek back)
+ * are not digested twice and the bytes skipped by a seek forward (e.g., a part already received by the server) are read and digested
+ * at the seek.
+ */
+class DigestingRandomAccessFile extends RandomAccessFile {
+    private static final int CATCH_UP_BUFFER_SIZE = 64 * 1024;
+
+    private final ContentHasher.Digest digest;
+    private long digestedLength;
+
+    /**
+     * Open a given file for reading with a given digest already updated by a prefix of the file of a given length
+     * (e.g., by the previous attempt to upload the file).
+     *
+     * @param file           the file
+     * @param digest         the digest to update
+     * @param digestedLength the length of the prefix of the file already digested
+     * @throws FileNotFoundException cannot open the file
+     */
+    DigestingRandomAccessFile(@NotNull File file, @NotNull ContentHasher.Digest digest, long digestedLength) throws FileNotFoundException {
+        super(file, "r");
+        this.digest = digest;
+        this.digestedLength = digestedLength;
+    }
+
+    /**
+     * Get the length of the prefix of the file which has been digested.
+     *
+     * @return the length of the digested prefix
+     */
+    long getDigestedLength() {
+        return digestedLength;
+    }
+
+    /**
+     * Update the digest by the rest of the file which has not been read yet, so the digest covers the whole file.
+     *
+     * @throws IOException cannot read the file
+     */
+    void digestRemaining() throws IOException {
+        final long filePointer = getFilePointer();
+        catchUp(length());
+        super.seek(filePointer);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final long position = getFilePointer();
+        final int b = super.read();
+        if (b != -1 && position == digestedLength) {
+            digest.update(new byte[]{(byte) b}, 0, 1);
+            digestedLength++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+        final long position = getFilePointer();
+        final int n = super.read(b, off, len);
+        digestRead(position, b, off, n);
+        return n;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b) throws IOException {
+        final long position = getFilePointer();
+        final int n = super.read(b);
+        digestRead(position, b, 0, n);
+        return n;
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+        if (pos > digestedLength) {
+            catchUp(pos);
+        }
+        super.seek(pos);
+    }
+
+    private void digestRead(long position, @NotNull byte[] b, int off, int n) {
+        // digest only the part of the read bytes that continues the digested prefix
+        if (n > 0 && position <= digestedLength && position + n > digestedLength) {
+            final int skip = (int) (digestedLength - position);
+            digest.update(b, off + skip, n - skip);
+            digestedLength = position + n;
+        }
+    }
+
+    private void catchUp(long targetLength) throws IOException {
+        if (digestedLength >= targetLength) {
+            return;
+        }
+        super.seek(digestedLength);
+        final byte[] buffer = new byte[CATCH_UP_BUFFER_SIZE];
+        while (digestedLength < targetLength) {
+            final int n = super.read(buffer, 0, (int) Math.min(buffer.length, targetLength - digestedLength));
+            if (n == -1) {
+                break;
+            }
+            digest.update(buffer, 0, n);
+            digestedLength += n;
+        }
+    }
+}
@@ -1,29 +1,36 @@
 package io.gitlab.rychly.gphotos_uploader.gphotos;
 
-import com.google.common.collect.Lists;
+import com.google.api.gax.rpc.ApiException;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.photos.library.v1.PhotosLibraryClient;
-import com.google.photos.library.v1.internal.InternalPhotosLibraryClient;
-import com.google.photos.library.v1.proto.BatchCreateMediaItemsResponse;
-import com.google.photos.library.v1.proto.NewMediaItem;
-import com.google.photos.library.v1.proto.NewMediaItemResult;
+import com.google.photos.library.v1.proto.*;
 import com.google.photos.library.v1.upload.UploadMediaItemRequest;
 import com.google.photos.library.v1.upload.UploadMediaItemResponse;
 import com.google.photos.library.v1.util.NewMediaItemFactory;
 import com.google.photos.types.proto.Album;
 import com.google.photos.types.proto.MediaItem;
+import com.google.photos.types.proto.SharedAlbumOptions;
 import com.google.rpc.Code;
 import io.gitlab.rychly.gphotos_uploader.i18n.Messages;
 import io.gitlab.rychly.gphotos_uploader.i18n.ResourceBundleFactory;
+import io.gitlab.rychly.gphotos_uploader.index.AlbumMediaItemIndex;
+import io.gitlab.rychly.gphotos_uploader.index.MediaFileIndex;
 import io.gitlab.rychly.gphotos_uploader.logger.LoggerFactory;
+import io.gitlab.rychly.gphotos_uploader.metrics.Metrics;
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.commons.lang3.tuple.Triple;
+import org.apache.http.client.HttpResponseException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -39,6 +46,132 @@ public class GPhotos {
      */
     public static final int CREATE_MEDIA_ITEMS_BATCH_LIMIT = 50;
 
+    /**
+     * Maximal number of media files submitted for uploading at once (i.e., uploading or waiting for an upload thread),
+     * the next files are submitted as soon as the previous uploads are completed.
+     */
+    public static final int MAX_PENDING_UPLOADS = 2 * CREATE_MEDIA_ITEMS_BATCH_LIMIT;
+
+    /**
+     * Default size of chunks of the resumable uploads (the size must be a multiple of 256 KiB).
+     */
+    public static final int DEFAULT_UPLOAD_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Default number of attempts to upload a file, the next attempt resumes the upload of the previous attempt if possible.
+     */
+    public static final int DEFAULT_UPLOAD_ATTEMPTS = 3;
+
+    /**
+     * Initial delay before the next attempt to upload a file, the delay is doubled for each next attempt.
+     */
+    private static final long UPLOAD_RETRY_INITIAL_DELAY_MILLIS = 1000;
+
+    /**
+     * Default number of attempts to create new media items of a batch, the failed items are re-queued for the next attempt.
+     */
+    public static final int DEFAULT_CREATE_MEDIA_ITEMS_ATTEMPTS = 5;
+
+
+    /**
+     * HTTP status of the rate-limited uploads.
+     */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private static final Metrics.Counter UPLOADED_BYTES = Metrics.counter("uploaded_bytes_total", "Bytes of media files uploaded.");
+    private static final Metrics.Counter UPLOADED_FILES = Metrics.counter("uploaded_files_total", "Media files uploaded.");
+    private static final Metrics.Histogram UPLOAD_SECONDS = Metrics.histogram("upload_seconds",
+            "Duration of the upload of a media file including its retries.", Metrics.SECONDS_BUCKETS);
+    private static final Metrics.Counter CREATED_MEDIA_ITEMS = Metrics.counter("created_media_items_total", "Media items created in albums.");
+    private static final Metrics.Histogram LISTED_MEDIA_ITEMS = Metrics.histogram("listed_album_media_items",
+            "Media items of an album listed from the Google Photos API (not from the album media item index).", Metrics.COUNT_BUCKETS);
+
+    static {
+        Metrics.rate("uploaded_bytes_per_second", "Average rate of bytes of media files uploaded.", UPLOADED_BYTES);
+    }
+
+    private static int uploadChunkSize = DEFAULT_UPLOAD_CHUNK_SIZE;
+    private static int uploadAttempts = DEFAULT_UPLOAD_ATTEMPTS;
+    private static int createMediaItemsAttempts = DEFAULT_CREATE_MEDIA_ITEMS_ATTEMPTS;
+    private static RequestScheduler requestScheduler =
+            new RequestScheduler(RequestScheduler.DEFAULT_REQUESTS_PER_SECOND, RequestScheduler.DEFAULT_MAX_CONCURRENCY);
+    private static AlbumMediaItemIndex albumMediaItemIndex = null;
+    private static DiffEngine diffEngine = DiffEngine.HASH;
+
+    /**
+     * Set the size of chunks of the resumable uploads.
+     *
+     * @param uploadChunkSize the chunk size in bytes (a multiple of 256 KiB)
+     */
+    public static void setUploadChunkSize(int uploadChunkSize) {
+        GPhotos.uploadChunkSize = uploadChunkSize;
+    }
+
+    /**
+     * Set the number of attempts to upload a file.
+     *
+     * @param uploadAttempts the number of attempts (at least one)
+     */
+    public static void setUploadAttempts(int uploadAttempts) {
+        GPhotos.uploadAttempts = Math.max(1, uploadAttempts);
+    }
+
+    /**
+     * Set the number of attempts to create new media items of a batch.
+     *
+     * @param createMediaItemsAttempts the number of attempts (at least one)
+     */
+    public static void setCreateMediaItemsAttempts(int createMediaItemsAttempts) {
+        GPhotos.createMediaItemsAttempts = Math.max(1, createMediaItemsAttempts);
+    }
+
+    /**
+     * Get the scheduler of all the requests of the photos library clients.
+     *
+     * @return the request scheduler
+     */
+    @NotNull
+    public static RequestScheduler getRequestScheduler() {
+        return requestScheduler;
+    }
+
+    /**
+     * Set the scheduler of all the requests of the photos library clients.
+     *
+     * @param requestScheduler the request scheduler
+     */
+    public static void setRequestScheduler(@NotNull RequestScheduler requestScheduler) {
+        GPhotos.requestScheduler = requestScheduler;
+    }
+
+    /**
+     * Get the index of media items of albums.
+     *
+     * @return the index or <code>null</code> if the media items of albums are not indexed
+     */
+    @Nullable
+    public static AlbumMediaItemIndex getAlbumMediaItemIndex() {
+        return albumMediaItemIndex;
+    }
+
+    /**
+     * Set the index of media items of albums, the media items of an album are then listed only if its count of media items changed.
+     *
+     * @param albumMediaItemIndex the index or <code>null</code> to always list the media items
+     */
+    public static void setAlbumMediaItemIndex(@Nullable AlbumMediaItemIndex albumMediaItemIndex) {
+        GPhotos.albumMediaItemIndex = albumMediaItemIndex;
+    }
+
+    /**
+     * Set the engine comparing media files with media items of albums.
+     *
+     * @param diffEngine the diff engine
+     */
+    public static void setDiffEngine(@NotNull DiffEngine diffEngine) {
+        GPhotos.diffEngine = diffEngine;
+    }
+
     /**
      * List all albums in the user's library to be able to iterate over all the albums in this list (pagination is handled automatically).
      *
@@ -46,8 +179,7 @@ public class GPhotos {
      * @return the iterator over the list of all albums
      */
     public static Iterable<Album> getAlbums(@NotNull PhotosLibraryClient photosLibraryClient) {
-        final InternalPhotosLibraryClient.ListAlbumsPagedResponse listAlbumsPagedResponse = photosLibraryClient.listAlbums();
-        return listAlbumsPagedResponse.iterateAll();
+        return requestScheduler.iterateAll(RequestScheduler.Operation.LIST, () -> photosLibraryClient.listAlbums().getPage());
 
     }
 
@@ -58,11 +190,20 @@ public class GPhotos {
      * @return the iterator over the list of all shared albums
      */
     public static Iterable<Album> getSharedAlbums(@NotNull PhotosLibraryClient photosLibraryClient) {
-        final InternalPhotosLibraryClient.ListSharedAlbumsPagedResponse listSharedAlbumsPagedResponse = photosLibraryClient.listSharedAlbums();
-        return listSharedAlbumsPagedResponse.iterateAll();
+        return requestScheduler.iterateAll(RequestScheduler.Operation.LIST, () -> photosLibraryClient.listSharedAlbums().getPage());
 
     }
 
+    /**
+     * List all media items in the user's library to be able to iterate over all the media items in this list (pagination is handled automatically).
+     *
+     * @param photosLibraryClient the photos library client
+     * @return the iterator over the list of all media items
+     */
+    public static Iterable<MediaItem> getLibraryMediaItems(@NotNull PhotosLibraryClient photosLibraryClient) {
+        return requestScheduler.iterateAll(RequestScheduler.Operation.LIST, () -> photosLibraryClient.listMediaItems().getPage());
+    }
+
     /**
      * Get an album of a given identifier.
      *
@@ -71,7 +212,7 @@ public class GPhotos {
      * @return the album
      */
     public static Album getAlbum(@NotNull PhotosLibraryClient photosLibraryClient, String id) {
-        return photosLibraryClient.getAlbum(id);
+        return requestScheduler.call(RequestScheduler.Operation.GET, () -> photosLibraryClient.getAlbum(id));
     }
 
     /**
@@ -111,7 +252,74 @@ public class GPhotos {
         // find the first album with the given title
         final Optional<Album> album = getAlbumsStreamByTitle(photosLibraryClient, title, false).findFirst();
         // (only) if absent create a new album with the given title
-        return album.orElseGet(() -> photosLibraryClient.createAlbum(title));
+        return album.orElseGet(() -> createAlbum(photosLibraryClient, title));
+    }
+
+    /**
+     * Create a new album of a given title.
+     *
+     * @param photosLibraryClient the photos library client
+     * @param title               the album title
+     * @return the new album
+     */
+    public static Album createAlbum(@NotNull PhotosLibraryClient photosLibraryClient, String title) {
+        return requestScheduler.call(RequestScheduler.Operation.CREATE_ALBUM, () -> photosLibraryClient.createAlbum(title));
+    }
+
+    /**
+     * Share an album of a given identifier.
+     *
+     * @param photosLibraryClient the photos library client
+     * @param id                  the album identifier
+     * @param sharedAlbumOptions  the options of the sharing
+     * @return the response with the share info of the album
+     */
+    public static ShareAlbumResponse shareAlbum(@NotNull PhotosLibraryClient photosLibraryClient, String id, @NotNull SharedAlbumOptions sharedAlbumOptions) {
+        return requestScheduler.call(RequestScheduler.Operation.SHARE, () -> photosLibraryClient.shareAlbum(id, sharedAlbumOptions));
+    }
+
+    /**
+     * Unshare an album of a given identifier.
+     *
+     * @param photosLibraryClient the photos library client
+     * @param id                  the album identifier
+     * @return the response of the unsharing
+     */
+    public static UnshareAlbumResponse unshareAlbum(@NotNull PhotosLibraryClient photosLibraryClient, String id) {
+        return requestScheduler.call(RequestScheduler.Operation.SHARE, () -> photosLibraryClient.unshareAlbum(id));
+    }
+
+    /**
+     * Join a shared album of a given share token.
+     *
+     * @param photosLibraryClient the photos library client
+     * @param shareToken          the share token
+     * @return the response with the joined album
+     */
+    public static JoinSharedAlbumResponse joinSharedAlbum(@NotNull PhotosLibraryClient photosLibraryClient, String shareToken) {
+        return requestScheduler.call(RequestScheduler.Operation.JOIN, () -> photosLibraryClient.joinSharedAlbum(shareToken));
+    }
+
+    /**
+     * Leave a shared album of a given share token.
+     *
+     * @param photosLibraryClient the photos library client
+     * @param shareToken          the share token
+     * @return the response of the leaving
+     */
+    public static LeaveSharedAlbumResponse leaveSharedAlbum(@NotNull PhotosLibraryClient photosLibraryClient, String shareToken) {
+        return requestScheduler.call(RequestScheduler.Operation.JOIN, () -> photosLibraryClient.leaveSharedAlbum(shareToken));
+    }
+
+    /**
+     * Get or create an album of a given title by a cache of albums (the albums are not listed for each call).
+     *
+     * @param albumCache the cache of albums
+     * @param title      the album title
+     * @return the album
+     */
+    public static Album getOrCreateAlbum(@NotNull AlbumCache albumCache, String title) {
+        return albumCache.getOrCreateAlbum(title);
     }
 
     /**
@@ -122,9 +330,38 @@ public class GPhotos {
      * @return the iterator over the list of media items
      */
     public static Iterable<MediaItem> getMediaItems(@NotNull PhotosLibraryClient photosLibraryClient, @NotNull Album album) {
-        final InternalPhotosLibraryClient.SearchMediaItemsPagedResponse searchMediaItemsPagedResponse =
-                photosLibraryClient.searchMediaItems(album.getId());
-        return searchMediaItemsPagedResponse.iterateAll();
+        return requestScheduler.iterateAll(RequestScheduler.Operation.SEARCH, () -> photosLibraryClient.searchMediaItems(album.getId()).getPage());
+    }
+
+    /**
+     * Get all media items in a given album from the index of media items of albums if the count of media items in the album
+     * has not changed since their indexing (so just the album is fetched), or list them and index them otherwise.
+     * Without the index, the media items are listed lazily page by page; with the index, they are kept just in their compact forms
+     * and sorted by {@link DiffEngine#MEDIA_ITEM_ORDER}.
+     *
+     * @param photosLibraryClient the photos library client
+     * @param album               the album
+     * @return the media items
+     */
+    public static Iterable<MediaItem> getIndexedMediaItems(@NotNull PhotosLibraryClient photosLibraryClient, @NotNull Album album) {
+        final AlbumMediaItemIndex index = albumMediaItemIndex;
+        if (index == null) {
+            return getMediaItems(photosLibraryClient, album);
+        }
+        // the count of the album may be outdated (e.g., in a snapshot of albums), so fetch the current one
+        final long mediaItemsCount = getAlbum(photosLibraryClient, album.getId()).getMediaItemsCount();
+        final List<MediaItem> indexedMediaItems = index.getMediaItems(album.getId(), mediaItemsCount);
+        if (indexedMediaItems != null) {
+            return indexedMediaItems;
+        }
+        final List<MediaItem> compactMediaItems = new ArrayList<>();
+        for (MediaItem mediaItem : getMediaItems(photosLibraryClient, album)) {
+            compactMediaItems.add(AlbumMediaItemIndex.compactMediaItem(mediaItem));
+        }
+        LISTED_MEDIA_ITEMS.observe(compactMediaItems.size());
+        compactMediaItems.sort(DiffEngine.MEDIA_ITEM_ORDER);
+        index.putMediaItems(album.getId(), mediaItemsCount, compactMediaItems);
+        return compactMediaItems;
     }
 
     /**
@@ -135,38 +372,54 @@ public class GPhotos {
      * @return the media item
      */
     public static MediaItem getMediaItem(@NotNull PhotosLibraryClient photosLibraryClient, String id) {
-        return photosLibraryClient.getMediaItem(id);
+        return requestScheduler.call(RequestScheduler.Operation.GET, () -> photosLibraryClient.getMediaItem(id));
     }
 
     /**
-     * Classify media items of a given album to those matching a given files, non-matching the files,
-     * and also provide a collection of files missing in the media items.
+     * Add given existing media items of the user's library into a given album created by the application.
      *
      * @param photosLibraryClient the photos library client
-     * @param files               a stream of the media files
      * @param album               the album
-     * @return a triplet of the collections of media items matching the files, non-matching the files, and the collection of files missing in the media items
+     * @param mediaItemIds        the identifiers of the media items (the count is limited by {@link #CREATE_MEDIA_ITEMS_BATCH_LIMIT})
+     * @return the response
+     */
+    public static BatchAddMediaItemsToAlbumResponse addMediaItemsToAlbum(@NotNull PhotosLibraryClient photosLibraryClient, @NotNull Album album,
+                                                                         @NotNull List<String> mediaItemIds) {
+        return requestScheduler.call(RequestScheduler.Operation.BATCH_ADD, () -> photosLibraryClient.batchAddMediaItemsToAlbum(album.getId(), mediaItemIds));
+    }
+
+    /**
+     * Classify media items of a given album to those matching a given files and non-matching the files, and files missing in the media items,
+     * by the engine set by {@link #setDiffEngine(DiffEngine)}, and provide a collection of the files missing in the media items.
+     * The {@link DiffEngine#HASH} engine classifies the media items as they are listed (so the media items are not kept).
+     * The {@link DiffEngine#MERGE} engine merges the media items sorted by the index of media items of albums (if set),
+     * or lists them in their compact forms (see {@link AlbumMediaItemIndex#compactMediaItem(MediaItem)}) and sorts them otherwise,
+     * with the media files sorted by their names.
+     *
+     * @param photosLibraryClient the photos library client
+     * @param album               the album
+     * @param files               a stream of the media files
+     * @param mediaItemVisitor    the visitor of the matching and non-matching media items and the missing media files
+     * @return the collection of files missing in the media items
+     * @throws IOException              the visitor cannot access a media file
+     * @throws NoSuchAlgorithmException the visitor cannot find a checksum algorithm
      */
     @NotNull
-    public static Triple<Collection<MediaItem>, Collection<MediaItem>, Collection<MediaFile>> classifyMediaItemsByFilesAndGetMissingFiles(
-            @NotNull PhotosLibraryClient photosLibraryClient, Album album, @NotNull Stream<MediaFile> files) {
-        // create a linked hash map for fast search of the files by their names with keeping their order as in the stream
-        final Map<String, MediaFile> stringMediaFileMap =
-                files.collect(Collectors.toMap(MediaFile::getName, mediaFile -> mediaFile,
-                        (v1, v2) -> {
-                            throw new RuntimeException(String.format("Duplicate file-names for media files %s and %s", v1, v2));
-                        },
-                        LinkedHashMap::new));
-        // classify media items to two classes: matching and non-matching the files
-        final Map<Boolean, List<MediaItem>> mediaItemsClassifiedByFiles =
-                StreamSupport.stream(getMediaItems(photosLibraryClient, album).spliterator(), false)
-                        .collect(Collectors.partitioningBy(mediaItem -> stringMediaFileMap.containsKey(mediaItem.getFilename())));
-        // remove the file names of the matching media items from the input file-names collection
-        for (MediaItem mediaItem : mediaItemsClassifiedByFiles.get(true)) {
-            stringMediaFileMap.remove(mediaItem.getFilename());
+    public static Collection<MediaFile> classifyMediaItemsByFiles(
+            @NotNull PhotosLibraryClient photosLibraryClient, Album album, @NotNull Stream<MediaFile> files,
+            @NotNull MediaItemVisitor mediaItemVisitor) throws IOException, NoSuchAlgorithmException {
+        final DiffEngine engine = diffEngine;
+        Iterable<MediaItem> mediaItems = getIndexedMediaItems(photosLibraryClient, album);
+        if (engine.isRequiringSortedMediaItems() && albumMediaItemIndex == null) {
+            // the listed media items are in no particular order, so they are kept, but just in their compact forms
+            final List<MediaItem> sortedMediaItems = new ArrayList<>();
+            for (MediaItem mediaItem : mediaItems) {
+                sortedMediaItems.add(AlbumMediaItemIndex.compactMediaItem(mediaItem));
+            }
+            sortedMediaItems.sort(DiffEngine.MEDIA_ITEM_ORDER);
+            mediaItems = sortedMediaItems;
         }
-        return Triple.of(mediaItemsClassifiedByFiles.get(true), mediaItemsClassifiedByFiles.get(false),
-                stringMediaFileMap.values());
+        return engine.diff(files.collect(Collectors.toList()), mediaItems, mediaItemVisitor);
     }
 
     /**
@@ -179,50 +432,280 @@ public class GPhotos {
      */
     public static Stream<MediaItem> createMediaItems(
             @NotNull PhotosLibraryClient photosLibraryClient, @NotNull Album album, @NotNull Collection<MediaFile> files) {
-        // upload media files and prepare corresponding new media items
-        final List<NewMediaItem> newMediaItemList = files.stream()
-                .flatMap(mediaFile -> {
-                    try {
-                        LoggerFactory.getLogger().fine(
-                                ResourceBundleFactory.msg(Messages.UPLOADING_FILE_1, mediaFile.getAbsolutePath()));
-                        return Stream.of(Pair.of(mediaFile, uploadMedia(photosLibraryClient, mediaFile)));
-                    } catch (IOException e) {
-                        LoggerFactory.getLogger().log(Level.SEVERE,
-                                ResourceBundleFactory.msg(Messages.SKIPPING_FILE_UPLOAD_2,
-                                        mediaFile.getAbsolutePath(), e.getMessage()),
-                                e);
-                        return Stream.empty();
+        return createMediaItems(photosLibraryClient, album, files, null);
+    }
+
+    /**
+     * Create new media items in a given album by uploading given files and return a stream of resulting media items.
+     * The upload tokens and identifiers of the created media items are recorded in a given index of media files.
+     *
+     * @param photosLibraryClient the photos library client
+     * @param album               the album
+     * @param files               the files
+     * @param mediaFileIndex      the view of the index of media files for the current profile or <code>null</code> to not record the states
+     * @return the stream of the successfully created media items
+     */
+    public static Stream<MediaItem> createMediaItems(
+            @NotNull PhotosLibraryClient photosLibraryClient, @NotNull Album album, @NotNull Collection<MediaFile> files,
+            @Nullable MediaFileIndex.Profile mediaFileIndex) {
+        return createMediaItems(photosLibraryClient, album, files, mediaFileIndex, MoreExecutors.newDirectExecutorService());
+    }
+
+    /**
+     * Create new media items in a given album by uploading given files concurrently and return a stream of resulting media items.
+     * The files are uploaded by a given executor service and the new media items are created in batches as soon as each batch is filled.
+     * The upload tokens and identifiers of the created media items are recorded in a given index of media files.
+     *
+     * @param photosLibraryClient   the photos library client
+     * @param album                 the album
+     * @param files                 the files
+     * @param mediaFileIndex        the view of the index of media files for the current profile or <code>null</code> to not record the states
+     * @param uploadExecutorService the executor service to upload the files (its pool size limits the number of concurrent uploads)
+     * @return the stream of the successfully created media items
+     */
+    public static Stream<MediaItem> createMediaItems(
+            @NotNull PhotosLibraryClient photosLibraryClient, @NotNull Album album, @NotNull Collection<MediaFile> files,
+            @Nullable MediaFileIndex.Profile mediaFileIndex, @NotNull ExecutorService uploadExecutorService) {
+        final List<MediaItem> mediaItemList = new ArrayList<>(files.size());
+        createMediaItems(photosLibraryClient, album, files, mediaFileIndex, uploadExecutorService, mediaItemList::add);
+        return mediaItemList.stream();
+    }
+
+    /**
+     * Create new media items in a given album by uploading given files concurrently and provide the resulting media items to a given consumer
+     * as soon as each batch is created. Just a limited number of the files are submitted to a given executor service at once
+     * (see {@link #MAX_PENDING_UPLOADS}), so neither the uploads nor the created media items are accumulated for all the files.
+     * The upload tokens and identifiers of the created media items are recorded in a given index of media files.
+     *
+     * @param photosLibraryClient   the photos library client
+     * @param album                 the album
+     * @param files                 the files
+     * @param mediaFileIndex        the view of the index of media files for the current profile or <code>null</code> to not record the states
+     * @param uploadExecutorService the executor service to upload the files (its pool size limits the number of concurrent uploads)
+     * @param mediaItemConsumer     the consumer of the successfully created media items
+     * @return the number of the successfully created media items
+     */
+    public static long createMediaItems(
+            @NotNull PhotosLibraryClient photosLibraryClient, @NotNull Album album, @NotNull Collection<MediaFile> files,
+            @Nullable MediaFileIndex.Profile mediaFileIndex, @NotNull ExecutorService uploadExecutorService,
+            @NotNull Consumer<MediaItem> mediaItemConsumer) {
+        // upload media files and prepare corresponding new media items, keep a limited number of the uploads pending
+        final CompletionService<Pair<MediaFile, NewMediaItem>> completionService = new ExecutorCompletionService<>(uploadExecutorService);
+        final Set<Future<Pair<MediaFile, NewMediaItem>>> pendingFutures = new HashSet<>();
+        final Iterator<MediaFile> fileIterator = files.iterator();
+        // create new media items in batches of limited size as soon as the uploads are completed
+        final Map<String, MediaFile> uploadTokenMediaFileMap = new HashMap<>();
+        final List<NewMediaItem> newMediaItemBatch = new ArrayList<>(CREATE_MEDIA_ITEMS_BATCH_LIMIT);
+        final AlbumMediaItemIndex index = albumMediaItemIndex;
+        final Consumer<List<MediaItem>> createdMediaItemsConsumer = mediaItems -> {
+            if (index != null && !mediaItems.isEmpty()) {
+                index.addMediaItems(album.getId(), mediaItems);
+            }
+            CREATED_MEDIA_ITEMS.add(mediaItems.size());
+            mediaItems.forEach(mediaItemConsumer);
+        };
+        long createdMediaItems = 0;
+        try {
+            while (fileIterator.hasNext() || !pendingFutures.isEmpty()) {
+                while (fileIterator.hasNext() && pendingFutures.size() < MAX_PENDING_UPLOADS) {
+                    final MediaFile mediaFile = fileIterator.next();
+                    pendingFutures.add(completionService.submit(() -> uploadMediaAndPrepareNewMediaItem(photosLibraryClient, mediaFile, mediaFileIndex)));
+                }
+                final Future<Pair<MediaFile, NewMediaItem>> future = completionService.take();
+                pendingFutures.remove(future);
+                final Pair<MediaFile, NewMediaItem> pair = future.get();
+                if (pair != null) {
+                    uploadTokenMediaFileMap.put(pair.getRight().getSimpleMediaItem().getUploadToken(), pair.getLeft());
+                    newMediaItemBatch.add(pair.getRight());
+                    if (newMediaItemBatch.size() == CREATE_MEDIA_ITEMS_BATCH_LIMIT) {
+                        final List<MediaItem> mediaItems = batchCreateMediaItems(photosLibraryClient, album, newMediaItemBatch,
+                                uploadTokenMediaFileMap, mediaFileIndex);
+                        createdMediaItems += mediaItems.size();
+                        createdMediaItemsConsumer.accept(mediaItems);
+                        newMediaItemBatch.clear();
                     }
-                }).flatMap(pair -> {
-                    final MediaFile mediaFile = pair.getLeft();
-                    final String uploadedContentToken = pair.getRight();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pendingFutures.forEach(future -> future.cancel(true));
+        } catch (ExecutionException e) {
+            // uploadMediaAndPrepareNewMediaItem handles all the checked exceptions, so this is a runtime exception
+            pendingFutures.forEach(future -> future.cancel(true));
+            throw new RuntimeException(e.getCause());
+        }
+        if (!newMediaItemBatch.isEmpty()) {
+            final List<MediaItem> mediaItems = batchCreateMediaItems(photosLibraryClient, album, newMediaItemBatch,
+                    uploadTokenMediaFileMap, mediaFileIndex);
+            createdMediaItems += mediaItems.size();
+            createdMediaItemsConsumer.accept(mediaItems);
+        }
+        return createdMediaItems;
+    }
+
+    /**
+     * Upload a given media file and prepare its new media item.
+     * If the content checksum of the media file is not available yet, it is computed from the bytes being uploaded,
+     * so the file is read just once for both the upload and the description of its new media item.
+     *
+     * @param photosLibraryClient the photos library client
+     * @param mediaFile           the media file
+     * @param mediaFileIndex      the view of the index of media files for the current profile or <code>null</code> to not record the states
+     * @return the pair of the media file and its new media item or <code>null</code> if the file cannot be uploaded or its new media item cannot be prepared
+     */
+    @Nullable
+    private static Pair<MediaFile, NewMediaItem> uploadMediaAndPrepareNewMediaItem(
+            @NotNull PhotosLibraryClient photosLibraryClient, @NotNull MediaFile mediaFile, @Nullable MediaFileIndex.Profile mediaFileIndex) {
+        final String uploadToken;
+        final ContentHasher.Digest digest;
+        final BasicFileAttributes hashedFileAttributes;
+        try {
+            LoggerFactory.log(Level.FINE, Messages.UPLOADING_FILE_1, mediaFile.getAbsolutePath());
+            final String indexedUploadToken = mediaFileIndex == null ? null : mediaFileIndex.getUploadToken(mediaFile);
+            if (indexedUploadToken != null) {
+                // the content has been already uploaded but its media item has not been created
+                LoggerFactory.log(Level.FINE, Messages.REUSING_UPLOAD_TOKEN_1, mediaFile.getAbsolutePath());
+                digest = null;
+                hashedFileAttributes = null;
+                uploadToken = indexedUploadToken;
+            } else {
+                digest = mediaFile.hasContentChecksum() ? null : ContentHasher.newDigest(MediaFile.getChecksumAlgorithm());
+                // the attributes before the upload validate the checksum of the uploaded content in the index
+                hashedFileAttributes = digest != null ? MediaFileIndex.readAttributes(mediaFile) : null;
+                uploadToken = uploadMedia(photosLibraryClient, mediaFile, mediaFileIndex, digest);
+            }
+        } catch (IOException | NoSuchAlgorithmException e) {
+            LoggerFactory.getLogger().log(Level.SEVERE,
+                    ResourceBundleFactory.msg(Messages.SKIPPING_FILE_UPLOAD_2,
+                            mediaFile.getAbsolutePath(), e.getMessage()),
+                    e);
+            return null;
+        }
+        try {
+            if (digest != null) {
+                mediaFile.setContentChecksum(digest.digest(), hashedFileAttributes);
+            }
+            final NewMediaItem newMediaItem = NewMediaItemFactory.createNewMediaItem(uploadToken, mediaFile.generateDescription());
+            if (mediaFileIndex != null) {
+                mediaFileIndex.putUploadToken(mediaFile, uploadToken);
+            }
+            return Pair.of(mediaFile, newMediaItem);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            LoggerFactory.getLogger().log(Level.SEVERE,
+                    ResourceBundleFactory.msg(Messages.SKIPPING_MEDIA_ITEM_CREATION_2,
+                            mediaFile.getAbsolutePath(), e.getMessage()),
+                    e);
+            return null;
+        }
+    }
+
+    /**
+     * Create a batch of new media items in a given album.
+     * The new media items which failed by a transient error (including the rate limiting) are re-queued with their upload tokens
+     * and retried, the whole batch is retried if the request failed by a transient error. The retries are paced by the request scheduler,
+     * i.e., they wait for the backoff of the operation caused by the failures (see {@link RequestScheduler.Permit#backOff()}).
+     * The upload tokens of the media items which failed permanently remain in the index of media files to be reused by the next run.
+     *
+     * @param photosLibraryClient     the photos library client
+     * @param album                   the album
+     * @param newMediaItemBatch       the batch of new media items (the size of the batch is limited by {@link #CREATE_MEDIA_ITEMS_BATCH_LIMIT})
+     * @param uploadTokenMediaFileMap the map of upload tokens to their media files
+     * @param mediaFileIndex          the view of the index of media files for the current profile or <code>null</code> to not record the states
+     * @return the list of the successfully created media items
+     */
+    @NotNull
+    private static List<MediaItem> batchCreateMediaItems(
+            @NotNull PhotosLibraryClient photosLibraryClient, @NotNull Album album, @NotNull List<NewMediaItem> newMediaItemBatch,
+            @NotNull Map<String, MediaFile> uploadTokenMediaFileMap, @Nullable MediaFileIndex.Profile mediaFileIndex) {
+        final List<MediaItem> mediaItemList = new ArrayList<>(newMediaItemBatch.size());
+        List<NewMediaItem> pendingNewMediaItems = new ArrayList<>(newMediaItemBatch);
+        for (int attempt = 1; !pendingNewMediaItems.isEmpty(); attempt++) {
+            final boolean isLastAttempt = attempt >= createMediaItemsAttempts;
+            final List<NewMediaItem> failedNewMediaItems = new ArrayList<>();
+            String failure = null;
+            try {
+                LoggerFactory.getLogger().fine(
+                        ResourceBundleFactory.msg(Messages.CREATING_MEDIA_ITEMS_1, pendingNewMediaItems.size()));
+                final BatchCreateMediaItemsResponse batchCreateMediaItemsResponse;
+                try (final RequestScheduler.Permit permit = requestScheduler.acquire(RequestScheduler.Operation.BATCH_CREATE)) {
                     try {
-                        return Stream.of(NewMediaItemFactory.createNewMediaItem(uploadedContentToken, mediaFile.generateDescription()));
-                    } catch (IOException | NoSuchAlgorithmException e) {
-                        LoggerFactory.getLogger().log(Level.SEVERE,
-                                ResourceBundleFactory.msg(Messages.SKIPPING_MEDIA_ITEM_CREATION_2,
-                                        mediaFile.getAbsolutePath(), e.getMessage()),
-                                e);
-                        return Stream.empty();
+                        batchCreateMediaItemsResponse = photosLibraryClient.batchCreateMediaItems(album.getId(), pendingNewMediaItems);
+                    } catch (ApiException e) {
+                        if (RequestScheduler.isResourceExhausted(e)) {
+                            permit.throttled();
+                        } else if (isTransient(Code.valueOf(e.getStatusCode().getCode().name())) || e.isRetryable()) {
+                            permit.backOff();
+                        }
+                        throw e;
                     }
-                })
-                .collect(Collectors.toList());
-        // getLogger a list of streams of new media items created in batches of limited size
-        LoggerFactory.getLogger().fine(
-                ResourceBundleFactory.msg(Messages.CREATING_MEDIA_ITEMS_1, newMediaItemList.size()));
-        final List<Stream<MediaItem>> streamList = new LinkedList<>();
-        for (List<NewMediaItem> chunk : Lists.partition(newMediaItemList, CREATE_MEDIA_ITEMS_BATCH_LIMIT)) {
-            final BatchCreateMediaItemsResponse batchCreateMediaItemsResponse =
-                    photosLibraryClient.batchCreateMediaItems(album.getId(), chunk);
-            // getLogger resulting media items as a stream
-            final Stream<MediaItem> mediaItemStream = batchCreateMediaItemsResponse.getNewMediaItemResultsList().stream()
-                    .filter(newMediaItemResult -> newMediaItemResult.getStatus().getCode() == Code.OK_VALUE)
-                    .map(NewMediaItemResult::getMediaItem);
-            // add the stream into the list of streams
-            streamList.add(mediaItemStream);
+                    for (NewMediaItemResult newMediaItemResult : batchCreateMediaItemsResponse.getNewMediaItemResultsList()) {
+                        final Code code = Code.forNumber(newMediaItemResult.getStatus().getCode());
+                        if (code == Code.RESOURCE_EXHAUSTED) {
+                            permit.throttled();
+                        } else if (isTransient(code)) {
+                            permit.backOff();
+                        }
+                    }
+                }
+                final Map<String, NewMediaItem> uploadTokenNewMediaItemMap = new HashMap<>();
+                for (NewMediaItem newMediaItem : pendingNewMediaItems) {
+                    uploadTokenNewMediaItemMap.put(newMediaItem.getSimpleMediaItem().getUploadToken(), newMediaItem);
+                }
+                for (NewMediaItemResult newMediaItemResult : batchCreateMediaItemsResponse.getNewMediaItemResultsList()) {
+                    final Code code = Code.forNumber(newMediaItemResult.getStatus().getCode());
+                    if (code == Code.OK) {
+                        mediaItemList.add(newMediaItemResult.getMediaItem());
+                        // record the created media item in the index
+                        final MediaFile mediaFile = uploadTokenMediaFileMap.remove(newMediaItemResult.getUploadToken());
+                        if (mediaFileIndex != null && mediaFile != null) {
+                            try {
+                                mediaFileIndex.putMediaItemId(mediaFile, newMediaItemResult.getMediaItem().getId());
+                            } catch (IOException e) {
+                                LoggerFactory.getLogger().log(Level.WARNING, e.getMessage(), e);
+                            }
+                        }
+                    } else if (isTransient(code) && !isLastAttempt
+                            && uploadTokenNewMediaItemMap.containsKey(newMediaItemResult.getUploadToken())) {
+                        failedNewMediaItems.add(uploadTokenNewMediaItemMap.get(newMediaItemResult.getUploadToken()));
+                        failure = newMediaItemResult.getStatus().getMessage();
+                    } else {
+                        skipMediaItemCreation(uploadTokenMediaFileMap.remove(newMediaItemResult.getUploadToken()),
+                                newMediaItemResult.getStatus().getMessage());
+                    }
+                }
+            } catch (ApiException e) {
+                final Code code = Code.valueOf(e.getStatusCode().getCode().name());
+                if ((isTransient(code) || e.isRetryable()) && !isLastAttempt) {
+                    failedNewMediaItems.addAll(pendingNewMediaItems);
+                    failure = e.getMessage();
+                } else {
+                    for (NewMediaItem newMediaItem : pendingNewMediaItems) {
+                        skipMediaItemCreation(uploadTokenMediaFileMap.remove(newMediaItem.getSimpleMediaItem().getUploadToken()), e.getMessage());
+                    }
+                }
+            } catch (CancellationException e) {
+                // the upload tokens remain in the index to be reused by the next run
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (!failedNewMediaItems.isEmpty()) {
+                LoggerFactory.getLogger().warning(
+                        ResourceBundleFactory.msg(Messages.RETRYING_MEDIA_ITEMS_CREATION_3, failedNewMediaItems.size(), attempt + 1, failure));
+            }
+            pendingNewMediaItems = failedNewMediaItems;
         }
-        // return a flatten stream of the resulting media items
-        return streamList.stream().flatMap(mediaItemStream -> mediaItemStream);
+        return mediaItemList;
+    }
+
+    private static boolean isTransient(@Nullable Code code) {
+        return code == Code.RESOURCE_EXHAUSTED || code == Code.UNAVAILABLE || code == Code.DEADLINE_EXCEEDED
+                || code == Code.ABORTED || code == Code.INTERNAL;
+    }
+
+    private static void skipMediaItemCreation(@Nullable MediaFile mediaFile, String failure) {
+        LoggerFactory.getLogger().severe(
+                ResourceBundleFactory.msg(Messages.SKIPPING_MEDIA_ITEM_CREATION_2,
+                        mediaFile == null ? null : mediaFile.getAbsolutePath(), failure));
     }
 
     /**
@@ -238,14 +721,192 @@ public class GPhotos {
         try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
             final UploadMediaItemRequest uploadMediaItemRequest = UploadMediaItemRequest.newBuilder()
                     .setFileName(file.getName()).setDataFile(randomAccessFile).build();
-            final UploadMediaItemResponse uploadMediaItemResponse = photosLibraryClient.uploadMediaItem(uploadMediaItemRequest);
+            final UploadMediaItemResponse uploadMediaItemResponse = uploadMediaItem(photosLibraryClient, uploadMediaItemRequest);
             if (uploadMediaItemResponse.getError().isPresent() || !uploadMediaItemResponse.getUploadToken().isPresent()) {
                 throw new IOException(ResourceBundleFactory.msg(Messages.CANNOT_UPLOAD_FILE_2,
                         file.getAbsolutePath(), uploadMediaItemResponse.getError().toString()));
             } else {
+                UPLOADED_FILES.increment();
+                UPLOADED_BYTES.add(file.length());
                 return uploadMediaItemResponse.getUploadToken().get();
             }
         }
     }
 
+    /**
+     * Upload a media content from a given file by resumable uploads in chunks.
+     * The upload session of a file larger than a chunk is recorded in a given index of media files, so an interrupted upload
+     * is resumed from the last committed offset by the next attempt or by the next run.
+     *
+     * @param photosLibraryClient the photos library client
+     * @param file                the file to upload
+     * @param mediaFileIndex      the view of the index of media files for the current profile or <code>null</code> to not record the upload session
+     * @return the resulting token of the uploaded content
+     * @throws IOException the file cannot be found or uploaded
+     */
+    @NotNull
+    public static String uploadMedia(@NotNull PhotosLibraryClient photosLibraryClient, @NotNull File file,
+                                     @Nullable MediaFileIndex.Profile mediaFileIndex) throws IOException {
+        return uploadMedia(photosLibraryClient, file, mediaFileIndex, null);
+    }
+
+    /**
+     * Upload a media content from a given file by resumable uploads in chunks and update a given digest by the uploaded content.
+     * The digest is updated by the bytes as they are read for the upload (the bytes not read for the upload, e.g., those received
+     * by the server in the previous run, are read just for the digest), so it covers the whole content of the uploaded file.
+     *
+     * @param photosLibraryClient the photos library client
+     * @param file                the file to upload
+     * @param mediaFileIndex      the view of the index of media files for the current profile or <code>null</code> to not record the upload session
+     * @param digest              the digest to update by the content of the file or <code>null</code> to not compute any digest
+     * @return the resulting token of the uploaded content
+     * @throws IOException the file cannot be found or uploaded
+     */
+    @NotNull
+    public static String uploadMedia(@NotNull PhotosLibraryClient photosLibraryClient, @NotNull File file,
+                                     @Nullable MediaFileIndex.Profile mediaFileIndex, @Nullable ContentHasher.Digest digest) throws IOException {
+        String uploadUrl = mediaFileIndex == null ? null : mediaFileIndex.getUploadUrl(file);
+        if (uploadUrl != null) {
+            LoggerFactory.getLogger().fine(
+                    ResourceBundleFactory.msg(Messages.RESUMING_FILE_UPLOAD_1, file.getAbsolutePath()));
+        } else if (mediaFileIndex != null && file.length() > uploadChunkSize) {
+            // start the session in advance to be able to resume it in the next run (the index is saved periodically by the uploader)
+            uploadUrl = UploadSessions.startUploadSession(photosLibraryClient, file.getName(), file.length());
+            if (uploadUrl != null) {
+                mediaFileIndex.putUploadUrl(file, uploadUrl);
+            }
+        }
+        final long startNanos = System.nanoTime();
+        IOException lastException = null;
+        long digestedLength = 0;
+        for (int attempt = 1; attempt <= uploadAttempts; attempt++) {
+            if (attempt > 1) {
+                LoggerFactory.getLogger().warning(
+                        ResourceBundleFactory.msg(Messages.RETRYING_FILE_UPLOAD_3, file.getAbsolutePath(), attempt, lastException.getMessage()));
+                try {
+                    Thread.sleep(UPLOAD_RETRY_INITIAL_DELAY_MILLIS << (attempt - 2));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(e.getMessage());
+                }
+            }
+            if (uploadUrl == null) {
+                // start the session here, so just the session start (not the transfer of bytes) is paced by the request scheduler
+                uploadUrl = UploadSessions.startUploadSession(photosLibraryClient, file.getName(), file.length());
+                if (uploadUrl == null) {
+                    lastException = new IOException(ResourceBundleFactory.msg(Messages.CANNOT_UPLOAD_FILE_2,
+                            file.getAbsolutePath(), ResourceBundleFactory.msg(Messages.CANNOT_START_UPLOAD_SESSION)));
+                    continue;
+                }
+            }
+            try (final RandomAccessFile randomAccessFile = digest == null
+                    ? new RandomAccessFile(file, "r") : new DigestingRandomAccessFile(file, digest, digestedLength)) {
+                final UploadMediaItemRequest.Builder uploadMediaItemRequestBuilder = UploadMediaItemRequest.newBuilder()
+                        .setFileName(file.getName()).setDataFile(randomAccessFile).setChunkSize(uploadChunkSize);
+                if (uploadUrl != null) {
+                    uploadMediaItemRequestBuilder.setUploadUrl(uploadUrl);
+                }
+                final UploadMediaItemResponse uploadMediaItemResponse = uploadMediaItem(photosLibraryClient, uploadMediaItemRequestBuilder.build());
+                if (digest != null) {
+                    digestedLength = ((DigestingRandomAccessFile) randomAccessFile).getDigestedLength();
+                }
+                if (!uploadMediaItemResponse.getError().isPresent() && uploadMediaItemResponse.getUploadToken().isPresent()) {
+                    if (digest != null) {
+                        ((DigestingRandomAccessFile) randomAccessFile).digestRemaining();
+                    }
+                    UPLOAD_SECONDS.observeNanosSince(startNanos);
+                    UPLOADED_FILES.increment();
+                    UPLOADED_BYTES.add(file.length());
+                    return uploadMediaItemResponse.getUploadToken().get();
+                }
+                final Optional<UploadMediaItemResponse.Error> error = uploadMediaItemResponse.getError();
+                lastException = new IOException(ResourceBundleFactory.msg(Messages.CANNOT_UPLOAD_FILE_2,
+                        file.getAbsolutePath(), error.map(e -> String.valueOf(e.getCause())).orElse(error.toString())),
+                        error.map(UploadMediaItemResponse.Error::getCause).orElse(null));
+                // the next attempt resumes the session (including the one recorded in the index) unless the session has expired
+                final String resumeUrl = error.flatMap(UploadMediaItemResponse.Error::getResumeUrl).orElse(null);
+                if (resumeUrl == null || isUploadSessionExpired(photosLibraryClient, resumeUrl)) {
+                    uploadUrl = null;
+                    if (mediaFileIndex != null) {
+                        mediaFileIndex.removeUploadUrl(file);
+                    }
+                } else {
+                    uploadUrl = resumeUrl;
+                }
+            }
+        }
+        throw lastException;
+    }
+
+    /**
+     * Check whether an upload session has expired, i.e., the server rejects the query of its status.
+     * The session is considered to be resumable if its status cannot be queried, e.g., due to a network error.
+     *
+     * @param photosLibraryClient the photos library client
+     * @param uploadUrl           the upload URL of the session
+     * @return <code>true</code> iff the session cannot be resumed anymore
+     */
+    private static boolean isUploadSessionExpired(@NotNull PhotosLibraryClient photosLibraryClient, @NotNull String uploadUrl) {
+        try {
+            return UploadSessions.isUploadSessionExpired(photosLibraryClient, uploadUrl);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Upload a media item of a started session, i.e., transfer its bytes and finalize the upload.
+     * The transfer is not paced by the request scheduler (it holds no permit), however, the upload is reported to the scheduler
+     * as rate-limited if it failed by the HTTP status 429 (Too Many Requests).
+     *
+     * @param photosLibraryClient    the photos library client
+     * @param uploadMediaItemRequest the upload request
+     * @return the upload response
+     */
+    @NotNull
+    private static UploadMediaItemResponse uploadMediaItem(
+            @NotNull PhotosLibraryClient photosLibraryClient, @NotNull UploadMediaItemRequest uploadMediaItemRequest) {
+        final UploadMediaItemResponse uploadMediaItemResponse = photosLibraryClient.uploadMediaItem(uploadMediaItemRequest);
+        final Throwable cause = uploadMediaItemResponse.getError().map(UploadMediaItemResponse.Error::getCause).orElse(null);
+        if ((cause instanceof HttpResponseException && ((HttpResponseException) cause).getStatusCode() == HTTP_TOO_MANY_REQUESTS)
+                || (cause instanceof ApiException && RequestScheduler.isResourceExhausted((ApiException) cause))) {
+            requestScheduler.throttled(RequestScheduler.Operation.UPLOAD);
+        }
+        return uploadMediaItemResponse;
+    }
+
+
+    /**
+     * A visitor of media items of an album classified by their matching to media files.
+     */
+    public interface MediaItemVisitor {
+        /**
+         * Visit a media item matching a media file.
+         *
+         * @param mediaItem the media item
+         * @param mediaFile the matching media file
+         * @throws IOException              cannot access the media file
+         * @throws NoSuchAlgorithmException cannot find a checksum algorithm
+         */
+        void visitMatching(@NotNull MediaItem mediaItem, @NotNull MediaFile mediaFile) throws IOException, NoSuchAlgorithmException;
+
+        /**
+         * Visit a media item non-matching any media file.
+         *
+         * @param mediaItem the media item
+         * @throws IOException              cannot access a media file
+         * @throws NoSuchAlgorithmException cannot find a checksum algorithm
+         */
+        void visitNonMatching(@NotNull MediaItem mediaItem) throws IOException, NoSuchAlgorithmException;
+
+        /**
+         * Visit a media file missing in the media items.
+         *
+         * @param mediaFile the missing media file
+         * @throws IOException              cannot access the media file
+         * @throws NoSuchAlgorithmException cannot find a checksum algorithm
+         */
+        default void visitMissing(@NotNull MediaFile mediaFile) throws IOException, NoSuchAlgorithmException {
+        }
+    }
 }
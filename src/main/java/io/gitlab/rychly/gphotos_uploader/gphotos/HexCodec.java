@@ -0,0 +1,93 @@
+package io.gitlab.rychly.gphotos_uploader.gphotos;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Encoding of bytes into lower-case hexadecimal digits and decoding and comparing them back by precomputed tables.
+ */
+public final class HexCodec {
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < DIGITS.length; i++) {
+            VALUES[DIGITS[i]] = (byte) i;
+            VALUES[Character.toUpperCase(DIGITS[i])] = (byte) i;
+        }
+    }
+
+    private HexCodec() {
+    }
+
+    /**
+     * Append given bytes as lower-case hexadecimal digits (two digits per byte) to a given string builder.
+     *
+     * @param stringBuilder the string builder
+     * @param bytes         the bytes
+     * @return the string builder
+     */
+    @NotNull
+    public static StringBuilder appendTo(@NotNull StringBuilder stringBuilder, @NotNull byte[] bytes) {
+        stringBuilder.ensureCapacity(stringBuilder.length() + 2 * bytes.length);
+        for (byte b : bytes) {
+            stringBuilder.append(DIGITS[(b >> 4) & 0xf]).append(DIGITS[b & 0xf]);
+        }
+        return stringBuilder;
+    }
+
+    /**
+     * Decode bytes from hexadecimal digits (of any case) in a given range of a given character sequence.
+     *
+     * @param hex   the character sequence
+     * @param start the start index of the digits (inclusive)
+     * @param end   the end index of the digits (exclusive)
+     * @return the bytes or <code>null</code> if the range is not of an even number of hexadecimal digits
+     */
+    @Nullable
+    public static byte[] decode(@NotNull CharSequence hex, int start, int end) {
+        if (((end - start) & 1) != 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[(end - start) / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            final int high = digitValue(hex.charAt(start + 2 * i));
+            final int low = digitValue(hex.charAt(start + 2 * i + 1));
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    /**
+     * Check whether given bytes are encoded by hexadecimal digits (of any case) in a given range of a given character sequence,
+     * without decoding the digits.
+     *
+     * @param bytes the bytes
+     * @param hex   the character sequence
+     * @param start the start index of the digits (inclusive)
+     * @param end   the end index of the digits (exclusive)
+     * @return <code>true</code> iff the range consists of exactly the hexadecimal digits of the bytes
+     */
+    public static boolean isMatching(@NotNull byte[] bytes, @NotNull CharSequence hex, int start, int end) {
+        if (end - start != 2 * bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (digitValue(hex.charAt(start + 2 * i)) != ((bytes[i] >> 4) & 0xf)
+                    || digitValue(hex.charAt(start + 2 * i + 1)) != (bytes[i] & 0xf)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int digitValue(char c) {
+        return c < VALUES.length ? VALUES[c] : -1;
+    }
+}
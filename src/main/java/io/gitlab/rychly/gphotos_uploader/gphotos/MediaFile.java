@@ -1,19 +1,20 @@
 package io.gitlab.rychly.gphotos_uploader.gphotos;
 
+import io.gitlab.rychly.gphotos_uploader.index.MediaFileIndex;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
-import java.math.BigInteger;
 import java.net.URI;
 import java.nio.file.Files;
-import java.security.MessageDigest;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.NoSuchAlgorithmException;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 /**
@@ -43,7 +44,7 @@ public class MediaFile extends File {
             "(?i).*\\.(" + PHOTO_FILENAME_REGEXP_EXTENSIONS + "|" + VIDEO_FILENAME_REGEXP_EXTENSIONS + ")";
 
     /**
-     * Algorithm of the content checksum.
+     * Default algorithm of the content checksum.
      */
     public static final String CHECKSUM_ALGORITHM = "SHA-1";
 
@@ -52,7 +53,20 @@ public class MediaFile extends File {
      */
     public static final String DESCRIPTION_ITEMS_SEPARATOR = ";";
 
-    private byte[] checksum;
+    /**
+     * Separator of the checksum algorithm and the checksum value in the checksum string.
+     */
+    public static final String CHECKSUM_STRING_SEPARATOR = ":";
+
+    private static MediaFileIndex mediaFileIndex;
+    private static String checksumAlgorithm = CHECKSUM_ALGORITHM;
+    private static ContentHasher.Strategy hashingStrategy = ContentHasher.Strategy.LARGE_BUFFER;
+    private static MediaTypeClassifier mediaTypeClassifier = MediaTypeClassifier.DEFAULT;
+
+    private volatile byte[] checksum;
+    private volatile String checksumString;
+    private volatile String otherChecksumAlgorithm;
+    private volatile byte[] otherChecksum;
 
     /**
      * Creates a new <code>File</code> instance by converting the given
@@ -113,16 +127,96 @@ public class MediaFile extends File {
         this(file.getAbsolutePath());
     }
 
+    /**
+     * Get the index of media files which is consulted for checksums before their computation.
+     *
+     * @return the index of media files or <code>null</code> if not set
+     */
+    @Nullable
+    public static MediaFileIndex getMediaFileIndex() {
+        return mediaFileIndex;
+    }
+
+    /**
+     * Set the index of media files which is consulted for checksums before their computation and updated by the computed checksums.
+     *
+     * @param mediaFileIndex the index of media files or <code>null</code> to not use any index
+     */
+    public static void setMediaFileIndex(@Nullable MediaFileIndex mediaFileIndex) {
+        MediaFile.mediaFileIndex = mediaFileIndex;
+    }
+
+    /**
+     * Get the algorithm of the content checksum which is used for new media items descriptions.
+     *
+     * @return the checksum algorithm
+     */
+    @NotNull
+    public static String getChecksumAlgorithm() {
+        return checksumAlgorithm;
+    }
+
+    /**
+     * Set the algorithm of the content checksum which is used for new media items descriptions.
+     * The existing descriptions are verified by the algorithms of their checksum strings.
+     *
+     * @param checksumAlgorithm the checksum algorithm (see {@link ContentHasher#newDigest(String)})
+     * @throws NoSuchAlgorithmException cannot find the checksum algorithm
+     */
+    public static void setChecksumAlgorithm(@NotNull String checksumAlgorithm) throws NoSuchAlgorithmException {
+        ContentHasher.newDigest(checksumAlgorithm);
+        MediaFile.checksumAlgorithm = checksumAlgorithm.toUpperCase();
+    }
+
+    /**
+     * Get the strategy to read the media files to compute their checksums.
+     *
+     * @return the hashing strategy
+     */
+    @NotNull
+    public static ContentHasher.Strategy getHashingStrategy() {
+        return hashingStrategy;
+    }
+
+    /**
+     * Set the strategy to read the media files to compute their checksums.
+     *
+     * @param hashingStrategy the hashing strategy
+     */
+    public static void setHashingStrategy(@NotNull ContentHasher.Strategy hashingStrategy) {
+        MediaFile.hashingStrategy = hashingStrategy;
+    }
+
+    /**
+     * Get the classifier of media files to photos and videos by their extensions.
+     *
+     * @return the media type classifier
+     */
+    @NotNull
+    public static MediaTypeClassifier getMediaTypeClassifier() {
+        return mediaTypeClassifier;
+    }
+
+    /**
+     * Set the classifier of media files to photos and videos by their extensions (it determines which files are the media files).
+     *
+     * @param mediaTypeClassifier the media type classifier
+     */
+    public static void setMediaTypeClassifier(@NotNull MediaTypeClassifier mediaTypeClassifier) {
+        MediaFile.mediaTypeClassifier = mediaTypeClassifier;
+    }
+
     /**
      * Get a stream all media files in a given directory.
-     * The media files are those matching the default regular expression for media files.
+     * The media files are those of the extensions of the media type classifier (see {@link #setMediaTypeClassifier(MediaTypeClassifier)}).
      *
      * @param directory the directory to search for the media files
      * @return the stream of media files
      * @throws FileNotFoundException cannot find the directory
      */
     public static Stream<MediaFile> fileFinder(File directory) throws FileNotFoundException {
-        return fileFinder(directory, MEDIA_FILENAME_REGEXP);
+        final MediaTypeClassifier classifier = mediaTypeClassifier;
+        return fileFinder(directory, pathname -> classifier.isMediaFile(pathname.getName()));
     }
 
     /**
@@ -134,7 +228,13 @@ public class MediaFile extends File {
      * @throws FileNotFoundException cannot find the directory
      */
     public static Stream<MediaFile> fileFinder(File directory, String fileNameRegExp) throws FileNotFoundException {
-        final File[] files = directory.listFiles(pathname -> pathname.isFile() && !pathname.isHidden() && pathname.getName().matches(fileNameRegExp));
+        final Pattern fileNamePattern = Pattern.compile(fileNameRegExp);
+        return fileFinder(directory, pathname -> fileNamePattern.matcher(pathname.getName()).matches());
+    }
+
+    private static Stream<MediaFile> fileFinder(File directory, FileFilter fileNameFilter) throws FileNotFoundException {
+        // the cheap file name check first, so the file attributes are read just for the media files
+        final File[] files = directory.listFiles(pathname -> fileNameFilter.accept(pathname) && pathname.isFile() && !pathname.isHidden());
         if (files == null) {
             throw new FileNotFoundException("Cannot find media files in directory " + directory);
         }
@@ -142,33 +242,28 @@ public class MediaFile extends File {
         return Arrays.stream(files).map(MediaFile::new);
     }
 
-    @Nullable
-    private static String extractDescriptionItem(@NotNull String description, int itemNumber) {
-        final String[] splitDescription = description.trim().split("\\s*" + DESCRIPTION_ITEMS_SEPARATOR + "\\s*");
-        return (itemNumber < splitDescription.length) ? splitDescription[itemNumber] : null;
-    }
-
     /**
      * Extract a string representation of the checksum from a given media item description string.
+     * To parse many descriptions, reuse a single {@link MediaItemDescription} instead.
      *
      * @param description the media item description string
      * @return the string representation of the checksum or <code>null</code> if cannot be extracted
      */
     @Nullable
     public static String extractChecksumStringFromDescription(@NotNull String description) {
-        return extractDescriptionItem(description, 0);
+        return new MediaItemDescription().parse(description).getChecksumString();
     }
 
     /**
      * Extract a zoned date and time of the last modification of the media file from a given media item description string.
+     * To parse many descriptions, reuse a single {@link MediaItemDescription} instead.
      *
      * @param description the media item description string
      * @return zoned date and time of the last modification or <code>null</code> if cannot be extracted
      */
     @Nullable
     public static ZonedDateTime extractLastModifiedDateFromDescription(@NotNull String description) {
-        final String formattedZonedDateTime = extractDescriptionItem(description, 1);
-        return (formattedZonedDateTime == null) ? null : ZonedDateTime.parse(formattedZonedDateTime);
+        return new MediaItemDescription().parse(description).getLastModifiedDate();
     }
 
     /**
@@ -177,7 +272,7 @@ public class MediaFile extends File {
      * @return true iff the media file is a photo
      */
     public boolean isPhoto() {
-        return this.getName().matches(PHOTO_FILENAME_REGEXP);
+        return mediaTypeClassifier.classify(this.getName()) == MediaTypeClassifier.MediaType.PHOTO;
     }
 
     /**
@@ -186,39 +281,88 @@ public class MediaFile extends File {
      * @return true iff the media file is a video
      */
     public boolean isVideo() {
-        return this.getName().matches(VIDEO_FILENAME_REGEXP);
+        return mediaTypeClassifier.classify(this.getName()) == MediaTypeClassifier.MediaType.VIDEO;
     }
 
     /**
-     * Compute and set a checksum of the content of the media file.
+     * Compute and set a checksum of the content of the media file (and put it into the index of media files, if set
+     * and if the file has not been changed while it was being hashed).
      *
      * @throws NoSuchAlgorithmException cannot find the checksum algorithm
      * @throws IOException              cannot access the file
      */
-    public void setContentChecksum() throws NoSuchAlgorithmException, IOException {
-        final MessageDigest messageDigest = MessageDigest.getInstance(CHECKSUM_ALGORITHM);
-        try (final InputStream fileInputStream = new FileInputStream(this)) {
-            final byte[] buffer = new byte[8192];
-            int n = 0;
-            while (n != -1) {
-                n = fileInputStream.read(buffer);
-                if (n > 0) {
-                    messageDigest.update(buffer, 0, n);
-                }
-            }
-            this.checksum = messageDigest.digest();
+    public synchronized void setContentChecksum() throws NoSuchAlgorithmException, IOException {
+        final BasicFileAttributes hashedFileAttributes = mediaFileIndex != null ? MediaFileIndex.readAttributes(this) : null;
+        this.checksum = ContentHasher.hash(this, checksumAlgorithm, hashingStrategy);
+        this.checksumString = null;
+        if (hashedFileAttributes != null) {
+            mediaFileIndex.putChecksumString(this, getContentChecksumString(), hashedFileAttributes);
         }
     }
 
+    /**
+     * Set a checksum of the content of the media file computed elsewhere by the current checksum algorithm,
+     * e.g., while the file has been uploaded (and put it into the index of media files, if set and if the attributes
+     * of the file read before its hashing are given and the file has not been changed since).
+     *
+     * @param checksum             the checksum in bytes of the content of the media file
+     * @param hashedFileAttributes the attributes of the file read before its content was hashed
+     *                             (see {@link MediaFileIndex#readAttributes(File)}) or <code>null</code> to not index the checksum
+     * @throws NoSuchAlgorithmException cannot find the checksum algorithm
+     * @throws IOException              cannot access the file
+     */
+    public synchronized void setContentChecksum(@NotNull byte[] checksum, @Nullable BasicFileAttributes hashedFileAttributes)
+            throws NoSuchAlgorithmException, IOException {
+        this.checksum = checksum;
+        this.checksumString = null;
+        if (mediaFileIndex != null && hashedFileAttributes != null) {
+            mediaFileIndex.putChecksumString(this, getContentChecksumString(), hashedFileAttributes);
+        }
+    }
+
+    /**
+     * Check whether a checksum of the content of the media file is available without its computation,
+     * i.e., it has been already computed or it is available in the index of media files (if set) for the current version of the file.
+     *
+     * @return <code>true</code> iff the checksum is available
+     * @throws IOException cannot access the file
+     */
+    public synchronized boolean hasContentChecksum() throws IOException {
+        return checksum != null || setContentChecksumFromIndex();
+    }
+
+    /**
+     * Set a checksum of the content of the media file from the index of media files, if available and up-to-date.
+     *
+     * @return <code>true</code> iff the checksum has been set from the index
+     * @throws IOException cannot access the file
+     */
+    private boolean setContentChecksumFromIndex() throws IOException {
+        final String checksumString = mediaFileIndex == null ? null : mediaFileIndex.getChecksumString(this);
+        final String checksumStringPrefix = checksumAlgorithm + CHECKSUM_STRING_SEPARATOR;
+        if (checksumString == null || !checksumString.startsWith(checksumStringPrefix)) {
+            return false;
+        }
+        final byte[] indexedChecksum = HexCodec.decode(checksumString, checksumStringPrefix.length(), checksumString.length());
+        if (indexedChecksum == null) {
+            return false;
+        }
+        this.checksum = indexedChecksum;
+        this.checksumString = null;
+        return true;
+    }
+
     /**
      * Get a checksum of the content of the media file.
+     * The checksum is computed only if it is not available in the index of media files (if set) for the current version of the file.
+     * Concurrent callers wait for a single computation of the checksum.
      *
      * @return the checksum in bytes of the content of the media file
      * @throws NoSuchAlgorithmException cannot find the checksum algorithm
      * @throws IOException              cannot access the file
      */
-    public byte[] getContentChecksum() throws NoSuchAlgorithmException, IOException {
-        if (checksum == null) {
+    public synchronized byte[] getContentChecksum() throws NoSuchAlgorithmException, IOException {
+        if (checksum == null && !setContentChecksumFromIndex()) {
             setContentChecksum();
         }
         return checksum;
@@ -226,19 +370,30 @@ public class MediaFile extends File {
 
     /**
      * Get a checksum of the content of the media file as a string representation of a hexadecimal number.
+     * The string is formatted once per checksum.
      *
      * @return the checksum hex-string of the content of the media file
      * @throws NoSuchAlgorithmException cannot find the checksum algorithm
      * @throws IOException              cannot access the file
      */
-    public String getContentChecksumString() throws NoSuchAlgorithmException, IOException {
-        final int checksumSizeInHalfBytes = getContentChecksum().length * 2;
-        return String.format(CHECKSUM_ALGORITHM + ":%0" + checksumSizeInHalfBytes + "x",
-                new BigInteger(1, getContentChecksum()));
+    public synchronized String getContentChecksumString() throws NoSuchAlgorithmException, IOException {
+        final byte[] contentChecksum = getContentChecksum();
+        if (checksumString == null) {
+            checksumString = toChecksumString(checksumAlgorithm, contentChecksum);
+        }
+        return checksumString;
+    }
+
+    @NotNull
+    private static String toChecksumString(@NotNull String algorithm, @NotNull byte[] checksum) {
+        return HexCodec.appendTo(new StringBuilder(algorithm.length() + CHECKSUM_STRING_SEPARATOR.length() + 2 * checksum.length)
+                .append(algorithm).append(CHECKSUM_STRING_SEPARATOR), checksum).toString();
     }
 
     /**
      * Check whether a given checksum string is matching the content checksum.
+     * If the checksum string is of another algorithm than the current one, the content checksum of that algorithm is used
+     * (see {@link #getOtherContentChecksum(String)}); a checksum string of an unsupported algorithm is not matching.
      *
      * @param checksumString the checksum string to check
      * @return <code>true</code> iff the checksum string is matching
@@ -246,7 +401,65 @@ public class MediaFile extends File {
      * @throws IOException              cannot access the file
      */
     public boolean isChecksumStringMatching(String checksumString) throws IOException, NoSuchAlgorithmException {
-        return getContentChecksumString().equalsIgnoreCase(checksumString);
+        final int separatorIndex = checksumString == null ? -1 : checksumString.indexOf(CHECKSUM_STRING_SEPARATOR);
+        return separatorIndex > 0 && isChecksumStringMatching(checksumString, 0, separatorIndex, checksumString.length());
+    }
+
+    /**
+     * Check whether a checksum string in a given range of a given string is matching the content checksum.
+     * The hexadecimal digits are compared with the checksum in place, so no strings are created for the current checksum algorithm.
+     * A checksum string of an unsupported algorithm (e.g., an arbitrary description with a colon) is not matching.
+     *
+     * @param string         the string containing the checksum string
+     * @param start          the start index of the checksum string (inclusive)
+     * @param separatorIndex the index of {@link #CHECKSUM_STRING_SEPARATOR} in the checksum string (after the algorithm)
+     * @param end            the end index of the checksum string (exclusive)
+     * @return <code>true</code> iff the checksum string is matching
+     * @throws NoSuchAlgorithmException cannot find the checksum algorithm
+     * @throws IOException              cannot access the file
+     */
+    boolean isChecksumStringMatching(@NotNull String string, int start, int separatorIndex, int end) throws IOException, NoSuchAlgorithmException {
+        final String currentAlgorithm = checksumAlgorithm;
+        final byte[] expectedChecksum;
+        if (separatorIndex - start == currentAlgorithm.length() && string.regionMatches(true, start, currentAlgorithm, 0, currentAlgorithm.length())) {
+            expectedChecksum = getContentChecksum();
+        } else {
+            final String algorithm = string.substring(start, separatorIndex);
+            if (!ContentHasher.isSupported(algorithm)) {
+                return false;
+            }
+            expectedChecksum = getOtherContentChecksum(algorithm);
+        }
+        return HexCodec.isMatching(expectedChecksum, string, separatorIndex + 1, end);
+    }
+
+    /**
+     * Get a checksum of the content of the media file by another algorithm than the current one, e.g., to verify a media item
+     * uploaded before the algorithm has been changed. The checksum is kept for the last such algorithm and it is also put into
+     * the index of media files (if set), so the file is read at most once per its version.
+     *
+     * @param algorithm the other checksum algorithm
+     * @return the checksum in bytes of the content of the media file
+     * @throws NoSuchAlgorithmException cannot find the checksum algorithm
+     * @throws IOException              cannot access the file
+     */
+    private synchronized byte[] getOtherContentChecksum(@NotNull String algorithm) throws NoSuchAlgorithmException, IOException {
+        if (otherChecksum != null && algorithm.equalsIgnoreCase(otherChecksumAlgorithm)) {
+            return otherChecksum;
+        }
+        final String indexedChecksumString = mediaFileIndex == null ? null : mediaFileIndex.getChecksumString(this, algorithm);
+        byte[] checksum = indexedChecksumString == null ? null
+                : HexCodec.decode(indexedChecksumString, algorithm.length() + CHECKSUM_STRING_SEPARATOR.length(), indexedChecksumString.length());
+        if (checksum == null) {
+            final BasicFileAttributes hashedFileAttributes = mediaFileIndex != null ? MediaFileIndex.readAttributes(this) : null;
+            checksum = ContentHasher.hash(this, algorithm, hashingStrategy);
+            if (hashedFileAttributes != null) {
+                mediaFileIndex.putOtherChecksumString(this, toChecksumString(algorithm, checksum), hashedFileAttributes);
+            }
+        }
+        this.otherChecksumAlgorithm = algorithm;
+        this.otherChecksum = checksum;
+        return checksum;
     }
 
     /**
@@ -267,8 +480,9 @@ public class MediaFile extends File {
      * @throws IOException              cannot access the file
      */
     public String generateDescription() throws IOException, NoSuchAlgorithmException {
-        return getContentChecksumString()
-                + DESCRIPTION_ITEMS_SEPARATOR + " "
-                + getLastModifiedDate().format(DateTimeFormatter.ISO_ZONED_DATE_TIME);
+        final StringBuilder description = new StringBuilder(96)
+                .append(getContentChecksumString()).append(DESCRIPTION_ITEMS_SEPARATOR).append(' ');
+        DateTimeFormatter.ISO_ZONED_DATE_TIME.formatTo(getLastModifiedDate(), description);
+        return description.toString();
     }
 }
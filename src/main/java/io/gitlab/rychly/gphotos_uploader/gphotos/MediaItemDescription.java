@@ -0,0 +1,215 @@
+package io.gitlab.rychly.gphotos_uploader.gphotos;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * A parsed media item description string generated by {@link MediaFile#generateDescription()},
+ * i.e., the checksum string and the ISO zoned date and time of the last modification separated by {@link MediaFile#DESCRIPTION_ITEMS_SEPARATOR}.
+ * <p>
+ * The parser is hand-written and it just records the positions of the items in the description, so a single instance can be reused
+ * to parse many descriptions without allocations; the items are extracted only on request.
+ * An instance is not thread-safe.
+ */
+public class MediaItemDescription {
+    private static final int NONE = -1;
+
+    private String description;
+    private int checksumStart;
+    private int checksumEnd;
+    private int checksumSeparatorIndex;
+    private int dateStart;
+    private int dateEnd;
+
+    /**
+     * Parse a given media item description string, replacing the previously parsed one.
+     *
+     * @param description the media item description string
+     * @return this parsed description
+     */
+    @NotNull
+    public MediaItemDescription parse(@NotNull String description) {
+        this.description = description;
+        final int end = trimEnd(description, 0, description.length());
+        checksumStart = trimStart(description, 0, end);
+        final int firstSeparatorIndex = indexOf(description, MediaFile.DESCRIPTION_ITEMS_SEPARATOR.charAt(0), checksumStart, end);
+        final int itemsSeparatorIndex = firstSeparatorIndex < 0 ? end : firstSeparatorIndex;
+        checksumEnd = trimEnd(description, checksumStart, itemsSeparatorIndex);
+        checksumSeparatorIndex = indexOf(description, MediaFile.CHECKSUM_STRING_SEPARATOR.charAt(0), checksumStart, checksumEnd);
+        if (itemsSeparatorIndex < end) {
+            dateStart = trimStart(description, itemsSeparatorIndex + 1, end);
+            final int dateSeparatorIndex = indexOf(description, MediaFile.DESCRIPTION_ITEMS_SEPARATOR.charAt(0), dateStart, end);
+            dateEnd = trimEnd(description, dateStart, dateSeparatorIndex < 0 ? end : dateSeparatorIndex);
+        } else {
+            dateStart = dateEnd = NONE;
+        }
+        return this;
+    }
+
+    /**
+     * Check whether the description contains a checksum string (i.e., an algorithm and a value separated by {@link MediaFile#CHECKSUM_STRING_SEPARATOR}).
+     *
+     * @return <code>true</code> iff the checksum string is available
+     */
+    public boolean hasChecksum() {
+        return checksumSeparatorIndex > checksumStart;
+    }
+
+    /**
+     * Get the first item of the description, i.e., the checksum string.
+     *
+     * @return the checksum string or <code>null</code> if the item is empty
+     */
+    @Nullable
+    public String getChecksumString() {
+        return checksumStart < checksumEnd ? description.substring(checksumStart, checksumEnd) : null;
+    }
+
+    /**
+     * Check whether the checksum string of the description is matching the content checksum of a given media file.
+     * The hexadecimal digits of the checksum string are compared with the checksum in place.
+     *
+     * @param mediaFile the media file
+     * @return <code>true</code> iff the checksum string is available and matching
+     * @throws NoSuchAlgorithmException cannot find the checksum algorithm
+     * @throws IOException              cannot access the file
+     */
+    public boolean isChecksumMatching(@NotNull MediaFile mediaFile) throws IOException, NoSuchAlgorithmException {
+        return hasChecksum() && mediaFile.isChecksumStringMatching(description, checksumStart, checksumSeparatorIndex, checksumEnd);
+    }
+
+    /**
+     * Get the second item of the description, i.e., the zoned date and time of the last modification of the media file.
+     * The date and time are parsed by a fast path for the format of {@link java.time.format.DateTimeFormatter#ISO_ZONED_DATE_TIME}
+     * as it is generated by the descriptions (four-digit years and offsets in hours and minutes), other forms are parsed by {@link ZonedDateTime#parse(CharSequence)}.
+     *
+     * @return the zoned date and time of the last modification or <code>null</code> if the item is not available
+     * @throws DateTimeParseException cannot parse the item
+     */
+    @Nullable
+    public ZonedDateTime getLastModifiedDate() {
+        if (dateStart == NONE || dateStart == dateEnd) {
+            return null;
+        }
+        final ZonedDateTime zonedDateTime = parseZonedDateTime(description, dateStart, dateEnd);
+        return zonedDateTime != null ? zonedDateTime : ZonedDateTime.parse(description.substring(dateStart, dateEnd));
+    }
+
+    /**
+     * Parse the ISO zoned date and time of the form <code>yyyy-MM-ddTHH:mm:ss[.fraction](Z|+HH:mm|-HH:mm)[[zone]]</code>.
+     *
+     * @return the zoned date and time or <code>null</code> if of another form
+     */
+    @Nullable
+    private static ZonedDateTime parseZonedDateTime(@NotNull String s, int start, int end) {
+        if (end - start < 20 || s.charAt(start + 4) != '-' || s.charAt(start + 7) != '-' || s.charAt(start + 10) != 'T'
+                || s.charAt(start + 13) != ':' || s.charAt(start + 16) != ':') {
+            return null;
+        }
+        final int year = parseDigits(s, start, 4);
+        final int month = parseDigits(s, start + 5, 2);
+        final int day = parseDigits(s, start + 8, 2);
+        final int hour = parseDigits(s, start + 11, 2);
+        final int minute = parseDigits(s, start + 14, 2);
+        final int second = parseDigits(s, start + 17, 2);
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0) {
+            return null;
+        }
+        int i = start + 19;
+        int nano = 0;
+        if (s.charAt(i) == '.') {
+            int digits = 0;
+            for (i++; i < end && digits < 9 && isDigit(s.charAt(i)); i++, digits++) {
+                nano = nano * 10 + (s.charAt(i) - '0');
+            }
+            if (digits == 0 || (i < end && isDigit(s.charAt(i)))) {
+                return null;
+            }
+            for (; digits < 9; digits++) {
+                nano *= 10;
+            }
+        }
+        if (i >= end) {
+            return null;
+        }
+        final int offsetSeconds;
+        final char sign = s.charAt(i);
+        if (sign == 'Z') {
+            offsetSeconds = 0;
+            i++;
+        } else if ((sign == '+' || sign == '-') && i + 6 <= end && s.charAt(i + 3) == ':') {
+            final int offsetHours = parseDigits(s, i + 1, 2);
+            final int offsetMinutes = parseDigits(s, i + 4, 2);
+            if (offsetHours < 0 || offsetMinutes < 0) {
+                return null;
+            }
+            offsetSeconds = (sign == '-' ? -1 : 1) * (offsetHours * 3600 + offsetMinutes * 60);
+            i += 6;
+        } else {
+            return null;
+        }
+        try {
+            final ZoneOffset offset = ZoneOffset.ofTotalSeconds(offsetSeconds);
+            final ZoneId zone;
+            if (i == end) {
+                zone = offset;
+            } else if (s.charAt(i) == '[' && s.charAt(end - 1) == ']' && i + 2 < end) {
+                zone = ZoneId.of(s.substring(i + 1, end - 1));
+            } else {
+                return null;
+            }
+            return ZonedDateTime.ofInstant(LocalDateTime.of(year, month, day, hour, minute, second, nano), offset, zone);
+        } catch (DateTimeException e) {
+            // let the full parser report the problem
+            return null;
+        }
+    }
+
+    private static int parseDigits(@NotNull String s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            final char c = s.charAt(i);
+            if (!isDigit(c)) {
+                return NONE;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int indexOf(@NotNull String s, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return NONE;
+    }
+
+    private static int trimStart(@NotNull String s, int start, int end) {
+        while (start < end && s.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(@NotNull String s, int start, int end) {
+        while (end > start && s.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+}
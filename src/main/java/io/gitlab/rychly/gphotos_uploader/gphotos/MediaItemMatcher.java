@@ -0,0 +1,136 @@
+package io.gitlab.rychly.gphotos_uploader.gphotos;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.*;
+
+/**
+ * A matcher of media items to local media files by their file names which are compared case-insensitively and in the same Unicode normalization form,
+ * so the media items uploaded from case-insensitive (or normalizing) file-systems are matched to their files.
+ * A media item is matched to the media file of exactly the same name, if any. Otherwise, as the file of a name differing just in letter cases
+ * can be another file on a case-sensitive file-system, a media item is matched to such a file only if the file has the same content checksum
+ * as in the media item description (or, if the description has no checksum, to the first of such files which has not been matched yet).
+ * <p>
+ * The files of the same folded name are chained by their indices in an array, so the matcher keeps just a single map entry per distinct name
+ * and two arrays of the size of the number of files; the media items are matched one by one without keeping them.
+ */
+public class MediaItemMatcher {
+    private static final int NONE = -1;
+
+    private final MediaFile[] mediaFiles;
+    private final int[] nextIndexOfSameName;
+    private final Map<String, Integer> firstIndexOfName;
+    private final BitSet matchedIndices;
+
+    /**
+     * Create a new matcher of given media files (which should have distinct names).
+     *
+     * @param mediaFiles the media files
+     */
+    public MediaItemMatcher(@NotNull Collection<MediaFile> mediaFiles) {
+        this.mediaFiles = mediaFiles.toArray(new MediaFile[0]);
+        this.nextIndexOfSameName = new int[this.mediaFiles.length];
+        this.firstIndexOfName = new HashMap<>(this.mediaFiles.length * 4 / 3 + 1);
+        this.matchedIndices = new BitSet(this.mediaFiles.length);
+        // chain the files backwards, so each chain keeps the order of the files
+        for (int i = this.mediaFiles.length - 1; i >= 0; i--) {
+            final Integer nextIndex = firstIndexOfName.put(foldName(this.mediaFiles[i].getName()), i);
+            nextIndexOfSameName[i] = nextIndex == null ? NONE : nextIndex;
+        }
+    }
+
+    /**
+     * Fold a given file name for the case-insensitive comparison.
+     *
+     * @param fileName the file name
+     * @return the folded file name
+     */
+    @NotNull
+    public static String foldName(@NotNull String fileName) {
+        return Normalizer.normalize(fileName, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Match a media item of a given file name and a given content checksum to a media file.
+     * The content checksum is used (and the checksums of the media files are computed) only if there is no media file of exactly the same name.
+     *
+     * @param fileName       the file name of the media item
+     * @param checksumString the content checksum string from the description of the media item or <code>null</code> if not available
+     * @return the matching media file or <code>null</code> if there is no media file of the name
+     * (or of the folded name and the same content, see {@link #isMatching(MediaFile, String, String)})
+     */
+    @Nullable
+    public MediaFile match(@NotNull String fileName, @Nullable String checksumString) {
+        final Integer firstIndex = firstIndexOfName.get(foldName(fileName));
+        if (firstIndex == null) {
+            return null;
+        }
+        for (int i = firstIndex; i != NONE; i = nextIndexOfSameName[i]) {
+            if (mediaFiles[i].getName().equals(fileName)) {
+                matchedIndices.set(i);
+                return mediaFiles[i];
+            }
+        }
+        // just the folded name, prefer the same content, then a file not matched yet if the content is unknown
+        final boolean hasChecksum = hasChecksum(checksumString);
+        int unmatchedIndex = NONE;
+        for (int i = firstIndex; i != NONE; i = nextIndexOfSameName[i]) {
+            if (hasChecksum && isChecksumStringMatching(mediaFiles[i], checksumString)) {
+                matchedIndices.set(i);
+                return mediaFiles[i];
+            }
+            if (unmatchedIndex == NONE && !matchedIndices.get(i)) {
+                unmatchedIndex = i;
+            }
+        }
+        if (hasChecksum) {
+            return null;
+        }
+        final int matchedIndex = unmatchedIndex != NONE ? unmatchedIndex : firstIndex;
+        matchedIndices.set(matchedIndex);
+        return mediaFiles[matchedIndex];
+    }
+
+    /**
+     * Check whether a media item of a given file name and a given content checksum matches a given media file of the same folded name,
+     * i.e., whether the file has exactly the same name, or the same content checksum as the media item (if the checksum is available).
+     *
+     * @param mediaFile      the media file
+     * @param fileName       the file name of the media item
+     * @param checksumString the content checksum string from the description of the media item or <code>null</code> if not available
+     * @return <code>true</code> iff the media item matches the media file
+     */
+    public static boolean isMatching(@NotNull MediaFile mediaFile, @NotNull String fileName, @Nullable String checksumString) {
+        return mediaFile.getName().equals(fileName) || !hasChecksum(checksumString) || isChecksumStringMatching(mediaFile, checksumString);
+    }
+
+    private static boolean hasChecksum(@Nullable String checksumString) {
+        return checksumString != null && checksumString.contains(MediaFile.CHECKSUM_STRING_SEPARATOR);
+    }
+
+    private static boolean isChecksumStringMatching(@NotNull MediaFile mediaFile, @NotNull String checksumString) {
+        try {
+            return mediaFile.isChecksumStringMatching(checksumString);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the media files which have not been matched to any media item yet.
+     *
+     * @return the list of the unmatched media files in the order of the media files given to the matcher
+     */
+    @NotNull
+    public List<MediaFile> getUnmatchedMediaFiles() {
+        final List<MediaFile> unmatchedMediaFiles = new ArrayList<>(mediaFiles.length - matchedIndices.cardinality());
+        for (int i = matchedIndices.nextClearBit(0); i < mediaFiles.length; i = matchedIndices.nextClearBit(i + 1)) {
+            unmatchedMediaFiles.add(mediaFiles[i]);
+        }
+        return unmatchedMediaFiles;
+    }
+}
@@ -0,0 +1,128 @@
+package io.gitlab.rychly.gphotos_uploader.gphotos;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A classifier of media files to photos and videos by the extensions of their file names.
+ * <p>
+ * The extensions are kept in an open-addressing hash table of their lower-case forms, and a file name is looked up by the case-insensitive hash
+ * and comparison of its extension in place, so the classification of a file name is a single hash lookup without any allocation.
+ */
+public class MediaTypeClassifier {
+    /**
+     * Default extensions of the photo files.
+     * See https://support.google.com/photos/answer/6193313
+     */
+    public static final String[] DEFAULT_PHOTO_EXTENSIONS = MediaFile.PHOTO_FILENAME_REGEXP_EXTENSIONS.split("\\|");
+
+    /**
+     * Default extensions of the video files.
+     * See https://support.google.com/photos/answer/6193313
+     */
+    public static final String[] DEFAULT_VIDEO_EXTENSIONS = MediaFile.VIDEO_FILENAME_REGEXP_EXTENSIONS.split("\\|");
+
+    /**
+     * The classifier of the default photo and video extensions.
+     */
+    public static final MediaTypeClassifier DEFAULT = new MediaTypeClassifier(
+            Arrays.asList(DEFAULT_PHOTO_EXTENSIONS), Arrays.asList(DEFAULT_VIDEO_EXTENSIONS));
+
+    private final String[] extensions;
+    private final MediaType[] mediaTypes;
+    private final int mask;
+
+    /**
+     * Create a new classifier of given photo and video extensions (case-insensitive, without the leading dots).
+     * If an extension is given as both the photo and the video extension, it is the video extension.
+     *
+     * @param photoExtensions the extensions of the photo files
+     * @param videoExtensions the extensions of the video files
+     */
+    public MediaTypeClassifier(@NotNull Collection<String> photoExtensions, @NotNull Collection<String> videoExtensions) {
+        final Map<String, MediaType> extensionMediaTypes = new LinkedHashMap<>();
+        for (String extension : photoExtensions) {
+            putExtension(extensionMediaTypes, extension, MediaType.PHOTO);
+        }
+        for (String extension : videoExtensions) {
+            putExtension(extensionMediaTypes, extension, MediaType.VIDEO);
+        }
+        // at most a half of the table is used, so the probe sequences are short
+        final int capacity = Integer.highestOneBit(Math.max(1, extensionMediaTypes.size()) * 4 - 1);
+        this.extensions = new String[capacity];
+        this.mediaTypes = new MediaType[capacity];
+        this.mask = capacity - 1;
+        for (Map.Entry<String, MediaType> entry : extensionMediaTypes.entrySet()) {
+            final String extension = entry.getKey();
+            int slot = hash(extension, 0, extension.length()) & mask;
+            while (extensions[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            extensions[slot] = extension;
+            mediaTypes[slot] = entry.getValue();
+        }
+    }
+
+    private static void putExtension(@NotNull Map<String, MediaType> extensionMediaTypes, @NotNull String extension, @NotNull MediaType mediaType) {
+        final String normalizedExtension = extension.trim().replaceFirst("^\\.", "").toLowerCase(Locale.ROOT);
+        if (!normalizedExtension.isEmpty()) {
+            extensionMediaTypes.put(normalizedExtension, mediaType);
+        }
+    }
+
+    private static int hash(@NotNull String string, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + Character.toLowerCase(string.charAt(i));
+        }
+        // spread the higher bits to the lower bits used by the mask
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Classify a file of a given name by its extension.
+     *
+     * @param fileName the file name
+     * @return the media type of the file or <code>null</code> if it is not a media file
+     */
+    @Nullable
+    public MediaType classify(@NotNull String fileName) {
+        final int dotIndex = fileName.lastIndexOf('.');
+        if (dotIndex < 0) {
+            return null;
+        }
+        final int offset = dotIndex + 1;
+        final int length = fileName.length() - offset;
+        for (int slot = hash(fileName, offset, length) & mask; extensions[slot] != null; slot = (slot + 1) & mask) {
+            final String extension = extensions[slot];
+            if (extension.length() == length && fileName.regionMatches(true, offset, extension, 0, length)) {
+                return mediaTypes[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check whether a file of a given name is a media file.
+     *
+     * @param fileName the file name
+     * @return <code>true</code> iff the file is a photo or a video
+     */
+    public boolean isMediaFile(@NotNull String fileName) {
+        return classify(fileName) != null;
+    }
+
+    /**
+     * Types of the media files.
+     */
+    public enum MediaType {
+        PHOTO,
+        VIDEO
+    }
+}
@@ -0,0 +1,430 @@
+package io.gitlab.rychly.gphotos_uploader.gphotos;
+
+import com.google.api.gax.paging.Page;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import io.gitlab.rychly.gphotos_uploader.i18n.Messages;
+import io.gitlab.rychly.gphotos_uploader.i18n.ResourceBundleFactory;
+import io.gitlab.rychly.gphotos_uploader.logger.LoggerFactory;
+import io.gitlab.rychly.gphotos_uploader.metrics.Metrics;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A scheduler of requests of the photos library client pacing the requests of each operation by a token bucket
+ * and limiting their concurrency adaptively, i.e., the concurrency limit is halved when the requests are rate-limited
+ * (RESOURCE_EXHAUSTED) and it grows back additively by the successful requests.
+ * The requests of an operation are paused by a jittered exponential backoff after its rate-limited or transiently failed requests
+ * (see {@link Permit#throttled()} and {@link Permit#backOff()}), so all the threads making the requests back off together.
+ * The rate-limited requests of the idempotent operations (see {@link Operation#isIdempotent()}) are retried after the backoff.
+ */
+public class RequestScheduler {
+    /**
+     * Default rate of requests of each operation per second.
+     */
+    public static final double DEFAULT_REQUESTS_PER_SECOND = 10;
+
+    /**
+     * Default maximal number of concurrent requests of each operation.
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 8;
+
+    /**
+     * Maximal number of attempts of a rate-limited request of an idempotent operation.
+     */
+    public static final int THROTTLED_REQUEST_ATTEMPTS = 5;
+
+    /**
+     * Initial and maximal backoff delays of the requests of an operation after a failed request, the delay is doubled for each next
+     * failed request (until a request succeeds) and jittered.
+     */
+    private static final long RETRY_INITIAL_DELAY_MILLIS = 1000;
+    private static final long RETRY_MAX_DELAY_MILLIS = 64000;
+
+    private static final Map<Operation, Metrics.Histogram> REQUEST_SECONDS = new EnumMap<>(Operation.class);
+    private static final Map<Operation, Metrics.Histogram> WAIT_SECONDS = new EnumMap<>(Operation.class);
+    private static final Map<Operation, Metrics.Counter> THROTTLED_REQUESTS = new EnumMap<>(Operation.class);
+    private static final Map<Operation, Metrics.Counter> FAILED_REQUESTS = new EnumMap<>(Operation.class);
+
+    static {
+        for (Operation operation : Operation.values()) {
+            REQUEST_SECONDS.put(operation, Metrics.histogram("api_request_seconds",
+                    "Latency of requests of the Google Photos API.", Metrics.SECONDS_BUCKETS, "operation", operation.name()));
+            WAIT_SECONDS.put(operation, Metrics.histogram("api_wait_seconds",
+                    "Waiting of requests of the Google Photos API for the pacing and the concurrency limit.", Metrics.SECONDS_BUCKETS, "operation", operation.name()));
+            THROTTLED_REQUESTS.put(operation, Metrics.counter("api_throttled_requests_total",
+                    "Requests of the Google Photos API rate-limited by the server.", "operation", operation.name()));
+            FAILED_REQUESTS.put(operation, Metrics.counter("api_failed_requests_total",
+                    "Requests of the Google Photos API failed by an API exception.", "operation", operation.name()));
+        }
+    }
+
+    private final Map<Operation, TokenBucket> tokenBuckets = new EnumMap<>(Operation.class);
+    private final Map<Operation, ConcurrencyLimit> concurrencyLimits = new EnumMap<>(Operation.class);
+
+    /**
+     * Create a new scheduler with the same rate and maximal concurrency of requests of all the operations.
+     *
+     * @param requestsPerSecond the rate of requests of each operation per second (a non-positive or infinite rate for no pacing)
+     * @param maxConcurrency    the maximal number of concurrent requests of each operation
+     */
+    public RequestScheduler(double requestsPerSecond, int maxConcurrency) {
+        this(requestsPerSecond, maxConcurrency, new EnumMap<>(Operation.class));
+    }
+
+    /**
+     * Create a new scheduler with the same maximal concurrency and a default rate of requests overridden for particular operations.
+     *
+     * @param requestsPerSecond          the default rate of requests of each operation per second (a non-positive or infinite rate for no pacing)
+     * @param maxConcurrency             the maximal number of concurrent requests of each operation
+     * @param operationRequestsPerSecond the rates of requests per second of particular operations
+     */
+    public RequestScheduler(double requestsPerSecond, int maxConcurrency, @NotNull Map<Operation, Double> operationRequestsPerSecond) {
+        for (Operation operation : Operation.values()) {
+            tokenBuckets.put(operation, new TokenBucket(operationRequestsPerSecond.getOrDefault(operation, requestsPerSecond)));
+            concurrencyLimits.put(operation, new ConcurrencyLimit(operation, Math.max(1, maxConcurrency)));
+        }
+    }
+
+    /**
+     * Acquire a permit for a request of a given operation, i.e., wait for a free slot of the concurrency limit and for a token of the bucket.
+     * The permit must be closed after the request is finished.
+     *
+     * @param operation the operation of the request
+     * @return the permit
+     * @throws CancellationException the current thread has been interrupted while waiting (the interrupt status is set)
+     */
+    @NotNull
+    public Permit acquire(@NotNull Operation operation) {
+        final ConcurrencyLimit concurrencyLimit = concurrencyLimits.get(operation);
+        final long waitStartNanos = System.nanoTime();
+        try {
+            concurrencyLimit.acquire();
+            try {
+                final long delayNanos = tokenBuckets.get(operation).reserve();
+                if (delayNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(delayNanos);
+                }
+            } catch (InterruptedException e) {
+                concurrencyLimit.release(false);
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException(e.getMessage());
+        }
+        WAIT_SECONDS.get(operation).observeNanosSince(waitStartNanos);
+        return new Permit(operation, concurrencyLimit, tokenBuckets.get(operation));
+    }
+
+    /**
+     * Call a request of a given operation when permitted.
+     * The request is considered to be rate-limited if it throws an API exception of the RESOURCE_EXHAUSTED status,
+     * such a request of an idempotent operation is retried after the backoff (up to {@link #THROTTLED_REQUEST_ATTEMPTS} attempts).
+     *
+     * @param operation the operation of the request
+     * @param request   the request
+     * @param <T>       the type of the result of the request
+     * @return the result of the request
+     * @throws CancellationException the current thread has been interrupted while waiting (the interrupt status is set)
+     */
+    public <T> T call(@NotNull Operation operation, @NotNull Supplier<T> request) {
+        for (int attempt = 1; ; attempt++) {
+            try (final Permit permit = acquire(operation)) {
+                try {
+                    return request.get();
+                } catch (ApiException e) {
+                    FAILED_REQUESTS.get(operation).increment();
+                    if (!isResourceExhausted(e)) {
+                        throw e;
+                    }
+                    permit.throttled();
+                    if (!operation.isIdempotent() || attempt >= THROTTLED_REQUEST_ATTEMPTS) {
+                        throw e;
+                    }
+                    LoggerFactory.getLogger().warning(
+                            ResourceBundleFactory.msg(Messages.RETRYING_REQUEST_3, operation, attempt + 1, e.getMessage()));
+                }
+            }
+            // the next attempt waits for the backoff when it acquires its permit
+        }
+    }
+
+    /**
+     * Report a request of a given operation made without any permit (e.g., a transfer of bytes) to be rate-limited,
+     * so the concurrency limit of the operation is decreased and the next requests of the operation back off.
+     *
+     * @param operation the operation of the request
+     */
+    public void throttled(@NotNull Operation operation) {
+        THROTTLED_REQUESTS.get(operation).increment();
+        concurrencyLimits.get(operation).decrease();
+        tokenBuckets.get(operation).backOff();
+    }
+
+    /**
+     * Iterate over all the resources of pages where the first page and each next page are fetched by requests of a given operation when permitted.
+     *
+     * @param operation the operation of the requests
+     * @param firstPage the request to fetch the first page
+     * @param <T>       the type of the resources
+     * @return the iterable over all the resources of all the pages
+     */
+    @NotNull
+    public <T> Iterable<T> iterateAll(@NotNull Operation operation, @NotNull Supplier<Page<T>> firstPage) {
+        return () -> new Iterator<T>() {
+            private Page<T> page = null;
+            private Iterator<T> values = null;
+
+            @Override
+            public boolean hasNext() {
+                while (values == null || !values.hasNext()) {
+                    if (page == null) {
+                        page = call(operation, firstPage);
+                    } else if (page.hasNextPage()) {
+                        final Page<T> currentPage = page;
+                        page = call(operation, currentPage::getNextPage);
+                    } else {
+                        return false;
+                    }
+                    values = page.getValues().iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return values.next();
+            }
+        };
+    }
+
+    /**
+     * Check whether a given exception is caused by the rate limiting of requests.
+     *
+     * @param apiException the exception
+     * @return <code>true</code> iff the status of the exception is RESOURCE_EXHAUSTED
+     */
+    public static boolean isResourceExhausted(@NotNull ApiException apiException) {
+        return apiException.getStatusCode().getCode() == StatusCode.Code.RESOURCE_EXHAUSTED;
+    }
+
+    /**
+     * Operations of the photos library client whose requests are scheduled separately.
+     */
+    public enum Operation {
+        /**
+         * Listing of albums, shared albums, and media items of the library.
+         */
+        LIST(true),
+        /**
+         * Searching of media items.
+         */
+        SEARCH(true),
+        /**
+         * Getting of albums and media items.
+         */
+        GET(true),
+        /**
+         * Creation of albums.
+         */
+        CREATE_ALBUM(false),
+        /**
+         * Starting of upload sessions of media files.
+         */
+        UPLOAD(false),
+        /**
+         * Creation of media items in batches.
+         */
+        BATCH_CREATE(false),
+        /**
+         * Adding of existing media items into albums in batches.
+         */
+        BATCH_ADD(false),
+        /**
+         * Sharing and unsharing of albums.
+         */
+        SHARE(false),
+        /**
+         * Joining and leaving of shared albums.
+         */
+        JOIN(false);
+
+        private final boolean isIdempotent;
+
+        Operation(boolean isIdempotent) {
+            this.isIdempotent = isIdempotent;
+        }
+
+        /**
+         * Check whether the requests of the operation just read the library, so they can be retried safely.
+         *
+         * @return <code>true</code> iff the operation is idempotent
+         */
+        public boolean isIdempotent() {
+            return isIdempotent;
+        }
+    }
+
+    /**
+     * A permit of a request which releases its slot of the concurrency limit when closed (and records the latency of the request).
+     */
+    public static class Permit implements AutoCloseable {
+        private final Operation operation;
+        private final ConcurrencyLimit concurrencyLimit;
+        private final TokenBucket tokenBucket;
+        private final long startNanos = System.nanoTime();
+        private boolean isThrottled = false;
+        private boolean isBackingOff = false;
+        private boolean isClosed = false;
+
+        private Permit(@NotNull Operation operation, @NotNull ConcurrencyLimit concurrencyLimit, @NotNull TokenBucket tokenBucket) {
+            this.operation = operation;
+            this.concurrencyLimit = concurrencyLimit;
+            this.tokenBucket = tokenBucket;
+        }
+
+        /**
+         * Mark the request to be rate-limited, so the concurrency limit is decreased and the next requests of the operation back off
+         * when the permit is closed.
+         */
+        public void throttled() {
+            isThrottled = true;
+            isBackingOff = true;
+        }
+
+        /**
+         * Mark the request to be failed by a transient error (e.g., UNAVAILABLE), so the next requests of the operation back off
+         * when the permit is closed.
+         */
+        public void backOff() {
+            isBackingOff = true;
+        }
+
+        @Override
+        public void close() {
+            if (!isClosed) {
+                isClosed = true;
+                REQUEST_SECONDS.get(operation).observeNanosSince(startNanos);
+                if (isThrottled) {
+                    THROTTLED_REQUESTS.get(operation).increment();
+                }
+                if (isBackingOff) {
+                    tokenBucket.backOff();
+                } else {
+                    tokenBucket.succeeded();
+                }
+                concurrencyLimit.release(isThrottled);
+            }
+        }
+    }
+
+    /**
+     * A token bucket with the capacity of one second of requests, which can be paused by a backoff after failed requests.
+     */
+    private static class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+        private long pausedUntilNanos = lastRefillNanos;
+        private int backOffs = 0;
+
+        private TokenBucket(double requestsPerSecond) {
+            this.tokensPerNano = requestsPerSecond > 0 && !Double.isInfinite(requestsPerSecond) ? requestsPerSecond / 1e9 : 0;
+            this.capacity = Math.max(1, requestsPerSecond);
+            this.tokens = capacity;
+        }
+
+        /**
+         * Reserve a token, the bucket gets into a debt if there is no token available.
+         *
+         * @return the time in nanoseconds to wait for the reserved token and for the end of the backoff, if any
+         */
+        private synchronized long reserve() {
+            final long nowNanos = System.nanoTime();
+            final long pauseNanos = Math.max(0, pausedUntilNanos - nowNanos);
+            if (tokensPerNano == 0) {
+                return pauseNanos;
+            }
+            tokens = Math.min(capacity, tokens + (nowNanos - lastRefillNanos) * tokensPerNano);
+            lastRefillNanos = nowNanos;
+            tokens -= 1;
+            return Math.max(pauseNanos, tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano));
+        }
+
+        /**
+         * Pause the bucket by a jittered exponential backoff after a failed request.
+         * The failed requests during a running backoff (e.g., of concurrent threads) extend it, but they do not double its delay.
+         */
+        private synchronized void backOff() {
+            final long nowNanos = System.nanoTime();
+            if (nowNanos - pausedUntilNanos >= 0) {
+                backOffs = Math.min(backOffs + 1, 17);
+            }
+            final long delay = Math.min(RETRY_MAX_DELAY_MILLIS, RETRY_INITIAL_DELAY_MILLIS << (Math.max(1, backOffs) - 1));
+            // the equal jitter, i.e., a random delay between the half and the full delay
+            final long untilNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+            if (untilNanos - pausedUntilNanos > 0) {
+                pausedUntilNanos = untilNanos;
+            }
+        }
+
+        /**
+         * Reset the backoff delay after a successful request.
+         */
+        private synchronized void succeeded() {
+            backOffs = 0;
+        }
+    }
+
+    /**
+     * An adaptive concurrency limit by the additive increase and multiplicative decrease.
+     */
+    private static class ConcurrencyLimit {
+        private final Operation operation;
+        private final int maxLimit;
+        private double limit;
+        private int inFlight = 0;
+
+        private ConcurrencyLimit(@NotNull Operation operation, int maxLimit) {
+            this.operation = operation;
+            this.maxLimit = maxLimit;
+            this.limit = maxLimit;
+        }
+
+        private synchronized void acquire() throws InterruptedException {
+            while (inFlight >= (int) limit) {
+                wait();
+            }
+            inFlight++;
+        }
+
+        private synchronized void release(boolean isThrottled) {
+            inFlight--;
+            if (isThrottled) {
+                decrease();
+            } else {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            notifyAll();
+        }
+
+        private synchronized void decrease() {
+            limit = Math.max(1, limit / 2);
+            LoggerFactory.getLogger().fine(
+                    ResourceBundleFactory.msgSupplier(Messages.THROTTLING_REQUESTS_2, operation, (int) limit));
+        }
+    }
+}
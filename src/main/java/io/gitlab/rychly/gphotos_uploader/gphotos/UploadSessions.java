@@ -0,0 +1,136 @@
+package io.gitlab.rychly.gphotos_uploader.gphotos;
+
+import com.google.auth.Credentials;
+import com.google.photos.library.v1.PhotosLibraryClient;
+import com.google.photos.library.v1.PhotosLibrarySettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Starting of resumable upload sessions of the Google Photos upload protocol,
+ * see https://developers.google.com/photos/library/guides/resumable-uploads
+ * <p>
+ * The upload URL of a started session can be persisted and passed to the upload request of the photos library client,
+ * which then queries the number of bytes already received by the server and continues the upload from that offset.
+ */
+public final class UploadSessions {
+    private static final String UPLOAD_PROTOCOL_HEADER = "X-Goog-Upload-Protocol";
+    private static final String UPLOAD_PROTOCOL_VALUE = "resumable";
+    private static final String UPLOAD_COMMAND_HEADER = "X-Goog-Upload-Command";
+    private static final String UPLOAD_COMMAND_START = "start";
+    private static final String UPLOAD_COMMAND_QUERY = "query";
+    private static final String UPLOAD_STATUS_HEADER = "X-Goog-Upload-Status";
+    private static final String UPLOAD_STATUS_ACTIVE = "active";
+    private static final String FILE_NAME_HEADER = "X-Goog-Upload-File-Name";
+    private static final String FILE_SIZE_HEADER = "X-Goog-Upload-Raw-Size";
+    private static final String UPLOAD_URL_HEADER = "X-Goog-Upload-URL";
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_GONE = 410;
+
+    private static String uploadEndpoint = PhotosLibrarySettings.getUploadEndpoint();
+
+    private UploadSessions() {
+    }
+
+    /**
+     * Get the endpoint to start the upload sessions.
+     *
+     * @return the upload endpoint
+     */
+    @NotNull
+    public static String getUploadEndpoint() {
+        return uploadEndpoint;
+    }
+
+    /**
+     * Set the endpoint to start the upload sessions, e.g., to a local HTTP stand-in of the upload service.
+     *
+     * @param uploadEndpoint the upload endpoint
+     */
+    public static void setUploadEndpoint(@NotNull String uploadEndpoint) {
+        UploadSessions.uploadEndpoint = uploadEndpoint;
+    }
+
+    /**
+     * Start a resumable upload session of a file of a given name and size with the credentials of a given photos library client.
+     *
+     * @param photosLibraryClient the photos library client
+     * @param fileName            the file name
+     * @param fileSize            the file size in bytes
+     * @return the upload URL of the session or <code>null</code> if the session cannot be started
+     * @throws IOException cannot get the credentials or communicate with the upload service
+     */
+    @Nullable
+    public static String startUploadSession(@NotNull PhotosLibraryClient photosLibraryClient, @NotNull String fileName, long fileSize)
+            throws IOException {
+        final HttpURLConnection connection = openConnection(photosLibraryClient, uploadEndpoint, UPLOAD_COMMAND_START);
+        try (final RequestScheduler.Permit permit = GPhotos.getRequestScheduler().acquire(RequestScheduler.Operation.UPLOAD)) {
+            connection.setRequestProperty(FILE_NAME_HEADER, fileName);
+            connection.setRequestProperty(FILE_SIZE_HEADER, String.valueOf(fileSize));
+            connection.getOutputStream().close();
+            final int responseCode = connection.getResponseCode();
+            if (responseCode == HTTP_TOO_MANY_REQUESTS) {
+                permit.throttled();
+            }
+            return responseCode >= 200 && responseCode < 300 ? connection.getHeaderField(UPLOAD_URL_HEADER) : null;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Check whether a resumable upload session of a given upload URL has expired by querying its status,
+     * i.e., the server does not know the session anymore (HTTP 404 or 410) or the session is not active (e.g., it has been finalized).
+     * Other failures of the query (e.g., transient errors) do not mean the expiration, so the session can be resumed later.
+     *
+     * @param photosLibraryClient the photos library client
+     * @param uploadUrl           the upload URL of the session
+     * @return <code>true</code> iff the session cannot be resumed anymore
+     * @throws IOException cannot get the credentials or communicate with the upload service
+     */
+    public static boolean isUploadSessionExpired(@NotNull PhotosLibraryClient photosLibraryClient, @NotNull String uploadUrl) throws IOException {
+        final HttpURLConnection connection = openConnection(photosLibraryClient, uploadUrl, UPLOAD_COMMAND_QUERY);
+        try {
+            connection.getOutputStream().close();
+            final int responseCode = connection.getResponseCode();
+            if (responseCode == HTTP_NOT_FOUND || responseCode == HTTP_GONE) {
+                return true;
+            }
+            final String uploadStatus = connection.getHeaderField(UPLOAD_STATUS_HEADER);
+            return responseCode >= 200 && responseCode < 300 && uploadStatus != null && !UPLOAD_STATUS_ACTIVE.equalsIgnoreCase(uploadStatus);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Open a connection of an empty POST request of a given command of the upload protocol authenticated by the credentials of a given photos library client.
+     */
+    @NotNull
+    private static HttpURLConnection openConnection(@NotNull PhotosLibraryClient photosLibraryClient, @NotNull String url, @NotNull String command)
+            throws IOException {
+        final Credentials credentials = photosLibraryClient.getSettings().getCredentialsProvider().getCredentials();
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(0);
+        if (credentials != null) {
+            for (Map.Entry<String, List<String>> metadata : credentials.getRequestMetadata(URI.create(url)).entrySet()) {
+                for (String value : metadata.getValue()) {
+                    connection.addRequestProperty(metadata.getKey(), value);
+                }
+            }
+        }
+        connection.setRequestProperty(UPLOAD_PROTOCOL_HEADER, UPLOAD_PROTOCOL_VALUE);
+        connection.setRequestProperty(UPLOAD_COMMAND_HEADER, command);
+        return connection;
+    }
+}
@@ -33,6 +33,10 @@ public final class Messages {
     public static final String SCANNING_DIRECTORIES = "ScanningDirectories";
     public static final String PROCESSING_DIRECTORY_1 = "ProcessingDirectory(%s)";
     public static final String PROCESSING_DIRECTORY_ERROR_2 = "ProcessingDirectoryError(%s,%s)";
+    public static final String SKIPPING_UNCHANGED_DIRECTORY_1 = "SkippingUnchangedDirectory(%s)";
+    public static final String WATCHING_DIRECTORIES_1 = "WatchingDirectories(%d)";
+    public static final String SYNCHRONIZING_CHANGED_DIRECTORIES_1 = "SynchronizingChangedDirectories(%d)";
+    public static final String WATCH_ERROR_1 = "WatchError(%s)";
     public static final String OPENING_ALBUM_1 = "OpeningAlbum(%s)";
     public static final String ALBUM_URL_1 = "AlbumUrl(%s)";
     public static final String MATCHING_MEDIA_ITEMS_1 = "MatchingMediaItems(%d)";
@@ -45,12 +49,48 @@ public final class Messages {
     public static final String UPLOADED_MEDIA_ITEM_2 = "UploadedMediaItem(%s,%s)";
     public static final String MEDIA_ITEM_FILE_4 = "MediaItemFile(%s,%s,%s,%s)";
     public static final String UPLOADING_FILE_1 = "UploadingFile(%s)";
+    public static final String RESUMING_FILE_UPLOAD_1 = "ResumingFileUpload(%s)";
+    public static final String REUSING_UPLOAD_TOKEN_1 = "ReusingUploadToken(%s)";
+    public static final String RETRYING_FILE_UPLOAD_3 = "RetryingFileUpload(%s,%d,%s)";
     public static final String SKIPPING_FILE_UPLOAD_2 = "SkippingFileUpload(%s,%s)";
     public static final String CREATING_MEDIA_ITEMS_1 = "CreatingMediaItems(%d)";
     public static final String SKIPPING_MEDIA_ITEM_CREATION_2 = "SkippingMediaItemCreation(%s,%s)";
+    public static final String RETRYING_MEDIA_ITEMS_CREATION_3 = "RetryingMediaItemsCreation(%d,%d,%s)";
+    public static final String THROTTLING_REQUESTS_2 = "ThrottlingRequests(%s,%d)";
+    public static final String SKIPPING_DUPLICATE_MEDIA_FILE_1 = "SkippingDuplicateMediaFile(%s)";
+    public static final String ADDING_EXISTING_MEDIA_ITEMS_1 = "AddingExistingMediaItems(%d)";
+    public static final String ADDED_EXISTING_MEDIA_ITEM_2 = "AddedExistingMediaItem(%s,%s)";
+    public static final String CANNOT_ADD_EXISTING_MEDIA_ITEMS_2 = "CannotAddExistingMediaItems(%d,%s)";
     public static final String CANNOT_LOAD_PROPERTIES_1 = "CannotLoadProperties(%s)";
     public static final String CANNOT_UPLOAD_FILE_2 = "CannotUploadFile(%s,%s)";
+    public static final String LOADING_MEDIA_FILE_INDEX_1 = "LoadingMediaFileIndex(%s)";
+    public static final String LOADING_ALBUM_MEDIA_ITEM_INDEX_1 = "LoadingAlbumMediaItemIndex(%s)";
+    public static final String LOADING_DIRECTORY_SNAPSHOT_INDEX_1 = "LoadingDirectorySnapshotIndex(%s)";
+    public static final String CANNOT_SAVE_MEDIA_FILE_INDEX_1 = "CannotSaveMediaFileIndex(%s)";
+    public static final String CANNOT_SAVE_ALBUM_MEDIA_ITEM_INDEX_1 = "CannotSaveAlbumMediaItemIndex(%s)";
+    public static final String CANNOT_SAVE_DIRECTORY_SNAPSHOT_INDEX_1 = "CannotSaveDirectorySnapshotIndex(%s)";
+    public static final String CREDENTIALS_PROFILE_ERROR_2 = "CredentialsProfileError(%s,%s)";
     public static final String UNKNOWN_ERROR_1 = "UnknownError(%s)";
+    public static final String LOG_RECORDS_DROPPED_1 = "LogRecordsDropped(%d)";
+    public static final String SERVING_METRICS_1 = "ServingMetrics(%s)";
+    public static final String CANNOT_SERVE_METRICS_1 = "CannotServeMetrics(%s)";
+    public static final String CANNOT_WRITE_METRICS_REPORT_2 = "CannotWriteMetricsReport(%s,%s)";
+    public static final String CANNOT_START_UPLOAD_SESSION = "CannotStartUploadSession";
+    public static final String GENERATED_LOAD_TEST_TREE_4 = "GeneratedLoadTestTree(%d,%d,%d,%s)";
+    public static final String LOAD_TEST_THROUGHPUT_5 = "LoadTestThroughput(%d,%d,%.3f,%.1f,%.2f)";
+    public static final String LOAD_TEST_REQUESTS_3 = "LoadTestRequests(%d,%d,%d)";
+    public static final String LOAD_TEST_INCOMPLETE_2 = "LoadTestIncomplete(%d,%d)";
+    public static final String CANNOT_RUN_LOAD_TEST_1 = "CannotRunLoadTest(%s)";
+    public static final String RESUME_TEST_PASSED_2 = "ResumeTestPassed(%d,%d)";
+    public static final String RESUME_TEST_FAILED_1 = "ResumeTestFailed(%s)";
+    public static final String CANNOT_VERIFY_MEDIA_FILE_2 = "CannotVerifyMediaFile(%s,%s)";
+    public static final String VERIFIED_MEDIA_ITEMS_2 = "VerifiedMediaItems(%d,%d)";
+    public static final String CANNOT_WRITE_VERIFICATION_REPORT_2 = "CannotWriteVerificationReport(%s,%s)";
+    public static final String SKIPPED_MALFORMED_INDEX_RECORDS_2 = "SkippedMalformedIndexRecords(%d,%s)";
+    public static final String INDEXED_LIBRARY_MEDIA_ITEMS_1 = "IndexedLibraryMediaItems(%d)";
+    public static final String CANNOT_LIST_LIBRARY_MEDIA_ITEMS_1 = "CannotListLibraryMediaItems(%s)";
+    public static final String RETRYING_REQUEST_3 = "RetryingRequest(%s,%d,%s)";
+    public static final String MISMATCHING_MEDIA_FILES_1 = "MismatchingMediaFiles(%d)";
     public static final String MISSING = "Missing";
 
     public static Stream<String> getMessageKeysStream() {
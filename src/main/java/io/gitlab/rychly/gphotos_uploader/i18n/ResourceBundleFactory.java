@@ -11,6 +11,9 @@ import java.util.Locale;
 import java.util.MissingResourceException;
 import java.util.PropertyResourceBundle;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 
 public final class ResourceBundleFactory {
     public static final String MESSAGES_RESOURCE_BUNDLE_NAME = "messages";
@@ -20,6 +23,7 @@ public final class ResourceBundleFactory {
     public static final String RESOURCE_SUFFIX = "properties";
     private static final Locale MESSAGES_LOCALE;
     private static final ResourceBundle MESSAGES_RESOURCE_BUNDLE;
+    private static final ConcurrentMap<String, String> MESSAGE_FORMATS = new ConcurrentHashMap<>();
 
     static {
         ResourceBundle resourceBundle;
@@ -47,14 +51,35 @@ public final class ResourceBundleFactory {
         return MESSAGES_RESOURCE_BUNDLE;
     }
 
+    /**
+     * Get the format string of a message of a given key (the bundle is looked up just once for each key).
+     *
+     * @param key the message key
+     * @return the format string of the message or the key itself if there is no such message
+     */
+    public static String getMessageFormat(String key) {
+        return MESSAGE_FORMATS.computeIfAbsent(key, messageKey -> {
+            try {
+                return MESSAGES_RESOURCE_BUNDLE.getString(messageKey);
+            } catch (MissingResourceException e) {
+                return messageKey;
+            }
+        });
+    }
+
     public static String msg(String key, Object... args) {
-        String message;
-        try {
-            message = MESSAGES_RESOURCE_BUNDLE.getString(key);
-        } catch (MissingResourceException e) {
-            message = key;
-        }
-        return String.format(message, args);
+        return String.format(getMessageFormat(key), args);
+    }
+
+    /**
+     * Get a supplier of a message of a given key which is formatted only when it is supplied, e.g., to a logger if the message is loggable.
+     *
+     * @param key  the message key
+     * @param args the message arguments
+     * @return the supplier of the formatted message
+     */
+    public static Supplier<String> msgSupplier(String key, Object... args) {
+        return () -> msg(key, args);
     }
 
     public static class ResourceEncodingControl extends ResourceBundle.Control {
@@ -0,0 +1,271 @@
+package io.gitlab.rychly.gphotos_uploader.index;
+
+import com.google.photos.types.proto.MediaItem;
+import io.gitlab.rychly.gphotos_uploader.gphotos.DiffEngine;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A persistent index of media items of remote albums keyed by the album identifiers and validated by the counts of media items in the albums.
+ * The media items of an album are listed again only if the current count of media items in the album differs from the indexed count.
+ * The media items of each album are kept sorted by {@link DiffEngine#MEDIA_ITEM_ORDER}, so they can be merged with sorted media files.
+ * <p>
+ * The index file consists of lines of tab-separated fields, the file name of a media item is always the last field:
+ * <ul>
+ * <li><code>A albumId mediaItemsCount listTime</code> for an album and its count of media items,</li>
+ * <li><code>I albumId mediaItemId productUrl description filename</code> for a media item of the album.</li>
+ * </ul>
+ * The line breaks and tabs in descriptions of the media items (and the line breaks in their file names) are replaced by spaces
+ * (it does not affect the checksums in the descriptions).
+ */
+public class AlbumMediaItemIndex {
+    /**
+     * Default name of the index file in the cache directory.
+     */
+    public static final String DEFAULT_INDEX_FILE = "album-media-items.tsv";
+
+    private static final String RECORD_ALBUM = "A";
+    private static final String RECORD_ITEM = "I";
+    private static final int RECORD_ALBUM_FIELDS = 4;
+    private static final int RECORD_ITEM_FIELDS = 6;
+
+    private final File indexFile;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean modified = false;
+
+    private AlbumMediaItemIndex(@NotNull File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Load the index from a given index file (an empty index is created if the file does not exist yet).
+     *
+     * @param indexFile the index file
+     * @return the index
+     * @throws IOException cannot read the index file
+     */
+    @NotNull
+    public static AlbumMediaItemIndex load(@NotNull File indexFile) throws IOException {
+        final AlbumMediaItemIndex albumMediaItemIndex = new AlbumMediaItemIndex(indexFile);
+        final Map<String, String[]> albumFields = new HashMap<>();
+        final Map<String, List<MediaItem>> albumMediaItems = new HashMap<>();
+        int malformedRecords = 0;
+        for (String line : IndexFiles.readLines(indexFile)) {
+            // the records of unknown types are skipped, the malformed records (e.g., truncated lines) are skipped and reported
+            if (line.startsWith(RECORD_ALBUM + IndexFiles.FIELD_SEPARATOR)) {
+                final String[] fields = IndexFiles.splitLine(line, RECORD_ALBUM_FIELDS);
+                if (fields != null) {
+                    albumFields.put(fields[1], fields);
+                } else {
+                    malformedRecords++;
+                }
+            } else if (line.startsWith(RECORD_ITEM + IndexFiles.FIELD_SEPARATOR)) {
+                final String[] fields = IndexFiles.splitLine(line, RECORD_ITEM_FIELDS);
+                if (fields != null) {
+                    albumMediaItems.computeIfAbsent(fields[1], key -> new ArrayList<>()).add(MediaItem.newBuilder()
+                            .setId(fields[2]).setProductUrl(fields[3]).setDescription(fields[4]).setFilename(fields[5]).build());
+                } else {
+                    malformedRecords++;
+                }
+            }
+        }
+        for (String[] fields : albumFields.values()) {
+            final long mediaItemsCount;
+            final long listTime;
+            try {
+                mediaItemsCount = Long.parseLong(fields[2]);
+                listTime = Long.parseLong(fields[3]);
+            } catch (NumberFormatException e) {
+                // the album is not indexed, so it is listed again
+                malformedRecords++;
+                continue;
+            }
+            // the items are usually saved sorted already, so the sorting is just their check
+            final List<MediaItem> mediaItems = albumMediaItems.getOrDefault(fields[1], new ArrayList<>());
+            mediaItems.sort(DiffEngine.MEDIA_ITEM_ORDER);
+            albumMediaItemIndex.entries.put(fields[1], new Entry(mediaItemsCount, mediaItems, listTime));
+        }
+        IndexFiles.reportMalformedRecords(indexFile, malformedRecords);
+        return albumMediaItemIndex;
+    }
+
+    @NotNull
+    private static String toSingleField(@NotNull String string) {
+        return replaceLineBreaks(string, true);
+    }
+
+    @NotNull
+    private static String toSingleLine(@NotNull String string) {
+        return replaceLineBreaks(string, false);
+    }
+
+    /**
+     * Replace the line breaks (and optionally the tabs) in a given string by spaces.
+     * The string is copied only if it contains any of the characters, which is rare.
+     */
+    @NotNull
+    private static String replaceLineBreaks(@NotNull String string, boolean isReplacingTabs) {
+        char[] chars = null;
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            if (c == '\r' || c == '\n' || (isReplacingTabs && c == '\t')) {
+                if (chars == null) {
+                    chars = string.toCharArray();
+                }
+                chars[i] = ' ';
+            }
+        }
+        return chars == null ? string : new String(chars);
+    }
+
+    /**
+     * Save the index into its index file if it has been modified since its loading or the last saving.
+     *
+     * @throws IOException cannot write the index file
+     */
+    public synchronized void saveIfModified() throws IOException {
+        if (!modified) {
+            return;
+        }
+        modified = false;
+        final List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+            final String albumId = mapEntry.getKey();
+            final Entry entry = mapEntry.getValue();
+            final List<MediaItem> mediaItems;
+            final long mediaItemsCount;
+            synchronized (entry) {
+                mediaItems = entry.getSortedMediaItems();
+                mediaItemsCount = entry.mediaItemsCount;
+            }
+            lines.add(IndexFiles.joinLine(RECORD_ALBUM, albumId, mediaItemsCount, entry.listTime));
+            for (MediaItem mediaItem : mediaItems) {
+                lines.add(IndexFiles.joinLine(RECORD_ITEM, albumId, mediaItem.getId(), mediaItem.getProductUrl(),
+                        toSingleField(mediaItem.getDescription()), toSingleLine(mediaItem.getFilename())));
+            }
+        }
+        IndexFiles.writeLines(indexFile, lines);
+    }
+
+    /**
+     * Get the indexed media items of a given album if the album has not been changed since their listing.
+     *
+     * @param albumId         the album identifier
+     * @param mediaItemsCount the current count of media items in the album
+     * @return the media items sorted by {@link DiffEngine#MEDIA_ITEM_ORDER} or <code>null</code> if the album is not indexed
+     * or its indexed count of media items differs
+     */
+    @Nullable
+    public List<MediaItem> getMediaItems(@NotNull String albumId, long mediaItemsCount) {
+        final Entry entry = entries.get(albumId);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            return entry.mediaItemsCount == mediaItemsCount ? entry.getSortedMediaItems() : null;
+        }
+    }
+
+    /**
+     * Put all media items of a given album which have been just listed.
+     *
+     * @param albumId           the album identifier
+     * @param mediaItemsCount   the count of media items in the album at the time of the listing
+     * @param compactMediaItems all the media items of the album made compact by {@link #compactMediaItem(MediaItem)}
+     *                          and sorted by {@link DiffEngine#MEDIA_ITEM_ORDER} (the list is kept by the index, so it must not be modified anymore)
+     */
+    public void putMediaItems(@NotNull String albumId, long mediaItemsCount, @NotNull List<MediaItem> compactMediaItems) {
+        entries.put(albumId, new Entry(mediaItemsCount, compactMediaItems, System.currentTimeMillis()));
+        modified = true;
+    }
+
+    /**
+     * Add given media items which have been just created in (or added into) a given album, so the album is not listed again just because of them.
+     * Nothing is added if the album is not indexed.
+     * The added media items are just collected and they are sorted into the media items of the album on their next getting or saving.
+     *
+     * @param albumId    the album identifier
+     * @param mediaItems the created or added media items
+     */
+    public void addMediaItems(@NotNull String albumId, @NotNull Collection<MediaItem> mediaItems) {
+        final Entry entry = entries.get(albumId);
+        if (entry != null) {
+            final List<MediaItem> strippedMediaItems = stripMediaItems(mediaItems);
+            synchronized (entry) {
+                entry.addedMediaItems.addAll(strippedMediaItems);
+                entry.mediaItemsCount += strippedMediaItems.size();
+            }
+            modified = true;
+        }
+    }
+
+    /**
+     * Create a compact copy of a given media item with just the fields stored in the index file
+     * (i.e., the identifier, the product URL, the description, and the file name, without the metadata).
+     *
+     * @param mediaItem the media item
+     * @return the compact media item
+     */
+    @NotNull
+    public static MediaItem compactMediaItem(@NotNull MediaItem mediaItem) {
+        return MediaItem.newBuilder()
+                .setId(mediaItem.getId()).setProductUrl(mediaItem.getProductUrl())
+                .setDescription(toSingleField(mediaItem.getDescription())).setFilename(toSingleLine(mediaItem.getFilename())).build();
+    }
+
+    @NotNull
+    private static List<MediaItem> stripMediaItems(@NotNull Collection<MediaItem> mediaItems) {
+        final List<MediaItem> strippedMediaItems = new ArrayList<>(mediaItems.size());
+        for (MediaItem mediaItem : mediaItems) {
+            strippedMediaItems.add(compactMediaItem(mediaItem));
+        }
+        return strippedMediaItems;
+    }
+
+    /**
+     * An indexed album, its mutable state is guarded by the entry itself.
+     */
+    private static class Entry {
+        private final long listTime;
+        private final List<MediaItem> addedMediaItems = new ArrayList<>();
+        private long mediaItemsCount;
+        private List<MediaItem> sortedMediaItems;
+
+        private Entry(long mediaItemsCount, @NotNull List<MediaItem> sortedMediaItems, long listTime) {
+            this.mediaItemsCount = mediaItemsCount;
+            this.sortedMediaItems = Collections.unmodifiableList(sortedMediaItems);
+            this.listTime = listTime;
+        }
+
+        /**
+         * Get the media items sorted by {@link DiffEngine#MEDIA_ITEM_ORDER} including the added ones,
+         * i.e., the added media items are sorted and merged into the sorted ones (the lists are not modified by the callers).
+         *
+         * @return the sorted media items
+         */
+        @NotNull
+        private List<MediaItem> getSortedMediaItems() {
+            if (!addedMediaItems.isEmpty()) {
+                addedMediaItems.sort(DiffEngine.MEDIA_ITEM_ORDER);
+                final List<MediaItem> mergedMediaItems = new ArrayList<>(sortedMediaItems.size() + addedMediaItems.size());
+                int i = 0;
+                int j = 0;
+                while (i < sortedMediaItems.size() && j < addedMediaItems.size()) {
+                    mergedMediaItems.add(DiffEngine.MEDIA_ITEM_ORDER.compare(sortedMediaItems.get(i), addedMediaItems.get(j)) <= 0
+                            ? sortedMediaItems.get(i++) : addedMediaItems.get(j++));
+                }
+                mergedMediaItems.addAll(sortedMediaItems.subList(i, sortedMediaItems.size()));
+                mergedMediaItems.addAll(addedMediaItems.subList(j, addedMediaItems.size()));
+                sortedMediaItems = Collections.unmodifiableList(mergedMediaItems);
+                addedMediaItems.clear();
+            }
+            return sortedMediaItems;
+        }
+    }
+}
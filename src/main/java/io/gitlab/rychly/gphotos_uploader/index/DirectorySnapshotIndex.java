@@ -0,0 +1,179 @@
+package io.gitlab.rychly.gphotos_uploader.index;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A persistent index of snapshots of media directories which have been successfully synchronized in particular credentials profiles.
+ * A snapshot is a fingerprint of the last modification time of a directory and of the names, sizes, and last modification times of its media files,
+ * so a directory with the same fingerprint as its snapshot has not been changed since its last synchronization.
+ * <p>
+ * The index file consists of lines of tab-separated fields <code>S profile fingerprint syncTime path</code>
+ * where the path of a directory is always the last field.
+ */
+public class DirectorySnapshotIndex {
+    /**
+     * Default name of the index file in the cache directory.
+     */
+    public static final String DEFAULT_INDEX_FILE = "directory-snapshots.tsv";
+
+    private static final String RECORD_SNAPSHOT = "S";
+    private static final int RECORD_SNAPSHOT_FIELDS = 5;
+    private static final String FINGERPRINT_ALGORITHM = "SHA-1";
+
+    private final File indexFile;
+    private final ConcurrentMap<String, Map<String, Snapshot>> snapshots = new ConcurrentHashMap<>();
+    private volatile boolean modified = false;
+
+    private DirectorySnapshotIndex(@NotNull File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Load the index from a given index file (an empty index is created if the file does not exist yet).
+     *
+     * @param indexFile the index file
+     * @return the index
+     * @throws IOException cannot read the index file
+     */
+    @NotNull
+    public static DirectorySnapshotIndex load(@NotNull File indexFile) throws IOException {
+        final DirectorySnapshotIndex directorySnapshotIndex = new DirectorySnapshotIndex(indexFile);
+        for (String line : IndexFiles.readLines(indexFile)) {
+            if (line.startsWith(RECORD_SNAPSHOT + IndexFiles.FIELD_SEPARATOR)) {
+                final String[] fields = IndexFiles.splitLine(line, RECORD_SNAPSHOT_FIELDS);
+                if (fields != null) {
+                    directorySnapshotIndex.getProfileSnapshots(fields[1])
+                            .put(fields[4], new Snapshot(fields[2], Long.parseLong(fields[3])));
+                }
+            }
+        }
+        return directorySnapshotIndex;
+    }
+
+    /**
+     * Compute a fingerprint of a given directory and its given media files.
+     *
+     * @param directory  the directory
+     * @param mediaFiles the media files of the directory
+     * @return the fingerprint
+     * @throws IOException cannot read the attributes of the directory or the files
+     */
+    @NotNull
+    public static String fingerprint(@NotNull File directory, @NotNull Iterable<? extends File> mediaFiles) throws IOException {
+        final MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(FINGERPRINT_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+        messageDigest.update(String.valueOf(directory.lastModified()).getBytes(StandardCharsets.UTF_8));
+        for (File mediaFile : mediaFiles) {
+            final BasicFileAttributes basicFileAttributes = Files.readAttributes(mediaFile.toPath(), BasicFileAttributes.class);
+            messageDigest.update(IndexFiles.joinLine("", mediaFile.getName(), basicFileAttributes.size(),
+                    basicFileAttributes.lastModifiedTime().toMillis()).getBytes(StandardCharsets.UTF_8));
+        }
+        return new BigInteger(1, messageDigest.digest()).toString(16);
+    }
+
+    @NotNull
+    private Map<String, Snapshot> getProfileSnapshots(@NotNull String credentialsProfile) {
+        return snapshots.computeIfAbsent(credentialsProfile, key -> new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Save the index into its index file if it has been modified since its loading or the last saving.
+     *
+     * @throws IOException cannot write the index file
+     */
+    public synchronized void saveIfModified() throws IOException {
+        if (!modified) {
+            return;
+        }
+        modified = false;
+        final List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Snapshot>> profileEntry : snapshots.entrySet()) {
+            for (Map.Entry<String, Snapshot> snapshotEntry : profileEntry.getValue().entrySet()) {
+                final String path = snapshotEntry.getKey();
+                if (path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0) {
+                    // such a path cannot be stored in a line-based index file
+                    continue;
+                }
+                lines.add(IndexFiles.joinLine(RECORD_SNAPSHOT, profileEntry.getKey(), snapshotEntry.getValue().fingerprint,
+                        snapshotEntry.getValue().syncTime, path));
+            }
+        }
+        IndexFiles.writeLines(indexFile, lines);
+    }
+
+    /**
+     * Get a view of the index for a given credentials profile.
+     *
+     * @param credentialsProfile the credentials profile or <code>null</code> for the default profile
+     * @return the view of the index for the profile
+     */
+    @NotNull
+    public Profile forProfile(@Nullable String credentialsProfile) {
+        return new Profile(credentialsProfile == null ? "" : credentialsProfile);
+    }
+
+    private static class Snapshot {
+        private final String fingerprint;
+        private final long syncTime;
+
+        private Snapshot(@NotNull String fingerprint, long syncTime) {
+            this.fingerprint = fingerprint;
+            this.syncTime = syncTime;
+        }
+    }
+
+    /**
+     * A view of the index for a particular credentials profile.
+     */
+    public class Profile {
+        private final Map<String, Snapshot> profileSnapshots;
+
+        private Profile(@NotNull String credentialsProfile) {
+            this.profileSnapshots = getProfileSnapshots(credentialsProfile);
+        }
+
+        /**
+         * Check whether a given directory has been synchronized with a given fingerprint, i.e., it has not been changed since then.
+         *
+         * @param directory   the directory
+         * @param fingerprint the current fingerprint of the directory
+         * @return <code>true</code> iff the fingerprint of the snapshot of the directory is the same
+         */
+        public boolean isUnchanged(@NotNull File directory, @NotNull String fingerprint) {
+            final Snapshot snapshot = profileSnapshots.get(directory.getAbsolutePath());
+            return snapshot != null && snapshot.fingerprint.equals(fingerprint);
+        }
+
+        /**
+         * Put a snapshot of a given directory which has been successfully synchronized.
+         *
+         * @param directory   the directory
+         * @param fingerprint the fingerprint of the directory taken before its synchronization
+         */
+        public void putSnapshot(@NotNull File directory, @NotNull String fingerprint) {
+            profileSnapshots.put(directory.getAbsolutePath(), new Snapshot(fingerprint, System.currentTimeMillis()));
+            modified = true;
+        }
+
+    }
+}
@@ -0,0 +1,139 @@
+package io.gitlab.rychly.gphotos_uploader.index;
+
+import io.gitlab.rychly.gphotos_uploader.i18n.Messages;
+import io.gitlab.rychly.gphotos_uploader.i18n.ResourceBundleFactory;
+import io.gitlab.rychly.gphotos_uploader.logger.LoggerFactory;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Helpers for line-based index files of tab-separated fields.
+ */
+public final class IndexFiles {
+    /**
+     * Separator of fields in the index file lines.
+     */
+    public static final String FIELD_SEPARATOR = "\t";
+
+    private IndexFiles() {
+    }
+
+    /**
+     * Read all lines of a given index file.
+     *
+     * @param indexFile the index file
+     * @return the lines or an empty list if the file does not exist yet
+     * @throws IOException cannot read the file
+     */
+    @NotNull
+    public static List<String> readLines(@NotNull File indexFile) throws IOException {
+        return indexFile.exists()
+                ? Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8)
+                : Collections.emptyList();
+    }
+
+    /**
+     * Report a given number of malformed records skipped while loading an index file, if any.
+     *
+     * @param indexFile        the index file
+     * @param malformedRecords the number of the skipped malformed records
+     */
+    public static void reportMalformedRecords(@NotNull File indexFile, int malformedRecords) {
+        if (malformedRecords > 0) {
+            LoggerFactory.getLogger().warning(ResourceBundleFactory.msg(Messages.SKIPPED_MALFORMED_INDEX_RECORDS_2,
+                    malformedRecords, indexFile.getAbsolutePath()));
+        }
+    }
+
+    /**
+     * Write given lines into an index file atomically, i.e., into a temporary file which then replaces the index file.
+     *
+     * @param indexFile the index file
+     * @param lines     the lines to write
+     * @throws IOException cannot write the file
+     */
+    public static void writeLines(@NotNull File indexFile, @NotNull Iterable<? extends CharSequence> lines) throws IOException {
+        final Path indexPath = indexFile.toPath();
+        final Path temporaryPath = getTemporaryPath(indexPath);
+        Files.write(temporaryPath, lines, StandardCharsets.UTF_8);
+        replace(temporaryPath, indexPath);
+    }
+
+    /**
+     * Write given bytes into a binary index file (e.g., a snapshot) atomically, i.e., into a temporary file which then replaces the index file.
+     *
+     * @param indexFile the index file
+     * @param bytes     the bytes to write
+     * @throws IOException cannot write the file
+     */
+    public static void writeBytes(@NotNull File indexFile, @NotNull byte[] bytes) throws IOException {
+        final Path indexPath = indexFile.toPath();
+        final Path temporaryPath = getTemporaryPath(indexPath);
+        Files.write(temporaryPath, bytes);
+        replace(temporaryPath, indexPath);
+    }
+
+    @NotNull
+    private static Path getTemporaryPath(@NotNull Path indexPath) {
+        return indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+    }
+
+    private static void replace(@NotNull Path temporaryPath, @NotNull Path indexPath) throws IOException {
+        try {
+            Files.move(temporaryPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the atomic move is not supported by the file-system
+            Files.move(temporaryPath, indexPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Append given lines to an index file (e.g., to a journal of an index), the file is created if it does not exist yet.
+     *
+     * @param indexFile the index file
+     * @param lines     the lines to append
+     * @throws IOException cannot write the file
+     */
+    public static void appendLines(@NotNull File indexFile, @NotNull Iterable<? extends CharSequence> lines) throws IOException {
+        Files.write(indexFile.toPath(), lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Split a given index file line into the fields, the last field takes the rest of the line (it can contain the separators).
+     *
+     * @param line       the line to split
+     * @param fieldCount the number of fields
+     * @return the fields or <code>null</code> if the line has not the given number of fields
+     */
+    public static String[] splitLine(@NotNull String line, int fieldCount) {
+        final String[] fields = line.split(FIELD_SEPARATOR, fieldCount);
+        return fields.length == fieldCount ? fields : null;
+    }
+
+    /**
+     * Join given fields into an index file line.
+     *
+     * @param fields the fields to join
+     * @return the line
+     */
+    @NotNull
+    public static String joinLine(@NotNull Object... fields) {
+        final StringBuilder stringBuilder = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                stringBuilder.append(FIELD_SEPARATOR);
+            }
+            stringBuilder.append(fields[i] == null ? "" : fields[i]);
+        }
+        return stringBuilder.toString();
+    }
+}
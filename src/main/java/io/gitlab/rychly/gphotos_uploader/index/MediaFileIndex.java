@@ -0,0 +1,640 @@
+package io.gitlab.rychly.gphotos_uploader.index;
+
+import io.gitlab.rychly.gphotos_uploader.gphotos.MediaFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A persistent index of media files keyed by their paths and validated by their sizes, last modification times, and file keys (inodes).
+ * The index keeps content checksums of the files and, for each credentials profile, states of their uploads and the resulting media items.
+ * <p>
+ * The index file consists of lines of tab-separated fields, the path of a media file is always the last field:
+ * <ul>
+ * <li><code>F size lastModified fileKey checksumString lastSeen path</code> for a media file, its checksum, and the last time
+ * the entry of the file was validated,</li>
+ * <li><code>C checksumString path</code> for a checksum of the media file by another algorithm than that of the file record
+ * (e.g., the previous one to verify the media items uploaded before the algorithm has been changed),</li>
+ * <li><code>R profile mediaItemId uploadToken uploadTime path</code> for a remote state of the media file in a credentials profile,</li>
+ * <li><code>U profile uploadUrl startTime path</code> for an unfinished resumable upload session of the media file in a credentials profile.</li>
+ * </ul>
+ * The checksum string of a media file can be empty if the file has a remote state or an upload session but its checksum has not been computed yet.
+ * <p>
+ * The entries not validated for {@link #ENTRY_TIME_TO_LIVE_MILLIS} (e.g., of deleted or moved files) are pruned.
+ * The modified entries are appended periodically into a journal file next to the index file (see {@link #saveJournalIfModified()}),
+ * the journal is replayed by the loading and compacted into the index file by the saving of the whole index (see {@link #saveIfModified()}).
+ */
+public class MediaFileIndex {
+    /**
+     * Default name of the index file in the cache directory.
+     */
+    public static final String DEFAULT_INDEX_FILE = "media-file-index.tsv";
+
+    /**
+     * Default interval in seconds of saving the modified index during a synchronization.
+     */
+    public static final long DEFAULT_SAVE_INTERVAL_SECONDS = 30;
+
+    private static final String JOURNAL_FILE_SUFFIX = ".journal";
+    private static final String RECORD_FILE = "F";
+    private static final String RECORD_REMOTE = "R";
+    private static final String RECORD_UPLOAD = "U";
+    private static final String RECORD_OTHER_CHECKSUM = "C";
+    private static final int RECORD_FILE_FIELDS = 7;
+    private static final int RECORD_REMOTE_FIELDS = 6;
+    private static final int RECORD_UPLOAD_FIELDS = 5;
+    private static final int RECORD_OTHER_CHECKSUM_FIELDS = 3;
+
+    /**
+     * Time-to-live of the upload sessions, the older sessions are not resumed.
+     */
+    public static final long UPLOAD_SESSION_TIME_TO_LIVE_MILLIS = 24 * 60 * 60 * 1000;
+
+    /**
+     * Time-to-live of the upload tokens (they are valid for one day, an hour is kept in reserve), the older tokens are not reused.
+     * See https://developers.google.com/photos/library/guides/upload-media#uploading-bytes
+     */
+    public static final long UPLOAD_TOKEN_TIME_TO_LIVE_MILLIS = 23 * 60 * 60 * 1000;
+
+    /**
+     * Time-to-live of the entries since their last validation, the older entries are pruned.
+     */
+    public static final long ENTRY_TIME_TO_LIVE_MILLIS = 90L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Granularity of the last validation times of the entries, so the validation of the same entries in the next runs of a day
+     * does not modify the index.
+     */
+    private static final long LAST_SEEN_GRANULARITY_MILLIS = 24 * 60 * 60 * 1000;
+
+    private final File indexFile;
+    private final File journalFile;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> journalKeys = ConcurrentHashMap.newKeySet();
+    private volatile boolean modified = false;
+
+    private MediaFileIndex(@NotNull File indexFile) {
+        this.indexFile = indexFile;
+        this.journalFile = indexFile.toPath().resolveSibling(indexFile.getName() + JOURNAL_FILE_SUFFIX).toFile();
+    }
+
+    /**
+     * Load the index from a given index file and its journal, if any (an empty index is created if the file does not exist yet).
+     * The expired entries are pruned.
+     *
+     * @param indexFile the index file
+     * @return the index
+     * @throws IOException cannot read the index file
+     */
+    @NotNull
+    public static MediaFileIndex load(@NotNull File indexFile) throws IOException {
+        final MediaFileIndex mediaFileIndex = new MediaFileIndex(indexFile);
+        final List<String> journalLines = IndexFiles.readLines(mediaFileIndex.journalFile);
+        // the records of the journal are newer, the file record of an entry replaces the whole entry
+        final List<String> lines = new ArrayList<>(IndexFiles.readLines(indexFile));
+        lines.addAll(journalLines);
+        int malformedRecords = 0;
+        for (String line : lines) {
+            // the records of unknown types are skipped, the malformed records (e.g., truncated lines) are skipped and reported
+            try {
+                if (line.startsWith(RECORD_FILE + IndexFiles.FIELD_SEPARATOR)) {
+                    final String[] fields = IndexFiles.splitLine(line, RECORD_FILE_FIELDS);
+                    if (fields == null) {
+                        malformedRecords++;
+                    } else {
+                        mediaFileIndex.entries.put(fields[6], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                                fields[3], emptyToNull(fields[4]), Long.parseLong(fields[5])));
+                    }
+                } else if (line.startsWith(RECORD_REMOTE + IndexFiles.FIELD_SEPARATOR)) {
+                    final String[] fields = IndexFiles.splitLine(line, RECORD_REMOTE_FIELDS);
+                    final Entry entry = fields == null ? null : mediaFileIndex.entries.get(fields[5]);
+                    if (fields == null) {
+                        malformedRecords++;
+                    } else if (entry != null) {
+                        entry.remoteStates.put(fields[1], new RemoteState(emptyToNull(fields[2]), emptyToNull(fields[3]),
+                                fields[4].isEmpty() ? 0 : Long.parseLong(fields[4])));
+                    }
+                } else if (line.startsWith(RECORD_UPLOAD + IndexFiles.FIELD_SEPARATOR)) {
+                    final String[] fields = IndexFiles.splitLine(line, RECORD_UPLOAD_FIELDS);
+                    final Entry entry = fields == null ? null : mediaFileIndex.entries.get(fields[4]);
+                    if (fields == null) {
+                        malformedRecords++;
+                    } else if (entry != null) {
+                        entry.uploadSessions.put(fields[1], new UploadSession(fields[2], Long.parseLong(fields[3])));
+                    }
+                } else if (line.startsWith(RECORD_OTHER_CHECKSUM + IndexFiles.FIELD_SEPARATOR)) {
+                    final String[] fields = IndexFiles.splitLine(line, RECORD_OTHER_CHECKSUM_FIELDS);
+                    final Entry entry = fields == null ? null : mediaFileIndex.entries.get(fields[2]);
+                    final String algorithm = fields == null ? null : getAlgorithm(fields[1]);
+                    if (algorithm == null) {
+                        malformedRecords++;
+                    } else if (entry != null) {
+                        entry.otherChecksumStrings.put(algorithm, fields[1]);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                malformedRecords++;
+            }
+        }
+        IndexFiles.reportMalformedRecords(indexFile, malformedRecords);
+        final long expirationTime = System.currentTimeMillis() - ENTRY_TIME_TO_LIVE_MILLIS;
+        // the pruned entries and the journal are compacted into the index file by the next saving
+        mediaFileIndex.modified = mediaFileIndex.entries.values().removeIf(entry -> entry.lastSeen < expirationTime)
+                || !journalLines.isEmpty();
+        return mediaFileIndex;
+    }
+
+    @Nullable
+    private static String emptyToNull(@NotNull String string) {
+        return string.isEmpty() ? null : string;
+    }
+
+    /**
+     * Get the algorithm of a given checksum string as the key of the checksum strings of other algorithms.
+     *
+     * @return the algorithm in upper case or <code>null</code> if it is not a checksum string
+     */
+    @Nullable
+    private static String getAlgorithm(@Nullable String checksumString) {
+        final int separatorIndex = checksumString == null ? -1 : checksumString.indexOf(MediaFile.CHECKSUM_STRING_SEPARATOR);
+        return separatorIndex > 0 ? checksumString.substring(0, separatorIndex).toUpperCase(Locale.ROOT) : null;
+    }
+
+    @NotNull
+    private static String getKey(@NotNull File file) {
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * Save the whole index into its index file if it has been modified since its loading or the last saving,
+     * i.e., compact the journal into the index file and prune the expired entries.
+     *
+     * @throws IOException cannot write the index file
+     */
+    public synchronized void saveIfModified() throws IOException {
+        if (!modified) {
+            return;
+        }
+        modified = false;
+        journalKeys.clear();
+        final long expirationTime = System.currentTimeMillis() - ENTRY_TIME_TO_LIVE_MILLIS;
+        final List<String> lines = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+            if (mapEntry.getValue().lastSeen >= expirationTime) {
+                addLines(lines, mapEntry.getKey(), mapEntry.getValue());
+            }
+        }
+        IndexFiles.writeLines(indexFile, lines);
+        Files.deleteIfExists(journalFile.toPath());
+    }
+
+    /**
+     * Append the entries modified since the last saving into the journal of the index, e.g., periodically during a synchronization.
+     * It is cheaper than the saving of the whole index, which is still needed to compact the journal (see {@link #saveIfModified()}).
+     *
+     * @throws IOException cannot write the journal file
+     */
+    public synchronized void saveJournalIfModified() throws IOException {
+        if (journalKeys.isEmpty()) {
+            return;
+        }
+        final List<String> lines = new ArrayList<>();
+        for (Iterator<String> iterator = journalKeys.iterator(); iterator.hasNext(); ) {
+            final String path = iterator.next();
+            iterator.remove();
+            final Entry entry = entries.get(path);
+            if (entry != null) {
+                addLines(lines, path, entry);
+            }
+        }
+        IndexFiles.appendLines(journalFile, lines);
+    }
+
+    /**
+     * Add the records of a given entry of a given path into given lines.
+     */
+    private static void addLines(@NotNull List<String> lines, @NotNull String path, @NotNull Entry entry) {
+        if (path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0) {
+            // such a path cannot be stored in a line-based index file
+            return;
+        }
+        lines.add(IndexFiles.joinLine(RECORD_FILE, entry.size, entry.lastModified, entry.fileKey, entry.checksumString, entry.lastSeen, path));
+        for (Map.Entry<String, RemoteState> remoteStateEntry : entry.remoteStates.entrySet()) {
+            final RemoteState remoteState = remoteStateEntry.getValue();
+            lines.add(IndexFiles.joinLine(RECORD_REMOTE, remoteStateEntry.getKey(), remoteState.mediaItemId,
+                    remoteState.uploadToken, remoteState.uploadToken == null ? null : remoteState.uploadTime, path));
+        }
+        for (Map.Entry<String, UploadSession> uploadSessionEntry : entry.uploadSessions.entrySet()) {
+            final UploadSession uploadSession = uploadSessionEntry.getValue();
+            lines.add(IndexFiles.joinLine(RECORD_UPLOAD, uploadSessionEntry.getKey(), uploadSession.uploadUrl,
+                    uploadSession.startTime, path));
+        }
+        for (String otherChecksumString : entry.otherChecksumStrings.values()) {
+            lines.add(IndexFiles.joinLine(RECORD_OTHER_CHECKSUM, otherChecksumString, path));
+        }
+    }
+
+    /**
+     * Mark an entry of a given path to be modified, so it is saved into the journal and into the index file.
+     */
+    private void markModified(@NotNull String key) {
+        journalKeys.add(key);
+        modified = true;
+    }
+
+    /**
+     * Update the last validation time of a given entry (not more often than once a day, the new time is not journaled).
+     */
+    private void touch(@NotNull Entry entry) {
+        final long now = System.currentTimeMillis();
+        if (entry.lastSeen + LAST_SEEN_GRANULARITY_MILLIS < now) {
+            entry.lastSeen = now;
+            modified = true;
+        }
+    }
+
+    /**
+     * Get a valid entry of a given file, i.e., the entry with the size, the last modification time, and the file key matching the file.
+     *
+     * @param file the file
+     * @return the entry or <code>null</code> if there is no valid entry for the file
+     * @throws IOException cannot read the attributes of the file
+     */
+    @Nullable
+    private Entry getValidEntry(@NotNull File file) throws IOException {
+        final Entry entry = entries.get(getKey(file));
+        if (entry == null || !entry.isMatching(Files.readAttributes(file.toPath(), BasicFileAttributes.class))) {
+            return null;
+        }
+        touch(entry);
+        return entry;
+    }
+
+    /**
+     * Get a valid entry of a given file or create a new entry without a checksum if there is no valid entry for the file.
+     *
+     * @param file the file
+     * @return the entry
+     * @throws IOException cannot read the attributes of the file
+     */
+    @NotNull
+    private Entry getOrCreateValidEntry(@NotNull File file) throws IOException {
+        final BasicFileAttributes basicFileAttributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        return entries.compute(getKey(file), (key, oldEntry) -> {
+            if (oldEntry != null && oldEntry.isMatching(basicFileAttributes)) {
+                touch(oldEntry);
+                return oldEntry;
+            }
+            markModified(key);
+            return new Entry(basicFileAttributes.size(), basicFileAttributes.lastModifiedTime().toMillis(),
+                    Objects.toString(basicFileAttributes.fileKey(), ""), null, System.currentTimeMillis());
+        });
+    }
+
+    /**
+     * Get a checksum string of a given file if the file has not been changed since the checksum string was put into the index.
+     *
+     * @param file the file
+     * @return the checksum string or <code>null</code> if not available or outdated
+     * @throws IOException cannot read the attributes of the file
+     */
+    @Nullable
+    public String getChecksumString(@NotNull File file) throws IOException {
+        final Entry entry = getValidEntry(file);
+        return entry == null ? null : entry.checksumString;
+    }
+
+    /**
+     * Get a checksum string of a given algorithm of a given file if the file has not been changed since the checksum string was put into the index.
+     *
+     * @param file      the file
+     * @param algorithm the checksum algorithm
+     * @return the checksum string or <code>null</code> if not available or outdated
+     * @throws IOException cannot read the attributes of the file
+     */
+    @Nullable
+    public String getChecksumString(@NotNull File file, @NotNull String algorithm) throws IOException {
+        final Entry entry = getValidEntry(file);
+        if (entry == null) {
+            return null;
+        }
+        final String upperCaseAlgorithm = algorithm.toUpperCase(Locale.ROOT);
+        return upperCaseAlgorithm.equals(getAlgorithm(entry.checksumString)) ? entry.checksumString : entry.otherChecksumStrings.get(upperCaseAlgorithm);
+    }
+
+    /**
+     * Put a checksum string of a given file by another algorithm than the current one into the index, next to the checksum of the current algorithm.
+     * The checksum string is not put if the file has been changed while it was being hashed (see {@link #putChecksumString(File, String, BasicFileAttributes)}).
+     *
+     * @param file                 the file
+     * @param checksumString       the checksum string of the hashed content of the file
+     * @param hashedFileAttributes the attributes of the file read before its content was hashed
+     * @return <code>true</code> iff the checksum string has been put
+     * @throws IOException cannot read the attributes of the file
+     */
+    public boolean putOtherChecksumString(@NotNull File file, @NotNull String checksumString,
+                                          @NotNull BasicFileAttributes hashedFileAttributes) throws IOException {
+        final String algorithm = getAlgorithm(checksumString);
+        final BasicFileAttributes basicFileAttributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        if (algorithm == null || !isSameVersion(hashedFileAttributes, basicFileAttributes)) {
+            return false;
+        }
+        if (!checksumString.equals(getOrCreateValidEntry(file).otherChecksumStrings.put(algorithm, checksumString))) {
+            markModified(getKey(file));
+        }
+        return true;
+    }
+
+    /**
+     * Put a checksum string of a given file into the index. The remote states of the file are kept only if the file has not been changed.
+     * The checksum string is not put if the file has been changed while it was being hashed, i.e., if its current attributes
+     * do not match its attributes read before the hashing.
+     *
+     * @param file                   the file
+     * @param checksumString         the checksum string of the hashed content of the file
+     * @param hashedFileAttributes   the attributes of the file read before its content was hashed
+     * @return <code>true</code> iff the checksum string has been put
+     * @throws IOException cannot read the attributes of the file
+     */
+    public boolean putChecksumString(@NotNull File file, @NotNull String checksumString,
+                                     @NotNull BasicFileAttributes hashedFileAttributes) throws IOException {
+        final BasicFileAttributes basicFileAttributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        if (!isSameVersion(hashedFileAttributes, basicFileAttributes)) {
+            // the checksum may be of neither the old nor the new content
+            return false;
+        }
+        final Entry newEntry = new Entry(basicFileAttributes.size(), basicFileAttributes.lastModifiedTime().toMillis(),
+                Objects.toString(basicFileAttributes.fileKey(), ""), checksumString, System.currentTimeMillis());
+        entries.compute(getKey(file), (key, oldEntry) -> {
+            if (oldEntry != null && oldEntry.isMatching(newEntry)) {
+                if (checksumString.equals(oldEntry.checksumString)) {
+                    touch(oldEntry);
+                    return oldEntry;
+                }
+                // the same version of the file, just its checksum has been computed (the checksum of another algorithm is kept)
+                newEntry.remoteStates.putAll(oldEntry.remoteStates);
+                newEntry.uploadSessions.putAll(oldEntry.uploadSessions);
+                newEntry.otherChecksumStrings.putAll(oldEntry.otherChecksumStrings);
+                final String oldAlgorithm = getAlgorithm(oldEntry.checksumString);
+                final String algorithm = getAlgorithm(checksumString);
+                if (oldAlgorithm != null && !oldAlgorithm.equals(algorithm)) {
+                    newEntry.otherChecksumStrings.put(oldAlgorithm, oldEntry.checksumString);
+                }
+                if (algorithm != null) {
+                    newEntry.otherChecksumStrings.remove(algorithm);
+                }
+            }
+            markModified(key);
+            return newEntry;
+        });
+        return true;
+    }
+
+    /**
+     * Read the attributes of a given file which validate its index entry, e.g., before the content of the file is hashed.
+     *
+     * @param file the file
+     * @return the attributes of the file
+     * @throws IOException cannot read the attributes of the file
+     */
+    @NotNull
+    public static BasicFileAttributes readAttributes(@NotNull File file) throws IOException {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    }
+
+    private static boolean isSameVersion(@NotNull BasicFileAttributes attributes, @NotNull BasicFileAttributes otherAttributes) {
+        return attributes.size() == otherAttributes.size()
+                && attributes.lastModifiedTime().toMillis() == otherAttributes.lastModifiedTime().toMillis()
+                && Objects.equals(attributes.fileKey(), otherAttributes.fileKey());
+    }
+
+    /**
+     * Get a view of the index for a given credentials profile to access remote states of the media files in the profile.
+     *
+     * @param credentialsProfile the credentials profile or <code>null</code> for the default profile
+     * @return the view of the index for the profile
+     */
+    @NotNull
+    public Profile forProfile(@Nullable String credentialsProfile) {
+        return new Profile(credentialsProfile == null ? "" : credentialsProfile);
+    }
+
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String fileKey;
+        private final String checksumString;
+        private final Map<String, RemoteState> remoteStates = new ConcurrentHashMap<>();
+        private final Map<String, UploadSession> uploadSessions = new ConcurrentHashMap<>();
+        private final Map<String, String> otherChecksumStrings = new ConcurrentHashMap<>();
+        private volatile long lastSeen;
+
+        private Entry(long size, long lastModified, @NotNull String fileKey, @Nullable String checksumString, long lastSeen) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.checksumString = checksumString;
+            this.lastSeen = lastSeen;
+        }
+
+        private boolean isMatching(@NotNull BasicFileAttributes basicFileAttributes) {
+            return size == basicFileAttributes.size() && lastModified == basicFileAttributes.lastModifiedTime().toMillis()
+                    && fileKey.equals(Objects.toString(basicFileAttributes.fileKey(), ""));
+        }
+
+        private boolean isMatching(@NotNull Entry entry) {
+            return size == entry.size && lastModified == entry.lastModified && fileKey.equals(entry.fileKey);
+        }
+    }
+
+    private static class UploadSession {
+        private final String uploadUrl;
+        private final long startTime;
+
+        private UploadSession(@NotNull String uploadUrl, long startTime) {
+            this.uploadUrl = uploadUrl;
+            this.startTime = startTime;
+        }
+    }
+
+    /**
+     * A state of a media file in a credentials profile.
+     */
+    public static class RemoteState {
+        private final String mediaItemId;
+        private final String uploadToken;
+        private final long uploadTime;
+
+        private RemoteState(@Nullable String mediaItemId, @Nullable String uploadToken, long uploadTime) {
+            this.mediaItemId = mediaItemId;
+            this.uploadToken = uploadToken;
+            this.uploadTime = uploadTime;
+        }
+
+        /**
+         * Get an identifier of the media item created from the media file.
+         *
+         * @return the media item identifier or <code>null</code> if the media item has not been created yet
+         */
+        @Nullable
+        public String getMediaItemId() {
+            return mediaItemId;
+        }
+
+        /**
+         * Get an upload token of the uploaded content of the media file which has not been used to create a media item yet.
+         *
+         * @return the upload token or <code>null</code> if there is no unused upload token
+         */
+        @Nullable
+        public String getUploadToken() {
+            return uploadToken;
+        }
+
+        /**
+         * Get a time of the upload which resulted into the upload token.
+         *
+         * @return the upload time in milliseconds since the epoch
+         */
+        public long getUploadTime() {
+            return uploadTime;
+        }
+    }
+
+    /**
+     * A view of the index for a particular credentials profile.
+     */
+    public class Profile {
+        private final String credentialsProfile;
+
+        private Profile(@NotNull String credentialsProfile) {
+            this.credentialsProfile = credentialsProfile;
+        }
+
+        /**
+         * Get a remote state of a given media file if the file has not been changed since the state was put into the index.
+         *
+         * @param file the media file
+         * @return the remote state or <code>null</code> if not available or outdated
+         * @throws IOException cannot read the attributes of the file
+         */
+        @Nullable
+        public RemoteState getRemoteState(@NotNull File file) throws IOException {
+            final Entry entry = getValidEntry(file);
+            return entry == null ? null : entry.remoteStates.get(credentialsProfile);
+        }
+
+        /**
+         * Get an upload token of the uploaded content of a given media file which has not been used to create a media item yet.
+         *
+         * @param file the media file
+         * @return the upload token or <code>null</code> if there is no such token for the current version of the file or the token is too old
+         * @throws IOException cannot read the attributes of the file
+         */
+        @Nullable
+        public String getUploadToken(@NotNull File file) throws IOException {
+            final RemoteState remoteState = getRemoteState(file);
+            return remoteState == null || remoteState.uploadToken == null
+                    || remoteState.uploadTime + UPLOAD_TOKEN_TIME_TO_LIVE_MILLIS < System.currentTimeMillis()
+                    ? null : remoteState.uploadToken;
+        }
+
+        /**
+         * Provide the checksum strings of all indexed media files with the identifiers of their created media items to a given consumer.
+         *
+         * @param consumer the consumer of the checksum strings and the media item identifiers
+         */
+        public void forEachMediaItemId(@NotNull BiConsumer<String, String> consumer) {
+            for (Entry entry : entries.values()) {
+                final RemoteState remoteState = entry.remoteStates.get(credentialsProfile);
+                if (entry.checksumString != null && remoteState != null && remoteState.mediaItemId != null) {
+                    consumer.accept(entry.checksumString, remoteState.mediaItemId);
+                }
+            }
+        }
+
+        /**
+         * Get an upload URL of an unfinished resumable upload session of a given media file.
+         *
+         * @param file the media file
+         * @return the upload URL or <code>null</code> if there is no unfinished session for the current version of the file or the session is too old
+         * @throws IOException cannot read the attributes of the file
+         */
+        @Nullable
+        public String getUploadUrl(@NotNull File file) throws IOException {
+            final Entry entry = getValidEntry(file);
+            final UploadSession uploadSession = entry == null ? null : entry.uploadSessions.get(credentialsProfile);
+            return uploadSession == null || uploadSession.startTime + UPLOAD_SESSION_TIME_TO_LIVE_MILLIS < System.currentTimeMillis()
+                    ? null : uploadSession.uploadUrl;
+        }
+
+        /**
+         * Put an upload URL of a started resumable upload session of a given media file.
+         *
+         * @param file      the media file
+         * @param uploadUrl the upload URL
+         * @throws IOException cannot read the attributes of the file
+         */
+        public void putUploadUrl(@NotNull File file, @NotNull String uploadUrl) throws IOException {
+            getOrCreateValidEntry(file).uploadSessions.put(credentialsProfile, new UploadSession(uploadUrl, System.currentTimeMillis()));
+            markModified(getKey(file));
+        }
+
+        /**
+         * Remove an upload URL of a resumable upload session of a given media file, e.g., if the session cannot be resumed.
+         *
+         * @param file the media file
+         */
+        public void removeUploadUrl(@NotNull File file) {
+            final String key = getKey(file);
+            final Entry entry = entries.get(key);
+            if (entry != null && entry.uploadSessions.remove(credentialsProfile) != null) {
+                markModified(key);
+            }
+        }
+
+        /**
+         * Put an upload token of a given media file, i.e., the content of the file has been uploaded but its media item has not been created yet.
+         * The upload session of the file, if any, is finished.
+         *
+         * @param file        the media file
+         * @param uploadToken the upload token
+         * @throws IOException cannot read the attributes of the file
+         */
+        public void putUploadToken(@NotNull File file, @NotNull String uploadToken) throws IOException {
+            putRemoteState(file, new RemoteState(null, uploadToken, System.currentTimeMillis()));
+        }
+
+        /**
+         * Put an identifier of the media item created from a given media file (an unused upload token of the file, if any, is discarded).
+         *
+         * @param file        the media file
+         * @param mediaItemId the media item identifier
+         * @throws IOException cannot read the attributes of the file
+         */
+        public void putMediaItemId(@NotNull File file, @NotNull String mediaItemId) throws IOException {
+            putRemoteState(file, new RemoteState(mediaItemId, null, 0));
+        }
+
+        private void putRemoteState(@NotNull File file, @NotNull RemoteState remoteState) throws IOException {
+            final Entry entry = getOrCreateValidEntry(file);
+            entry.remoteStates.put(credentialsProfile, remoteState);
+            entry.uploadSessions.remove(credentialsProfile);
+            markModified(getKey(file));
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package io.gitlab.rychly.gphotos_uploader.logger;
+
+import io.gitlab.rychly.gphotos_uploader.i18n.Messages;
+import io.gitlab.rychly.gphotos_uploader.i18n.ResourceBundleFactory;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * A handler which publishes log records to a target handler asynchronously by a background flusher thread,
+ * so the logging threads do not wait for the console or file I/O of the target handler.
+ * <p>
+ * The records are passed to the flusher by a bounded ring buffer. If the buffer is full, a record either waits for a free slot,
+ * or it is dropped (just the records less severe than warnings are dropped, and the count of the dropped records is logged later).
+ * The target handler is flushed by the flusher whenever the buffer is drained.
+ */
+public class AsyncHandler extends Handler {
+    /**
+     * Default capacity of the buffer of log records.
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private static final long POLL_TIMEOUT_MILLIS = 1000;
+    private static final long FLUSH_TIMEOUT_MILLIS = 5000;
+
+    private final Handler target;
+    private final OverflowPolicy overflowPolicy;
+    private final BlockingQueue<LogRecord> buffer;
+    private final Thread flusher;
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final Object processedLock = new Object();
+    private long enqueuedRecords = 0;
+    private long processedRecords = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * Create a new asynchronous handler publishing to a given target handler with a given capacity of the buffer and a given overflow policy,
+     * and start its flusher thread.
+     *
+     * @param target         the target handler
+     * @param capacity       the capacity of the buffer of log records
+     * @param overflowPolicy the policy of logging into the full buffer
+     */
+    public AsyncHandler(@NotNull Handler target, int capacity, @NotNull OverflowPolicy overflowPolicy) {
+        this.target = target;
+        this.overflowPolicy = overflowPolicy;
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        super.setLevel(target.getLevel());
+        this.flusher = new Thread(this::flushRecords, AsyncHandler.class.getSimpleName() + "-" + target.getClass().getSimpleName());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Get the target handler.
+     *
+     * @return the target handler
+     */
+    @NotNull
+    public Handler getTarget() {
+        return target;
+    }
+
+    /**
+     * Get the count of log records dropped because of the full buffer.
+     *
+     * @return the count of dropped records
+     */
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        // the caller is inferred from the stack trace of the logging thread, so it must be inferred before the record is passed
+        record.getSourceClassName();
+        synchronized (processedLock) {
+            enqueuedRecords++;
+        }
+        boolean enqueued = buffer.offer(record);
+        if (!enqueued && (overflowPolicy == OverflowPolicy.BLOCK || record.getLevel().intValue() >= Level.WARNING.intValue())) {
+            try {
+                buffer.put(record);
+                enqueued = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!enqueued) {
+            droppedRecords.incrementAndGet();
+            markProcessed();
+        }
+    }
+
+    private void flushRecords() {
+        long reportedDroppedRecords = 0;
+        while (!closed || !buffer.isEmpty()) {
+            final LogRecord record;
+            try {
+                record = buffer.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (record != null) {
+                publishToTarget(record);
+                markProcessed();
+            }
+            final long currentDroppedRecords = droppedRecords.get();
+            if (currentDroppedRecords > reportedDroppedRecords && buffer.isEmpty()) {
+                publishToTarget(new LogRecord(Level.WARNING,
+                        ResourceBundleFactory.msg(Messages.LOG_RECORDS_DROPPED_1, currentDroppedRecords - reportedDroppedRecords)));
+                reportedDroppedRecords = currentDroppedRecords;
+            }
+            if (buffer.isEmpty()) {
+                target.flush();
+            }
+        }
+        target.flush();
+    }
+
+    private void publishToTarget(@NotNull LogRecord record) {
+        try {
+            target.publish(record);
+        } catch (RuntimeException e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    private void markProcessed() {
+        synchronized (processedLock) {
+            processedRecords++;
+            processedLock.notifyAll();
+        }
+    }
+
+    /**
+     * Wait until all the log records published so far are published to the target handler (or for a few seconds at most) and flush the target handler.
+     */
+    @Override
+    public void flush() {
+        final long deadlineMillis = System.currentTimeMillis() + FLUSH_TIMEOUT_MILLIS;
+        synchronized (processedLock) {
+            final long recordsToProcess = enqueuedRecords;
+            long remainingMillis;
+            while (processedRecords < recordsToProcess && flusher.isAlive()
+                    && (remainingMillis = deadlineMillis - System.currentTimeMillis()) > 0) {
+                try {
+                    processedLock.wait(remainingMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        target.flush();
+    }
+
+    /**
+     * Publish the remaining log records, stop the flusher thread, and close the target handler.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flusher.interrupt();
+        try {
+            flusher.join(FLUSH_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        target.close();
+    }
+
+    @Override
+    public synchronized void setLevel(Level newLevel) {
+        super.setLevel(newLevel);
+        target.setLevel(newLevel);
+    }
+
+    @Override
+    public synchronized void setEncoding(String encoding) throws UnsupportedEncodingException {
+        super.setEncoding(encoding);
+        target.setEncoding(encoding);
+    }
+
+    /**
+     * Policies of logging into the full buffer.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait for a free slot in the buffer.
+         */
+        BLOCK,
+        /**
+         * Drop the records less severe than warnings (the warnings and severe records wait for a free slot).
+         */
+        DROP
+    }
+}
@@ -1,5 +1,6 @@
 package io.gitlab.rychly.gphotos_uploader.logger;
 
+import io.gitlab.rychly.gphotos_uploader.i18n.ResourceBundleFactory;
 import org.apache.commons.lang3.builder.RecursiveToStringStyle;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.jetbrains.annotations.Contract;
@@ -21,6 +22,19 @@ public final class LoggerFactory {
     public static final String HANDLER_ENCODING = "UTF-8";
     public static final DateFormat TEMP_LOG_FILE_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
     private static Logger logger = TOP_LOGGER;
+    private static int asyncCapacity = 0;
+    private static AsyncHandler.OverflowPolicy asyncOverflowPolicy = AsyncHandler.OverflowPolicy.DROP;
+
+    /**
+     * Set the asynchronous publishing of log records by the handlers added later (see {@link AsyncHandler}).
+     *
+     * @param capacity       the capacity of the buffer of log records of each handler or zero for the synchronous publishing
+     * @param overflowPolicy the policy of logging into the full buffer
+     */
+    public static void setAsyncHandlers(int capacity, AsyncHandler.OverflowPolicy overflowPolicy) {
+        LoggerFactory.asyncCapacity = capacity;
+        LoggerFactory.asyncOverflowPolicy = overflowPolicy;
+    }
 
     /**
      * Create a new top logger with a given name and ALL log messages level.
@@ -56,13 +70,35 @@ public final class LoggerFactory {
             // the new logger is below another logger managed by the factory
             newLogger = Logger.getLogger(logger.getName() + "." + loggerName);
         }
-        // the logger will accept messages of all log levels
+        // the logger will accept messages of all log levels published by its handlers or the handlers of its parents
         newLogger.setLevel(Level.ALL);
         // it will be the new bottom logger
         logger = newLogger;
+        updateLoggerLevel();
         return newLogger;
     }
 
+    /**
+     * Set the level of the bottom logger to the lowest level of the handlers of the bottom logger and its parents,
+     * so the messages not published by any handler are rejected by the logger before their formatting.
+     */
+    private static void updateLoggerLevel() {
+        if (logger == TOP_LOGGER) {
+            return;
+        }
+        Level lowestLevel = null;
+        for (Logger handlersLogger = logger; handlersLogger != null;
+             handlersLogger = handlersLogger.getUseParentHandlers() ? handlersLogger.getParent() : null) {
+            for (Handler handler : handlersLogger.getHandlers()) {
+                final Level level = handler.getLevel();
+                if (lowestLevel == null || level.intValue() < lowestLevel.intValue()) {
+                    lowestLevel = level;
+                }
+            }
+        }
+        logger.setLevel(lowestLevel == null ? Level.ALL : lowestLevel);
+    }
+
     /**
      * Get the getLogger.
      *
@@ -73,15 +109,54 @@ public final class LoggerFactory {
         return logger;
     }
 
+    /**
+     * Check whether a message of a given level would be published by any handler of the bottom logger or its parents.
+     * It should guard the logging of messages with arguments expensive to compute.
+     *
+     * @param level the log message level
+     * @return <code>true</code> iff the message would be published
+     */
+    public static boolean isLoggable(Level level) {
+        return logger.isLoggable(level);
+    }
+
+    /**
+     * Log a message of a given key and arguments with a given level by the bottom logger,
+     * the message is looked up and formatted only if it would be published (see {@link #isLoggable(Level)}).
+     *
+     * @param level the log message level
+     * @param key   the message key
+     * @param args  the message arguments
+     */
+    public static void log(Level level, String key, Object... args) {
+        if (logger.isLoggable(level)) {
+            logger.log(level, ResourceBundleFactory.msg(key, args));
+        }
+    }
+
+    /**
+     * Set a given log messages level to a given handler of the bottom logger (or its parents).
+     *
+     * @param handler the handler
+     * @param level   the log message level to set to the handler
+     */
+    public static void setHandlerLevel(Handler handler, Level level) {
+        handler.setLevel(level);
+        updateLoggerLevel();
+    }
+
     /**
      * Add a given log handler to the current bottom logger and set a given log messages level to the handler.
+     * The handler is wrapped into an asynchronous handler if set by {@link #setAsyncHandlers(int, AsyncHandler.OverflowPolicy)}.
      *
      * @param handler the handler to add
      * @param level   the log message level to set to the handler
-     * @return the added handler
+     * @return the added handler (or its asynchronous wrapper)
      */
-    @Contract("_, _ -> param1")
     public static Handler addHandler(Handler handler, Level level) {
+        if (asyncCapacity > 0) {
+            handler = new AsyncHandler(handler, asyncCapacity, asyncOverflowPolicy);
+        }
         if (level != null) {
             handler.setLevel(level);
         }
@@ -91,9 +166,22 @@ public final class LoggerFactory {
             logger.log(Level.WARNING, "Cannot set UTF-8 encoding on the handler.", e);
         }
         logger.addHandler(handler);
+        updateLoggerLevel();
         return handler;
     }
 
+    /**
+     * Flush all the handlers of the bottom logger and its parents (i.e., wait for the asynchronous handlers to publish their log records).
+     */
+    public static void flushHandlers() {
+        for (Logger handlersLogger = logger; handlersLogger != null;
+             handlersLogger = handlersLogger.getUseParentHandlers() ? handlersLogger.getParent() : null) {
+            for (Handler handler : handlersLogger.getHandlers()) {
+                handler.flush();
+            }
+        }
+    }
+
     /**
      * Create a new ANSI console handler with the default log messages level and add it to the bottom logger.
      *
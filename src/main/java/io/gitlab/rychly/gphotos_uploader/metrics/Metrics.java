@@ -0,0 +1,433 @@
+package io.gitlab.rychly.gphotos_uploader.metrics;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A registry of metrics of a run, i.e., counters, histograms, and gauges identified by their names and labels,
+ * which can be written as a JSON report or in the Prometheus text exposition format.
+ * <p>
+ * The metrics are registered once (usually in static fields of the instrumented classes) and updated without locking.
+ * The histograms have fixed buckets, so their percentiles are estimated by the interpolation within the buckets.
+ */
+public final class Metrics {
+    /**
+     * Prefix of the names of all the metrics.
+     */
+    public static final String PREFIX = "gphotos_uploader_";
+
+    /**
+     * Bucket bounds of durations in seconds (from a millisecond to a few minutes).
+     */
+    public static final double[] SECONDS_BUCKETS = exponentialBuckets(0.001, 2, 18);
+
+    /**
+     * Bucket bounds of counts (from one to a million).
+     */
+    public static final double[] COUNT_BUCKETS = exponentialBuckets(1, 2, 21);
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final ConcurrentMap<String, Metric> METRICS = new ConcurrentHashMap<>();
+    private static final long START_NANOS = System.nanoTime();
+    private static final Instant START_TIME = Instant.now();
+
+    private Metrics() {
+    }
+
+    /**
+     * Compute exponentially growing bucket bounds.
+     *
+     * @param start  the first bound
+     * @param factor the factor of the following bounds
+     * @param count  the number of bounds
+     * @return the bounds
+     */
+    @NotNull
+    public static double[] exponentialBuckets(double start, double factor, int count) {
+        final double[] bounds = new double[count];
+        for (int i = 0; i < count; i++) {
+            bounds[i] = start * Math.pow(factor, i);
+        }
+        return bounds;
+    }
+
+    /**
+     * Get the number of seconds since the start of the run.
+     *
+     * @return the elapsed seconds
+     */
+    public static double getElapsedSeconds() {
+        return (System.nanoTime() - START_NANOS) / 1e9;
+    }
+
+    /**
+     * Get or register a counter of a given name and labels.
+     *
+     * @param name   the name of the counter (without the prefix)
+     * @param help   the description of the counter
+     * @param labels the pairs of label names and values
+     * @return the counter
+     */
+    @NotNull
+    public static Counter counter(@NotNull String name, @NotNull String help, @NotNull String... labels) {
+        return (Counter) METRICS.computeIfAbsent(seriesId(name, labels), key -> new Counter(name, help, labels));
+    }
+
+    /**
+     * Get or register a histogram of a given name, bucket bounds, and labels.
+     *
+     * @param name    the name of the histogram (without the prefix)
+     * @param help    the description of the histogram
+     * @param buckets the upper bounds of the buckets in the ascending order
+     * @param labels  the pairs of label names and values
+     * @return the histogram
+     */
+    @NotNull
+    public static Histogram histogram(@NotNull String name, @NotNull String help, @NotNull double[] buckets, @NotNull String... labels) {
+        return (Histogram) METRICS.computeIfAbsent(seriesId(name, labels), key -> new Histogram(name, help, buckets, labels));
+    }
+
+    /**
+     * Register a gauge of a given name and labels which value is provided by a given supplier when the metrics are written.
+     *
+     * @param name          the name of the gauge (without the prefix)
+     * @param help          the description of the gauge
+     * @param valueSupplier the supplier of the value
+     * @param labels        the pairs of label names and values
+     */
+    public static void gauge(@NotNull String name, @NotNull String help, @NotNull DoubleSupplier valueSupplier, @NotNull String... labels) {
+        METRICS.putIfAbsent(seriesId(name, labels), new Gauge(name, help, valueSupplier, labels));
+    }
+
+    /**
+     * Register a gauge of the average rate per second of a given counter since the start of the run.
+     *
+     * @param name    the name of the gauge (without the prefix)
+     * @param help    the description of the gauge
+     * @param counter the counter
+     */
+    public static void rate(@NotNull String name, @NotNull String help, @NotNull Counter counter) {
+        gauge(name, help, () -> counter.get() / Math.max(getElapsedSeconds(), 1e-3), counter.labels);
+    }
+
+    @NotNull
+    private static String seriesId(@NotNull String name, @NotNull String[] labels) {
+        return PREFIX + name + formatLabels(labels, null);
+    }
+
+    @NotNull
+    private static String formatLabels(@NotNull String[] labels, String extraLabel) {
+        if (labels.length == 0 && extraLabel == null) {
+            return "";
+        }
+        final StringBuilder stringBuilder = new StringBuilder("{");
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            stringBuilder.append(i == 0 ? "" : ",").append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        if (extraLabel != null) {
+            stringBuilder.append(labels.length == 0 ? "" : ",").append(extraLabel);
+        }
+        return stringBuilder.append('}').toString();
+    }
+
+    @NotNull
+    private static String escape(@NotNull String string) {
+        return string.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Format a given string as a JSON string literal, i.e., quote it and escape its quotes, backslashes, and control characters.
+     *
+     * @param string the string
+     * @return the JSON string literal or <code>null</code> (the JSON literal) if the string is <code>null</code>
+     */
+    @NotNull
+    public static String jsonString(@Nullable String string) {
+        if (string == null) {
+            return "null";
+        }
+        final StringBuilder stringBuilder = new StringBuilder(string.length() + 2).append('"');
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    stringBuilder.append('\\').append(c);
+                    break;
+                case '\n':
+                    stringBuilder.append("\\n");
+                    break;
+                case '\r':
+                    stringBuilder.append("\\r");
+                    break;
+                case '\t':
+                    stringBuilder.append("\\t");
+                    break;
+                default:
+                    if (c < ' ') {
+                        stringBuilder.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xf]);
+                    } else {
+                        stringBuilder.append(c);
+                    }
+            }
+        }
+        return stringBuilder.append('"').toString();
+    }
+
+    @NotNull
+    private static String formatNumber(double value) {
+        return Double.isNaN(value) ? "NaN"
+                : Double.isInfinite(value) ? (value > 0 ? "+Inf" : "-Inf")
+                : value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value)
+                : Double.toString(value);
+    }
+
+    @NotNull
+    private static List<Metric> sortedMetrics() {
+        final List<Metric> metrics = new ArrayList<>(METRICS.values());
+        metrics.sort(Comparator.comparing((Metric metric) -> metric.name).thenComparing(metric -> formatLabels(metric.labels, null)));
+        return metrics;
+    }
+
+    /**
+     * Write all the metrics in the Prometheus text exposition format.
+     *
+     * @param writer the writer
+     * @throws IOException cannot write the metrics
+     */
+    public static void writePrometheus(@NotNull Writer writer) throws IOException {
+        String lastName = null;
+        for (Metric metric : sortedMetrics()) {
+            final String name = PREFIX + metric.name;
+            if (!name.equals(lastName)) {
+                writer.write("# HELP " + name + " " + metric.help + "\n");
+                writer.write("# TYPE " + name + " " + metric.type + "\n");
+                lastName = name;
+            }
+            metric.writePrometheus(name, writer);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Write all the metrics as a JSON report of the run, including the estimated percentiles of the histograms.
+     *
+     * @param writer the writer
+     * @throws IOException cannot write the report
+     */
+    public static void writeJsonReport(@NotNull Writer writer) throws IOException {
+        writer.write("{\n  \"startTime\": \"" + START_TIME + "\",\n");
+        writer.write("  \"elapsedSeconds\": " + formatNumber(getElapsedSeconds()) + ",\n");
+        writer.write("  \"metrics\": [");
+        boolean isFirst = true;
+        for (Metric metric : sortedMetrics()) {
+            writer.write(isFirst ? "\n    {" : ",\n    {");
+            isFirst = false;
+            writer.write("\"name\": " + jsonString(PREFIX + metric.name) + ", \"type\": \"" + metric.type + "\", \"labels\": {");
+            for (int i = 0; i + 1 < metric.labels.length; i += 2) {
+                writer.write((i == 0 ? "" : ", ") + jsonString(metric.labels[i]) + ": " + jsonString(metric.labels[i + 1]));
+            }
+            writer.write("}, ");
+            metric.writeJsonValues(writer);
+            writer.write("}");
+        }
+        writer.write("\n  ]\n}\n");
+        writer.flush();
+    }
+
+    @NotNull
+    private static String jsonNumber(double value) {
+        // JSON has no representation of NaN and infinities
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null" : formatNumber(value);
+    }
+
+    private abstract static class Metric {
+        final String name;
+        final String help;
+        final String type;
+        final String[] labels;
+
+        private Metric(@NotNull String name, @NotNull String help, @NotNull String type, @NotNull String[] labels) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labels = labels.clone();
+        }
+
+        abstract void writePrometheus(@NotNull String prefixedName, @NotNull Writer writer) throws IOException;
+
+        abstract void writeJsonValues(@NotNull Writer writer) throws IOException;
+    }
+
+    /**
+     * A monotonically increasing counter.
+     */
+    public static class Counter extends Metric {
+        private final LongAdder value = new LongAdder();
+
+        private Counter(@NotNull String name, @NotNull String help, @NotNull String[] labels) {
+            super(name, help, "counter", labels);
+        }
+
+        /**
+         * Increment the counter by one.
+         */
+        public void increment() {
+            value.increment();
+        }
+
+        /**
+         * Increment the counter by a given amount.
+         *
+         * @param amount the non-negative amount
+         */
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        /**
+         * Get the value of the counter.
+         *
+         * @return the value
+         */
+        public long get() {
+            return value.sum();
+        }
+
+        @Override
+        void writePrometheus(@NotNull String prefixedName, @NotNull Writer writer) throws IOException {
+            writer.write(prefixedName + formatLabels(labels, null) + " " + get() + "\n");
+        }
+
+        @Override
+        void writeJsonValues(@NotNull Writer writer) throws IOException {
+            writer.write("\"value\": " + get());
+        }
+    }
+
+    /**
+     * A histogram of observed values in fixed buckets.
+     */
+    public static class Histogram extends Metric {
+        private final double[] buckets;
+        private final AtomicLongArray bucketCounts;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+        // the bits of non-negative doubles are ordered as the doubles
+        private final LongAccumulator maxBits = new LongAccumulator(Math::max, 0);
+
+        private Histogram(@NotNull String name, @NotNull String help, @NotNull double[] buckets, @NotNull String[] labels) {
+            super(name, help, "histogram", labels);
+            this.buckets = buckets.clone();
+            this.bucketCounts = new AtomicLongArray(buckets.length + 1);
+        }
+
+        /**
+         * Observe a given value.
+         *
+         * @param value the non-negative value
+         */
+        public void observe(double value) {
+            int bucket = 0;
+            while (bucket < buckets.length && value > buckets[bucket]) {
+                bucket++;
+            }
+            bucketCounts.incrementAndGet(bucket);
+            count.increment();
+            sum.add(value);
+            maxBits.accumulate(Double.doubleToLongBits(Math.max(0, value)));
+        }
+
+        /**
+         * Observe a duration since a given start time.
+         *
+         * @param startNanos the start time by {@link System#nanoTime()}
+         */
+        public void observeNanosSince(long startNanos) {
+            observe((System.nanoTime() - startNanos) / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        /**
+         * Estimate a given percentile of the observed values by the linear interpolation within its bucket.
+         *
+         * @param quantile the quantile of the percentile (between 0 and 1)
+         * @return the estimated percentile or <code>NaN</code> if there are no observed values
+         */
+        public double percentile(double quantile) {
+            final long totalCount = count.sum();
+            if (totalCount == 0) {
+                return Double.NaN;
+            }
+            final double max = Double.longBitsToDouble(maxBits.get());
+            final double rank = quantile * totalCount;
+            long cumulativeCount = 0;
+            for (int bucket = 0; bucket <= buckets.length; bucket++) {
+                final long bucketCount = bucketCounts.get(bucket);
+                if (bucketCount > 0 && cumulativeCount + bucketCount >= rank) {
+                    final double lowerBound = bucket == 0 ? 0 : buckets[bucket - 1];
+                    final double upperBound = bucket == buckets.length ? max : Math.min(buckets[bucket], max);
+                    return lowerBound + (upperBound - lowerBound) * Math.max(0, rank - cumulativeCount) / bucketCount;
+                }
+                cumulativeCount += bucketCount;
+            }
+            return max;
+        }
+
+        @Override
+        void writePrometheus(@NotNull String prefixedName, @NotNull Writer writer) throws IOException {
+            long cumulativeCount = 0;
+            for (int bucket = 0; bucket <= buckets.length; bucket++) {
+                cumulativeCount += bucketCounts.get(bucket);
+                final String bound = bucket == buckets.length ? "+Inf" : formatNumber(buckets[bucket]);
+                writer.write(prefixedName + "_bucket" + formatLabels(labels, "le=\"" + bound + "\"") + " " + cumulativeCount + "\n");
+            }
+            writer.write(prefixedName + "_sum" + formatLabels(labels, null) + " " + formatNumber(sum.sum()) + "\n");
+            writer.write(prefixedName + "_count" + formatLabels(labels, null) + " " + count.sum() + "\n");
+        }
+
+        @Override
+        void writeJsonValues(@NotNull Writer writer) throws IOException {
+            final long totalCount = count.sum();
+            writer.write("\"count\": " + totalCount + ", \"sum\": " + jsonNumber(sum.sum())
+                    + ", \"max\": " + (totalCount == 0 ? "null" : jsonNumber(Double.longBitsToDouble(maxBits.get()))));
+            for (double quantile : PERCENTILES) {
+                writer.write(", \"p" + formatNumber(quantile * 100) + "\": " + jsonNumber(percentile(quantile)));
+            }
+        }
+    }
+
+    private static class Gauge extends Metric {
+        private final DoubleSupplier valueSupplier;
+
+        private Gauge(@NotNull String name, @NotNull String help, @NotNull DoubleSupplier valueSupplier, @NotNull String[] labels) {
+            super(name, help, "gauge", labels);
+            this.valueSupplier = valueSupplier;
+        }
+
+        @Override
+        void writePrometheus(@NotNull String prefixedName, @NotNull Writer writer) throws IOException {
+            writer.write(prefixedName + formatLabels(labels, null) + " " + formatNumber(valueSupplier.getAsDouble()) + "\n");
+        }
+
+        @Override
+        void writeJsonValues(@NotNull Writer writer) throws IOException {
+            writer.write("\"value\": " + jsonNumber(valueSupplier.getAsDouble()));
+        }
+    }
+}
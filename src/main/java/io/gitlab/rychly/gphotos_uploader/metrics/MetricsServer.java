@@ -0,0 +1,76 @@
+package io.gitlab.rychly.gphotos_uploader.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A local HTTP endpoint serving the metrics in the Prometheus text exposition format at the {@link #PATH} path of the loopback address.
+ * The endpoint must be closed to let the application exit.
+ */
+public class MetricsServer implements AutoCloseable {
+    /**
+     * Path of the metrics endpoint.
+     */
+    public static final String PATH = "/metrics";
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final int HTTP_OK = 200;
+
+    private final HttpServer httpServer;
+
+    /**
+     * Start a new endpoint on a given port of the loopback address.
+     *
+     * @param port the port (or zero for any free port)
+     * @throws IOException cannot bind the port
+     */
+    public MetricsServer(int port) throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext(PATH, this::handle);
+        // the requests are handled by the dispatcher thread of the server (which must be stopped by closing the endpoint)
+        httpServer.setExecutor(null);
+        httpServer.start();
+    }
+
+    /**
+     * Get the URL of the endpoint.
+     *
+     * @return the URL
+     */
+    @NotNull
+    public String getUrl() {
+        final InetSocketAddress address = httpServer.getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + PATH;
+    }
+
+    private void handle(@NotNull HttpExchange httpExchange) throws IOException {
+        try {
+            final StringWriter stringWriter = new StringWriter();
+            Metrics.writePrometheus(stringWriter);
+            final byte[] body = stringWriter.toString().getBytes(StandardCharsets.UTF_8);
+            httpExchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            httpExchange.sendResponseHeaders(HTTP_OK, body.length);
+            try (final OutputStream outputStream = httpExchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        } finally {
+            httpExchange.close();
+        }
+    }
+
+    /**
+     * Stop the endpoint.
+     */
+    @Override
+    public void close() {
+        httpServer.stop(0);
+    }
+}
@@ -0,0 +1,366 @@
+package io.gitlab.rychly.gphotos_uploader.sync;
+
+import com.google.photos.types.proto.MediaItem;
+import io.gitlab.rychly.gphotos_uploader.gphotos.MediaFile;
+import io.gitlab.rychly.gphotos_uploader.gphotos.MediaItemDescription;
+import io.gitlab.rychly.gphotos_uploader.i18n.Messages;
+import io.gitlab.rychly.gphotos_uploader.i18n.ResourceBundleFactory;
+import io.gitlab.rychly.gphotos_uploader.logger.LoggerFactory;
+import io.gitlab.rychly.gphotos_uploader.metrics.Metrics;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A verifier of the content checksums of media files matching the media items of albums by the checksums in the descriptions of the media items.
+ * The media files are verified concurrently by a pool of threads, while the media files on the same storage device are read
+ * by a limited number of the threads at once (e.g., one for a rotational disk, more to keep the queue of an SSD busy).
+ * The media files not matching their media items are logged as soon as they are found and collected into a report of the whole run.
+ */
+public class ChecksumVerifier implements AutoCloseable {
+    /**
+     * Default maximal number of media files read concurrently on each storage device.
+     */
+    public static final int DEFAULT_DEVICE_CONCURRENCY = 4;
+
+    private static final Metrics.Counter MATCHING_VERIFICATIONS = Metrics.counter("verified_media_items_total",
+            "Media items verified by the checksums of their media files by the results of the verification.", "result", "matching");
+    private static final Metrics.Counter MISMATCHING_VERIFICATIONS = Metrics.counter("verified_media_items_total",
+            "Media items verified by the checksums of their media files by the results of the verification.", "result", "mismatching");
+    private static final Metrics.Counter FAILED_VERIFICATIONS = Metrics.counter("verified_media_items_total",
+            "Media items verified by the checksums of their media files by the results of the verification.", "result", "failed");
+
+    private final ExecutorService executorService;
+    private final int deviceConcurrency;
+    private final ConcurrentMap<Object, Semaphore> deviceSemaphores = new ConcurrentHashMap<>();
+    private final ConcurrentMap<File, Semaphore> directorySemaphores = new ConcurrentHashMap<>();
+    private final ThreadLocal<MediaItemDescription> parsedDescriptions = ThreadLocal.withInitial(MediaItemDescription::new);
+    private final Queue<Mismatch> mismatches = new ConcurrentLinkedQueue<>();
+    private final AtomicLong verifiedMediaItems = new AtomicLong();
+
+    /**
+     * Create a new verifier of a given number of threads and a given maximal number of media files read concurrently on each storage device.
+     *
+     * @param threads           the number of threads verifying the media files (zero to verify them by the threads waiting for the verification)
+     * @param deviceConcurrency the maximal number of media files read concurrently on each storage device
+     */
+    public ChecksumVerifier(int threads, int deviceConcurrency) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executorService = threads <= 0 ? null : Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, ChecksumVerifier.class.getSimpleName() + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.deviceConcurrency = Math.max(1, deviceConcurrency);
+    }
+
+    /**
+     * Start a new verification of media items of a single album.
+     *
+     * @return the verification
+     */
+    @NotNull
+    public Verification newVerification() {
+        return new Verification();
+    }
+
+    /**
+     * Get the number of media items verified so far.
+     *
+     * @return the number of verified media items
+     */
+    public long getVerifiedMediaItems() {
+        return verifiedMediaItems.get();
+    }
+
+    /**
+     * Get the media files not matching their media items (or failed to verify) so far.
+     *
+     * @return the list of the mismatches ordered by the paths of the media files
+     */
+    @NotNull
+    public List<Mismatch> getMismatches() {
+        final List<Mismatch> sortedMismatches = new ArrayList<>(mismatches);
+        sortedMismatches.sort(Comparator.comparing(Mismatch::getPath));
+        return sortedMismatches;
+    }
+
+    /**
+     * Write a JSON report of the media files not matching their media items (or failed to verify) so far.
+     *
+     * @param writer the writer of the report
+     * @throws IOException cannot write the report
+     */
+    public void writeJsonReport(@NotNull Writer writer) throws IOException {
+        final List<Mismatch> sortedMismatches = getMismatches();
+        writer.write("{\n  \"verifiedMediaItems\": " + getVerifiedMediaItems() + ",\n");
+        writer.write("  \"mismatches\": [");
+        boolean isFirst = true;
+        for (Mismatch mismatch : sortedMismatches) {
+            writer.write(isFirst ? "\n    {" : ",\n    {");
+            isFirst = false;
+            writer.write("\"type\": \"" + mismatch.type + "\", \"path\": " + Metrics.jsonString(mismatch.path)
+                    + ", \"mediaItemId\": " + Metrics.jsonString(mismatch.mediaItemId) + ", \"productUrl\": " + Metrics.jsonString(mismatch.productUrl)
+                    + ", \"expectedChecksum\": " + Metrics.jsonString(mismatch.expectedChecksumString)
+                    + ", \"actualChecksum\": " + Metrics.jsonString(mismatch.actualChecksumString)
+                    + ", \"error\": " + Metrics.jsonString(mismatch.error) + "}");
+        }
+        writer.write("\n  ]\n}\n");
+        writer.flush();
+    }
+
+    /**
+     * Get the semaphore limiting the reading of the storage device of a given media file.
+     * The devices are resolved once per directory, the directories of unknown devices are limited separately.
+     */
+    @NotNull
+    private Semaphore getDeviceSemaphore(@NotNull MediaFile mediaFile) {
+        final File directory = mediaFile.getAbsoluteFile().getParentFile();
+        return directorySemaphores.computeIfAbsent(directory, absoluteDirectory -> {
+            Object device;
+            try {
+                device = Files.getFileStore(absoluteDirectory.toPath());
+            } catch (IOException e) {
+                device = absoluteDirectory;
+            }
+            return deviceSemaphores.computeIfAbsent(device, key -> new Semaphore(deviceConcurrency));
+        });
+    }
+
+    /**
+     * Verify a given media file by the checksum in the description of a given matching media item,
+     * a mismatch is logged and collected into the report at once.
+     *
+     * @return the mismatch or <code>null</code> if the media file is matching
+     */
+    @Nullable
+    private Mismatch verify(@NotNull MediaFile mediaFile, @NotNull MediaItem mediaItem) {
+        final Mismatch mismatch = verifyChecksum(mediaFile, mediaItem);
+        if (mismatch != null) {
+            mismatches.add(mismatch);
+            if (mismatch.type == Mismatch.Type.ERROR) {
+                LoggerFactory.getLogger().warning(
+                        ResourceBundleFactory.msg(Messages.CANNOT_VERIFY_MEDIA_FILE_2, mismatch.path, mismatch.error));
+            } else {
+                LoggerFactory.getLogger().warning(
+                        ResourceBundleFactory.msg(Messages.MATCHING_MEDIA_ITEM_ACTION_2, mismatch.path, mismatch.productUrl));
+            }
+        }
+        return mismatch;
+    }
+
+    @Nullable
+    private Mismatch verifyChecksum(@NotNull MediaFile mediaFile, @NotNull MediaItem mediaItem) {
+        final MediaItemDescription parsedDescription = parsedDescriptions.get().parse(mediaItem.getDescription());
+        final Semaphore deviceSemaphore = getDeviceSemaphore(mediaFile);
+        deviceSemaphore.acquireUninterruptibly();
+        try {
+            if (parsedDescription.isChecksumMatching(mediaFile)) {
+                MATCHING_VERIFICATIONS.increment();
+                return null;
+            }
+            MISMATCHING_VERIFICATIONS.increment();
+            // the actual checksum is reported only if it is available without another computation (i.e., of the current algorithm)
+            return new Mismatch(Mismatch.Type.MISMATCH, mediaFile, mediaItem, parsedDescription.getChecksumString(),
+                    mediaFile.hasContentChecksum() ? mediaFile.getContentChecksumString() : null, null);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            FAILED_VERIFICATIONS.increment();
+            return new Mismatch(Mismatch.Type.ERROR, mediaFile, mediaItem, parsedDescription.getChecksumString(), null, e.getMessage());
+        } finally {
+            deviceSemaphore.release();
+            verifiedMediaItems.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stop the threads of the verifier.
+     */
+    @Override
+    public void close() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * A verification of media items of a single album whose media files are verified in the background until the verification is completed.
+     */
+    public class Verification {
+        private final List<Future<Mismatch>> futureMismatches = new ArrayList<>();
+
+        private Verification() {
+        }
+
+        /**
+         * Submit a given media file to be verified by the checksum in the description of a given matching media item.
+         *
+         * @param mediaFile the media file
+         * @param mediaItem the media item
+         */
+        public void submit(@NotNull MediaFile mediaFile, @NotNull MediaItem mediaItem) {
+            final Callable<Mismatch> task = () -> verify(mediaFile, mediaItem);
+            if (executorService != null) {
+                futureMismatches.add(executorService.submit(task));
+            } else {
+                final FutureTask<Mismatch> futureTask = new FutureTask<>(task);
+                futureTask.run();
+                futureMismatches.add(futureTask);
+            }
+        }
+
+        /**
+         * Wait for all the submitted media files to be verified (those not matching their media items are logged and reported as they are found).
+         *
+         * @return the number of the media files not matching their media items (or failed to verify)
+         * @throws InterruptedException the calling thread has been interrupted (the remaining verifications are cancelled)
+         */
+        public int complete() throws InterruptedException {
+            int mismatchCount = 0;
+            try {
+                for (Future<Mismatch> futureMismatch : futureMismatches) {
+                    final Mismatch mismatch;
+                    try {
+                        mismatch = futureMismatch.get();
+                    } catch (ExecutionException e) {
+                        // the verification throws no checked exceptions
+                        if (e.getCause() instanceof Error) {
+                            throw (Error) e.getCause();
+                        }
+                        throw (RuntimeException) e.getCause();
+                    }
+                    if (mismatch != null) {
+                        mismatchCount++;
+                    }
+                }
+            } finally {
+                cancel();
+            }
+            return mismatchCount;
+        }
+
+        /**
+         * Cancel the verification of the submitted media files which have not been verified yet (those already found not matching stay reported).
+         */
+        public void cancel() {
+            futureMismatches.forEach(futureMismatch -> futureMismatch.cancel(true));
+            futureMismatches.clear();
+        }
+    }
+
+    /**
+     * A media file not matching the checksum in the description of its media item or failed to verify.
+     */
+    public static class Mismatch {
+        private final Type type;
+        private final String path;
+        private final String mediaItemId;
+        private final String productUrl;
+        private final String expectedChecksumString;
+        private final String actualChecksumString;
+        private final String error;
+
+        private Mismatch(@NotNull Type type, @NotNull MediaFile mediaFile, @NotNull MediaItem mediaItem,
+                         @Nullable String expectedChecksumString, @Nullable String actualChecksumString, @Nullable String error) {
+            this.type = type;
+            this.path = mediaFile.getAbsolutePath();
+            this.mediaItemId = mediaItem.getId();
+            this.productUrl = mediaItem.getProductUrl();
+            this.expectedChecksumString = expectedChecksumString;
+            this.actualChecksumString = actualChecksumString;
+            this.error = error;
+        }
+
+        /**
+         * Get the type of the mismatch.
+         *
+         * @return the type
+         */
+        @NotNull
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * Get the absolute path of the media file.
+         *
+         * @return the path
+         */
+        @NotNull
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Get the ID of the media item.
+         *
+         * @return the media item ID
+         */
+        @NotNull
+        public String getMediaItemId() {
+            return mediaItemId;
+        }
+
+        /**
+         * Get the URL of the media item in Google Photos.
+         *
+         * @return the product URL
+         */
+        @NotNull
+        public String getProductUrl() {
+            return productUrl;
+        }
+
+        /**
+         * Get the checksum string in the description of the media item.
+         *
+         * @return the expected checksum string or <code>null</code> if the description has no checksum string
+         */
+        @Nullable
+        public String getExpectedChecksumString() {
+            return expectedChecksumString;
+        }
+
+        /**
+         * Get the checksum string of the content of the media file by the current checksum algorithm.
+         *
+         * @return the actual checksum string or <code>null</code> if it has not been computed
+         */
+        @Nullable
+        public String getActualChecksumString() {
+            return actualChecksumString;
+        }
+
+        /**
+         * Get the error message of the failed verification.
+         *
+         * @return the error message or <code>null</code> if the verification has not failed
+         */
+        @Nullable
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Types of the mismatches.
+         */
+        public enum Type {
+            /**
+             * The content checksum of the media file differs from the checksum in the description (or there is no checksum in the description).
+             */
+            MISMATCH,
+            /**
+             * The media file cannot be read or hashed.
+             */
+            ERROR
+        }
+    }
+}
@@ -0,0 +1,546 @@
+package io.gitlab.rychly.gphotos_uploader.sync;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.photos.library.v1.PhotosLibraryClient;
+import com.google.photos.types.proto.Album;
+import com.google.photos.types.proto.MediaItem;
+import io.gitlab.rychly.gphotos_uploader.gphotos.AlbumCache;
+import io.gitlab.rychly.gphotos_uploader.gphotos.ChecksumIndex;
+import io.gitlab.rychly.gphotos_uploader.gphotos.GPhotos;
+import io.gitlab.rychly.gphotos_uploader.gphotos.MediaFile;
+import io.gitlab.rychly.gphotos_uploader.gphotos.MediaItemDescription;
+import io.gitlab.rychly.gphotos_uploader.i18n.Messages;
+import io.gitlab.rychly.gphotos_uploader.i18n.ResourceBundleFactory;
+import io.gitlab.rychly.gphotos_uploader.index.AlbumMediaItemIndex;
+import io.gitlab.rychly.gphotos_uploader.index.DirectorySnapshotIndex;
+import io.gitlab.rychly.gphotos_uploader.index.MediaFileIndex;
+import io.gitlab.rychly.gphotos_uploader.logger.LoggerFactory;
+import io.gitlab.rychly.gphotos_uploader.metrics.Metrics;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Synchronization of media directories into albums of a single credentials profile.
+ * The synchronization is a pipeline of stages: walking the directory trees, resolving the albums of the directories,
+ * comparing the media files with the media items of the albums, and uploading the missing media files.
+ */
+public class MediaDirectorySync {
+    private static final Metrics.Histogram ALBUM_MEDIA_ITEMS = Metrics.histogram("album_media_items",
+            "Media items of a synchronized album.", Metrics.COUNT_BUCKETS);
+    private static final Metrics.Counter MATCHING_MEDIA_ITEMS = Metrics.counter("media_items_total",
+            "Media items of synchronized albums and media files missing in the albums by their states.", "state", "matching");
+    private static final Metrics.Counter NON_MATCHING_MEDIA_ITEMS = Metrics.counter("media_items_total",
+            "Media items of synchronized albums and media files missing in the albums by their states.", "state", "non_matching");
+    private static final Metrics.Counter MISSING_MEDIA_ITEMS = Metrics.counter("media_items_total",
+            "Media items of synchronized albums and media files missing in the albums by their states.", "state", "missing");
+    private static final Metrics.Histogram DIFF_SECONDS = Metrics.histogram("diff_seconds",
+            "Duration of the comparison of a media directory with its album including the listing of the album.", Metrics.SECONDS_BUCKETS);
+
+    private final PhotosLibraryClient photosLibraryClient;
+    private final AlbumCache albumCache;
+    private final MediaFileIndex.Profile mediaFileIndex;
+    private final ExecutorService uploadExecutorService;
+    private final MediaScan mediaScan;
+    private final DirectorySnapshotIndex.Profile directorySnapshots;
+    private final ChecksumIndex checksumIndex;
+    private final ChecksumVerifier checksumVerifier;
+
+    /**
+     * Create a new synchronization of media directories with a local scan shared with other synchronizations (e.g., of other profiles).
+     * If an index of directory snapshots is given, the synchronization is incremental, i.e., the directories not changed since
+     * their last successful synchronization are skipped (without listing their albums and computing checksums of their files).
+     * If an index of media items by their content checksums is given, the synchronization is deduplicated, i.e., the missing media files
+     * of the same content as existing media items are not uploaded but the existing media items are added into the albums
+     * (the checksums of the missing media files are computed before their uploads).
+     * The media files matching the media items of the albums are verified by the checksums in the descriptions of the media items
+     * by a given verifier (e.g., shared by the synchronizations of several profiles).
+     *
+     * @param photosLibraryClient   the photos library client
+     * @param albumCache            the cache of albums of the profile
+     * @param mediaFileIndex        the view of the index of media files for the profile or <code>null</code> to not record the states
+     * @param uploadExecutorService the executor service to upload the media files
+     * @param mediaScan             the shared scan of the media directories
+     * @param directorySnapshots    the view of the index of directory snapshots for the profile or <code>null</code> to synchronize all the directories
+     * @param checksumIndex         the index of media items of the profile by their checksums or <code>null</code> to upload all the missing media files
+     * @param checksumVerifier      the verifier of the checksums of the matching media files
+     */
+    public MediaDirectorySync(@NotNull PhotosLibraryClient photosLibraryClient, @NotNull AlbumCache albumCache,
+                              @Nullable MediaFileIndex.Profile mediaFileIndex,
+                              @NotNull ExecutorService uploadExecutorService, @NotNull MediaScan mediaScan,
+                              @Nullable DirectorySnapshotIndex.Profile directorySnapshots, @Nullable ChecksumIndex checksumIndex,
+                              @NotNull ChecksumVerifier checksumVerifier) {
+        this.photosLibraryClient = photosLibraryClient;
+        this.albumCache = albumCache;
+        this.mediaFileIndex = mediaFileIndex;
+        this.uploadExecutorService = uploadExecutorService;
+        this.mediaScan = mediaScan;
+        this.directorySnapshots = directorySnapshots;
+        this.checksumIndex = checksumIndex;
+        this.checksumVerifier = checksumVerifier;
+    }
+
+    /**
+     * Walk given directory trees and provide all their non-hidden directories (including the given directories) to a given consumer.
+     *
+     * @param directories the roots of the directory trees
+     * @param consumer    the consumer of the directories
+     */
+    public static void walkMediaDirectories(@NotNull File[] directories, @NotNull Consumer<File> consumer) {
+        for (File directory : directories) {
+            final Path rootPath = directory.toPath();
+            try {
+                Files.walkFileTree(rootPath, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                        if (!dir.equals(rootPath) && Files.isHidden(dir)) {
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        consumer.accept(dir.toFile());
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        LoggerFactory.getLogger().log(Level.SEVERE,
+                                ResourceBundleFactory.msg(Messages.PROCESSING_DIRECTORY_ERROR_2, file, exc.getMessage()),
+                                exc);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                LoggerFactory.getLogger().log(Level.SEVERE,
+                        ResourceBundleFactory.msg(Messages.PROCESSING_DIRECTORY_ERROR_2, directory.getAbsolutePath(), e.getMessage()),
+                        e);
+            }
+        }
+    }
+
+    /**
+     * Synchronize given directory trees by a pipeline of stages of given parallelism.
+     *
+     * @param directories    the roots of the directory trees
+     * @param resolveThreads the number of threads resolving the albums of the directories
+     * @param diffThreads    the number of threads comparing the media files with the media items of the albums
+     * @param uploadThreads  the number of threads uploading the missing media files into the albums (albums uploaded concurrently)
+     * @param queueCapacity  the capacity of each queue between the stages
+     * @throws InterruptedException the calling thread has been interrupted
+     */
+    public void synchronize(@NotNull File[] directories, int resolveThreads, int diffThreads, int uploadThreads,
+                            int queueCapacity) throws InterruptedException {
+        runPipeline(consumer -> mediaScan.walkMediaDirectories(directories,
+                directory -> consumer.accept(new MediaDirectory(directory, directory.getName()))),
+                resolveThreads, diffThreads, uploadThreads, queueCapacity);
+    }
+
+    /**
+     * Synchronize given directories (without their subdirectories) by a pipeline of stages of given parallelism.
+     *
+     * @param directories    the directories
+     * @param resolveThreads the number of threads resolving the albums of the directories
+     * @param diffThreads    the number of threads comparing the media files with the media items of the albums
+     * @param uploadThreads  the number of threads uploading the missing media files into the albums (albums uploaded concurrently)
+     * @param queueCapacity  the capacity of each queue between the stages
+     * @throws InterruptedException the calling thread has been interrupted
+     */
+    public void synchronizeDirectories(@NotNull Collection<File> directories, int resolveThreads, int diffThreads, int uploadThreads,
+                                       int queueCapacity) throws InterruptedException {
+        runPipeline(consumer -> directories.forEach(
+                directory -> consumer.accept(new MediaDirectory(directory, directory.getName()))),
+                resolveThreads, diffThreads, uploadThreads, queueCapacity);
+    }
+
+    private void runPipeline(@NotNull Consumer<Consumer<MediaDirectory>> producer, int resolveThreads, int diffThreads, int uploadThreads,
+                             int queueCapacity) throws InterruptedException {
+        new StagedPipeline<MediaDirectory>(MediaDirectorySync.class.getSimpleName(), queueCapacity)
+                .addStage("check", resolveThreads, releasingMediaDirectory(this::checkMediaDirectory, false))
+                .addStage("resolve", resolveThreads, releasingMediaDirectory(this::resolveAlbum, false))
+                .addStage("diff", diffThreads, releasingMediaDirectory(this::diffMediaDirectory, false))
+                .addStage("upload", uploadThreads, releasingMediaDirectory(this::uploadMissingMediaFiles, true))
+                .run(producer);
+    }
+
+    /**
+     * Wrap a given stage function to release the directory of a media directory in the shared scan when the media directory leaves the pipeline,
+     * i.e., when it is dropped by the stage or processed by the last stage.
+     *
+     * @param stageFunction the stage function
+     * @param isLastStage   <code>true</code> iff the stage is the last one
+     * @return the wrapped stage function
+     */
+    @NotNull
+    private StagedPipeline.StageFunction<MediaDirectory> releasingMediaDirectory(@NotNull StagedPipeline.StageFunction<MediaDirectory> stageFunction,
+                                                                                 boolean isLastStage) {
+        return mediaDirectory -> {
+            boolean passed = false;
+            try {
+                passed = stageFunction.process(mediaDirectory);
+                return passed;
+            } finally {
+                if (!passed || isLastStage) {
+                    mediaScan.release(mediaDirectory.directory);
+                }
+            }
+        };
+    }
+
+    /**
+     * Get the cache of albums of the profile.
+     *
+     * @return the album cache
+     */
+    @NotNull
+    public AlbumCache getAlbumCache() {
+        return albumCache;
+    }
+
+    private void logProcessingDirectoryError(@NotNull MediaDirectory mediaDirectory, @NotNull Exception e) {
+        LoggerFactory.getLogger().log(Level.SEVERE,
+                ResourceBundleFactory.msg(Messages.PROCESSING_DIRECTORY_ERROR_2, mediaDirectory.directory.getAbsolutePath(), e.getMessage()),
+                e);
+    }
+
+    /**
+     * Check whether a given media directory has been changed since its last successful synchronization (in the incremental synchronization).
+     *
+     * @param mediaDirectory the media directory
+     * @return <code>true</code> iff the media directory should be synchronized
+     */
+    public boolean checkMediaDirectory(@NotNull MediaDirectory mediaDirectory) {
+        if (directorySnapshots == null) {
+            return true;
+        }
+        try {
+            mediaDirectory.fingerprint = DirectorySnapshotIndex.fingerprint(mediaDirectory.directory, mediaScan.getMediaFiles(mediaDirectory.directory));
+        } catch (IOException e) {
+            logProcessingDirectoryError(mediaDirectory, e);
+            return false;
+        }
+        if (directorySnapshots.isUnchanged(mediaDirectory.directory, mediaDirectory.fingerprint)) {
+            LoggerFactory.getLogger().fine(
+                    ResourceBundleFactory.msg(Messages.SKIPPING_UNCHANGED_DIRECTORY_1, mediaDirectory.directory.getAbsolutePath()));
+            return false;
+        }
+        return true;
+    }
+
+    private void putDirectorySnapshot(@NotNull MediaDirectory mediaDirectory) {
+        if (directorySnapshots != null && mediaDirectory.fingerprint != null) {
+            directorySnapshots.putSnapshot(mediaDirectory.directory, mediaDirectory.fingerprint);
+        }
+    }
+
+    /**
+     * Resolve (get or create) the album of a given media directory.
+     *
+     * @param mediaDirectory the media directory
+     * @return <code>true</code> iff the album has been resolved
+     */
+    public boolean resolveAlbum(@NotNull MediaDirectory mediaDirectory) {
+        LoggerFactory.getLogger().info(
+                ResourceBundleFactory.msg(Messages.PROCESSING_DIRECTORY_1, mediaDirectory.directory.getAbsolutePath()));
+        LoggerFactory.getLogger().info(
+                ResourceBundleFactory.msg(Messages.OPENING_ALBUM_1, mediaDirectory.albumTitle));
+        try {
+            mediaDirectory.album = GPhotos.getOrCreateAlbum(albumCache, mediaDirectory.albumTitle);
+        } catch (ApiException e) {
+            logProcessingDirectoryError(mediaDirectory, e);
+            return false;
+        }
+        LoggerFactory.getLogger().fine(
+                ResourceBundleFactory.msg(Messages.ALBUM_URL_1, mediaDirectory.album.getProductUrl()));
+        return true;
+    }
+
+    /**
+     * Compare the media files of a given media directory with the media items of its album and find the missing media files.
+     *
+     * @param mediaDirectory the media directory with the resolved album
+     * @return <code>true</code> iff there are some missing media files to upload
+     */
+    public boolean diffMediaDirectory(@NotNull MediaDirectory mediaDirectory) {
+        // the matching media files are verified in the background while the album is being compared
+        final ChecksumVerifier.Verification verification = checksumVerifier.newVerification();
+        try {
+            final File directory = mediaDirectory.directory;
+            final long diffStartNanos = System.nanoTime();
+            final long[] matchingMediaItems = {0};
+            final long[] nonMatchingMediaItems = {0};
+            // a single parser of the descriptions is reused for all the media items of the album
+            final MediaItemDescription parsedDescription = new MediaItemDescription();
+            // the media items and the missing media files are processed as they are classified
+            final Collection<MediaFile> mediaFilesOfMissingMediaItems = GPhotos.classifyMediaItemsByFiles(photosLibraryClient, mediaDirectory.album,
+                    mediaScan.getMediaFiles(directory).stream(), new GPhotos.MediaItemVisitor() {
+                        @Override
+                        public void visitMatching(@NotNull MediaItem mediaItem, @NotNull MediaFile mediaFile) throws IOException, NoSuchAlgorithmException {
+                            matchingMediaItems[0]++;
+                            final String mediaItemDescription = mediaItem.getDescription();
+                            if (LoggerFactory.isLoggable(Level.FINER)) {
+                                LoggerFactory.getLogger().finer(
+                                        ResourceBundleFactory.msg(Messages.MEDIA_ITEM_FILE_4,
+                                                mediaFile.getAbsolutePath(), describeForLog(mediaFile),
+                                                mediaItem.getProductUrl(), mediaItemDescription));
+                            }
+                            verification.submit(mediaFile, mediaItem);
+                            if (checksumIndex != null) {
+                                // the media item can be added into other albums
+                                checksumIndex.addMediaItem(mediaItem);
+                            }
+                        }
+
+                        @Override
+                        public void visitNonMatching(@NotNull MediaItem mediaItem) {
+                            nonMatchingMediaItems[0]++;
+                            final MediaFile mediaFile = new MediaFile(directory, mediaItem.getFilename());
+                            final String mediaItemDescription = mediaItem.getDescription();
+                            LoggerFactory.log(Level.FINER, Messages.MEDIA_ITEM_FILE_4,
+                                    mediaFile.getAbsolutePath(), Messages.MISSING,
+                                    mediaItem.getProductUrl(), mediaItemDescription);
+                            LoggerFactory.getLogger().warning(
+                                    ResourceBundleFactory.msg(Messages.NON_MATCHING_MEDIA_ITEM_ACTION_2,
+                                            mediaFile.getAbsolutePath(), mediaItem.getProductUrl()));
+                            if (checksumIndex != null) {
+                                // the media item can be added into other albums and it may have the content of a missing file of another name
+                                checksumIndex.addMediaItem(mediaItem);
+                                final String checksumString = parsedDescription.parse(mediaItemDescription).getChecksumString();
+                                if (checksumString != null) {
+                                    mediaDirectory.albumChecksumStrings.add(checksumString);
+                                }
+                            }
+                        }
+
+                        @Override
+                        public void visitMissing(@NotNull MediaFile mediaFile) throws IOException, NoSuchAlgorithmException {
+                            if (LoggerFactory.isLoggable(Level.FINER)) {
+                                LoggerFactory.getLogger().finer(
+                                        ResourceBundleFactory.msg(Messages.MEDIA_ITEM_FILE_4,
+                                                mediaFile.getAbsolutePath(), describeForLog(mediaFile),
+                                                Messages.MISSING, Messages.MISSING));
+                            }
+                            LoggerFactory.getLogger().warning(
+                                    ResourceBundleFactory.msg(Messages.MISSING_MEDIA_ITEM_ACTION_1,
+                                            mediaFile.getAbsolutePath()));
+                        }
+                    });
+            final int mismatchingMediaFiles = verification.complete();
+            DIFF_SECONDS.observeNanosSince(diffStartNanos);
+            ALBUM_MEDIA_ITEMS.observe(matchingMediaItems[0] + nonMatchingMediaItems[0]);
+            MATCHING_MEDIA_ITEMS.add(matchingMediaItems[0]);
+            NON_MATCHING_MEDIA_ITEMS.add(nonMatchingMediaItems[0]);
+            MISSING_MEDIA_ITEMS.add(mediaFilesOfMissingMediaItems.size());
+            LoggerFactory.getLogger().info(
+                    ResourceBundleFactory.msg(Messages.MATCHING_MEDIA_ITEMS_1, matchingMediaItems[0]));
+            LoggerFactory.getLogger().info(
+                    ResourceBundleFactory.msg(Messages.NON_MATCHING_MEDIA_ITEMS_1, nonMatchingMediaItems[0]));
+            // missing media items
+            LoggerFactory.getLogger().info(
+                    ResourceBundleFactory.msg(Messages.MISSING_MEDIA_ITEMS_1, mediaFilesOfMissingMediaItems.size()));
+            if (mismatchingMediaFiles > 0) {
+                LoggerFactory.getLogger().warning(
+                        ResourceBundleFactory.msg(Messages.MISMATCHING_MEDIA_FILES_1, mismatchingMediaFiles));
+            }
+            mediaDirectory.missingMediaFiles = mediaFilesOfMissingMediaItems;
+            if (mediaFilesOfMissingMediaItems.isEmpty()) {
+                // nothing to upload, the directory is synchronized unless its media files do not match (so they are verified again by the next run)
+                if (mismatchingMediaFiles == 0) {
+                    putDirectorySnapshot(mediaDirectory);
+                }
+                return false;
+            }
+            return true;
+        } catch (IOException | NoSuchAlgorithmException | ApiException e) {
+            logProcessingDirectoryError(mediaDirectory, e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            verification.cancel();
+        }
+    }
+
+    /**
+     * Upload the missing media files of a given media directory into its album.
+     *
+     * @param mediaDirectory the media directory with the resolved album and the missing media files
+     * @return always <code>true</code> (this is the last stage)
+     */
+    public boolean uploadMissingMediaFiles(@NotNull MediaDirectory mediaDirectory) {
+        LoggerFactory.getLogger().info(
+                ResourceBundleFactory.msg(Messages.UPLOADING_MEDIA_ITEMS));
+        try {
+            final Collection<MediaFile> mediaFilesToUpload = checksumIndex == null
+                    ? mediaDirectory.missingMediaFiles : deduplicateMissingMediaFiles(mediaDirectory);
+            final long uploadedMediaItems = GPhotos.createMediaItems(photosLibraryClient, mediaDirectory.album, mediaFilesToUpload,
+                    mediaFileIndex, uploadExecutorService, mediaItem -> {
+                        LoggerFactory.getLogger().info(
+                                ResourceBundleFactory.msg(Messages.UPLOADED_MEDIA_ITEM_2,
+                                        mediaItem.getFilename(), mediaItem.getProductUrl()));
+                        if (checksumIndex != null) {
+                            checksumIndex.addMediaItem(mediaItem);
+                        }
+                    });
+            if (uploadedMediaItems == mediaFilesToUpload.size()) {
+                // all the missing media files have been uploaded, the directory is synchronized
+                putDirectorySnapshot(mediaDirectory);
+            }
+        } catch (ApiException e) {
+            logProcessingDirectoryError(mediaDirectory, e);
+        }
+        return true;
+    }
+
+    /**
+     * Add the existing media items of the same contents as the missing media files of a given media directory into its album
+     * and get the missing media files which still have to be uploaded.
+     *
+     * @param mediaDirectory the media directory with the resolved album and the missing media files
+     * @return the missing media files to upload
+     */
+    @NotNull
+    private Collection<MediaFile> deduplicateMissingMediaFiles(@NotNull MediaDirectory mediaDirectory) {
+        // the library is listed by the first directory with missing media files
+        checksumIndex.indexLibraryMediaItems();
+        final List<MediaFile> mediaFilesToUpload = new ArrayList<>();
+        final Set<String> addedChecksumStrings = new HashSet<>();
+        final Map<String, MediaFile> mediaItemIdMediaFileMap = new LinkedHashMap<>();
+        final Map<String, String> mediaItemIdChecksumStringMap = new HashMap<>();
+        for (MediaFile mediaFile : mediaDirectory.missingMediaFiles) {
+            final String checksumString;
+            try {
+                checksumString = mediaFile.getContentChecksumString();
+            } catch (IOException | NoSuchAlgorithmException e) {
+                // the upload will report the problem
+                mediaFilesToUpload.add(mediaFile);
+                continue;
+            }
+            if (mediaDirectory.albumChecksumStrings.contains(checksumString) || !addedChecksumStrings.add(checksumString)) {
+                // the content is already in the album under another name
+                LoggerFactory.getLogger().info(
+                        ResourceBundleFactory.msg(Messages.SKIPPING_DUPLICATE_MEDIA_FILE_1, mediaFile.getAbsolutePath()));
+                continue;
+            }
+            final String mediaItemId = checksumIndex.getMediaItemId(checksumString);
+            if (mediaItemId == null) {
+                mediaFilesToUpload.add(mediaFile);
+            } else {
+                mediaItemIdMediaFileMap.put(mediaItemId, mediaFile);
+                mediaItemIdChecksumStringMap.put(mediaItemId, checksumString);
+            }
+        }
+        // add the existing media items in batches, the media files of the failed batches are uploaded
+        final List<Map.Entry<String, MediaFile>> entries = new ArrayList<>(mediaItemIdMediaFileMap.entrySet());
+        for (int from = 0; from < entries.size(); from += GPhotos.CREATE_MEDIA_ITEMS_BATCH_LIMIT) {
+            final List<Map.Entry<String, MediaFile>> batch = entries.subList(from, Math.min(entries.size(), from + GPhotos.CREATE_MEDIA_ITEMS_BATCH_LIMIT));
+            final List<String> mediaItemIds = new ArrayList<>(batch.size());
+            batch.forEach(entry -> mediaItemIds.add(entry.getKey()));
+            LoggerFactory.getLogger().fine(
+                    ResourceBundleFactory.msg(Messages.ADDING_EXISTING_MEDIA_ITEMS_1, mediaItemIds.size()));
+            try {
+                GPhotos.addMediaItemsToAlbum(photosLibraryClient, mediaDirectory.album, mediaItemIds);
+            } catch (ApiException e) {
+                // e.g., some of the media items have been deleted from the library
+                LoggerFactory.getLogger().log(Level.WARNING,
+                        ResourceBundleFactory.msg(Messages.CANNOT_ADD_EXISTING_MEDIA_ITEMS_2, mediaItemIds.size(), e.getMessage()),
+                        e);
+                // the uploaded media files will replace the media items in the index
+                batch.forEach(entry -> {
+                    checksumIndex.removeMediaItem(mediaItemIdChecksumStringMap.get(entry.getKey()), entry.getKey());
+                    mediaFilesToUpload.add(entry.getValue());
+                });
+                continue;
+            }
+            final List<MediaItem> addedMediaItems = new ArrayList<>(batch.size());
+            for (Map.Entry<String, MediaFile> entry : batch) {
+                final MediaFile mediaFile = entry.getValue();
+                LoggerFactory.getLogger().info(
+                        ResourceBundleFactory.msg(Messages.ADDED_EXISTING_MEDIA_ITEM_2, mediaFile.getAbsolutePath(), entry.getKey()));
+                if (mediaFileIndex != null) {
+                    try {
+                        mediaFileIndex.putMediaItemId(mediaFile, entry.getKey());
+                    } catch (IOException e) {
+                        // the media file will be just looked up again in the next run
+                    }
+                }
+                try {
+                    // the media item as it matches the media file (its checksum has been computed already)
+                    addedMediaItems.add(MediaItem.newBuilder()
+                            .setId(entry.getKey()).setFilename(mediaFile.getName()).setDescription(mediaFile.generateDescription()).build());
+                } catch (IOException | NoSuchAlgorithmException e) {
+                    // the count of media items of the indexed album will differ, so the album will be just listed again in the next run
+                }
+            }
+            // keep the count of media items of the indexed album up to date, so the album is not listed again just because of them
+            final AlbumMediaItemIndex albumMediaItemIndex = GPhotos.getAlbumMediaItemIndex();
+            if (albumMediaItemIndex != null && !addedMediaItems.isEmpty()) {
+                albumMediaItemIndex.addMediaItems(mediaDirectory.album.getId(), addedMediaItems);
+            }
+        }
+        return mediaFilesToUpload;
+    }
+
+    /**
+     * Describe a given media file for the log without computing its checksum just for the log,
+     * i.e., the description is generated only if the checksum is already known (computed or indexed).
+     *
+     * @param mediaFile the media file
+     * @return the media item description string of the media file or {@link Messages#MISSING}
+     * @throws NoSuchAlgorithmException cannot find the checksum algorithm
+     * @throws IOException              cannot access the file
+     */
+    private static String describeForLog(@NotNull MediaFile mediaFile) throws IOException, NoSuchAlgorithmException {
+        return mediaFile.hasContentChecksum() ? mediaFile.generateDescription() : Messages.MISSING;
+    }
+
+    /**
+     * A media directory processed by the stages of the synchronization.
+     */
+    public static class MediaDirectory {
+        private final File directory;
+        private final String albumTitle;
+        private Album album;
+        private Collection<MediaFile> missingMediaFiles = Collections.emptyList();
+        private final Set<String> albumChecksumStrings = new HashSet<>();
+        private String fingerprint;
+
+        /**
+         * Create a new media directory to synchronize with an album of a given title.
+         *
+         * @param directory  the directory
+         * @param albumTitle the album title
+         */
+        public MediaDirectory(@NotNull File directory, @NotNull String albumTitle) {
+            this.directory = directory;
+            this.albumTitle = albumTitle;
+        }
+
+        /**
+         * Get the directory.
+         *
+         * @return the directory
+         */
+        @NotNull
+        public File getDirectory() {
+            return directory;
+        }
+
+        /**
+         * Get the resolved album of the directory.
+         *
+         * @return the album or <code>null</code> if not resolved yet
+         */
+        @Nullable
+        public Album getAlbum() {
+            return album;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package io.gitlab.rychly.gphotos_uploader.sync;
+
+import io.gitlab.rychly.gphotos_uploader.gphotos.MediaFile;
+import io.gitlab.rychly.gphotos_uploader.i18n.Messages;
+import io.gitlab.rychly.gphotos_uploader.i18n.ResourceBundleFactory;
+import io.gitlab.rychly.gphotos_uploader.index.DirectorySnapshotIndex;
+import io.gitlab.rychly.gphotos_uploader.logger.LoggerFactory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * A watcher of media directory trees which provides the changed directories in batches as soon as their media files are completely written.
+ * <p>
+ * The changes of a directory are debounced, i.e., the directory is ready after a given quiet period without any changes,
+ * and then the completion of writing its media files is checked, i.e., the directory is ready only if the names, sizes,
+ * and last modification times of its media files have not changed during another quiet period.
+ */
+public class MediaDirectoryWatcher {
+    /**
+     * Default quiet period of a changed directory before it is synchronized.
+     */
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 5000;
+
+    private final long debounceMillis;
+    private final Map<WatchKey, Path> watchKeyDirectoryMap = new HashMap<>();
+    private final Map<Path, PendingDirectory> pendingDirectories = new LinkedHashMap<>();
+
+    /**
+     * Create a new watcher with a given quiet period of the changed directories.
+     *
+     * @param debounceMillis the quiet period in milliseconds
+     */
+    public MediaDirectoryWatcher(long debounceMillis) {
+        this.debounceMillis = Math.max(0, debounceMillis);
+    }
+
+    /**
+     * Watch given directory trees (including new subdirectories) until the calling thread is interrupted
+     * and provide batches of the changed directories which are ready to be synchronized to a given consumer (in the calling thread).
+     *
+     * @param directories the roots of the directory trees
+     * @param consumer    the consumer of the batches of the changed directories
+     * @throws IOException          cannot watch the directories
+     * @throws InterruptedException the calling thread has been interrupted
+     */
+    public void watch(@NotNull File[] directories, @NotNull Consumer<List<File>> consumer) throws IOException, InterruptedException {
+        try (final WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            MediaDirectorySync.walkMediaDirectories(directories, directory -> register(watchService, directory.toPath()));
+            LoggerFactory.getLogger().info(
+                    ResourceBundleFactory.msg(Messages.WATCHING_DIRECTORIES_1, watchKeyDirectoryMap.size()));
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey watchKey = watchService.poll(Math.max(debounceMillis, 1), TimeUnit.MILLISECONDS);
+                while (watchKey != null) {
+                    processEvents(watchService, watchKey);
+                    watchKey = watchService.poll();
+                }
+                final List<File> readyDirectories = getReadyDirectories();
+                if (!readyDirectories.isEmpty()) {
+                    consumer.accept(readyDirectories);
+                }
+            }
+            throw new InterruptedException();
+        }
+    }
+
+    private void register(@NotNull WatchService watchService, @NotNull Path directory) {
+        try {
+            watchKeyDirectoryMap.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), directory);
+        } catch (IOException e) {
+            LoggerFactory.getLogger().log(Level.SEVERE,
+                    ResourceBundleFactory.msg(Messages.PROCESSING_DIRECTORY_ERROR_2, directory, e.getMessage()),
+                    e);
+        }
+    }
+
+    private void processEvents(@NotNull WatchService watchService, @NotNull WatchKey watchKey) {
+        final Path directory = watchKeyDirectoryMap.get(watchKey);
+        for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
+            if (watchEvent.kind() == OVERFLOW) {
+                // some events have been lost, all the watched directories may have been changed
+                watchKeyDirectoryMap.values().forEach(this::markPending);
+                continue;
+            }
+            if (directory == null) {
+                continue;
+            }
+            final Path child = directory.resolve((Path) watchEvent.context());
+            if (watchEvent.kind() == ENTRY_CREATE && Files.isDirectory(child)) {
+                // watch the new subtree and synchronize its directories (they may have been filled before being watched)
+                MediaDirectorySync.walkMediaDirectories(new File[]{child.toFile()}, subdirectory -> {
+                    register(watchService, subdirectory.toPath());
+                    markPending(subdirectory.toPath());
+                });
+            } else {
+                markPending(directory);
+            }
+        }
+        if (!watchKey.reset()) {
+            // the directory is not accessible anymore
+            watchKeyDirectoryMap.remove(watchKey);
+            if (directory != null) {
+                pendingDirectories.remove(directory);
+            }
+        }
+    }
+
+    private void markPending(@NotNull Path directory) {
+        pendingDirectories.computeIfAbsent(directory, key -> new PendingDirectory()).lastChangeMillis = System.currentTimeMillis();
+    }
+
+    @NotNull
+    private List<File> getReadyDirectories() {
+        final long nowMillis = System.currentTimeMillis();
+        final List<File> readyDirectories = new ArrayList<>();
+        final Iterator<Map.Entry<Path, PendingDirectory>> iterator = pendingDirectories.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Path, PendingDirectory> entry = iterator.next();
+            final PendingDirectory pendingDirectory = entry.getValue();
+            if (nowMillis - pendingDirectory.lastChangeMillis < debounceMillis) {
+                continue;
+            }
+            final File directory = entry.getKey().toFile();
+            final String fingerprint = fingerprint(directory);
+            if (fingerprint == null) {
+                // the directory has been removed
+                iterator.remove();
+            } else if (fingerprint.equals(pendingDirectory.fingerprint)) {
+                // the media files have not been changed during the last quiet period, so they are completely written
+                readyDirectories.add(directory);
+                iterator.remove();
+            } else {
+                pendingDirectory.fingerprint = fingerprint;
+                pendingDirectory.lastChangeMillis = nowMillis;
+            }
+        }
+        return readyDirectories;
+    }
+
+    @Nullable
+    private static String fingerprint(@NotNull File directory) {
+        try {
+            return DirectorySnapshotIndex.fingerprint(directory, MediaFile.fileFinder(directory).collect(Collectors.toList()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static class PendingDirectory {
+        private long lastChangeMillis;
+        private String fingerprint;
+    }
+}
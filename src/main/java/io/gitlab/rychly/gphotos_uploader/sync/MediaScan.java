@@ -0,0 +1,195 @@
+package io.gitlab.rychly.gphotos_uploader.sync;
+
+import io.gitlab.rychly.gphotos_uploader.gphotos.MediaFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * A memo of a local scan of media directories shared by synchronizations of several credentials profiles.
+ * The directory trees are walked and the media files of each directory are listed just once, and the same media file instances
+ * are provided to all the synchronizations, so the checksum of each media file is computed just once (see {@link MediaFile#getContentChecksum()}).
+ * The media files of a directory are kept only until all the synchronizations release the directory (see {@link #release(File)}).
+ */
+public class MediaScan {
+    private final int consumers;
+    private final Map<List<File>, Walk> walks = new HashMap<>();
+    private final ConcurrentMap<File, Map<String, MediaFile>> directoryMediaFiles = new ConcurrentHashMap<>();
+    private final ConcurrentMap<File, AtomicInteger> directoryReleases = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new scan used by a single synchronization.
+     */
+    public MediaScan() {
+        this(1);
+    }
+
+    /**
+     * Create a new scan shared by a given number of synchronizations.
+     *
+     * @param consumers the number of synchronizations which release each directory when they are done with it
+     */
+    public MediaScan(int consumers) {
+        this.consumers = Math.max(1, consumers);
+    }
+
+    /**
+     * Walk given directory trees and provide all their non-hidden directories (including the given directories) to a given consumer.
+     * The trees are walked just once and each directory is provided as soon as it is found, the next walks of the same trees
+     * replay the directories of the first walk (and follow the first walk if it is still running concurrently).
+     *
+     * @param directories the roots of the directory trees
+     * @param consumer    the consumer of the directories
+     */
+    public void walkMediaDirectories(@NotNull File[] directories, @NotNull Consumer<File> consumer) {
+        final List<File> key = Arrays.asList(directories.clone());
+        final Walk walk;
+        final boolean isWalking;
+        synchronized (walks) {
+            final Walk existingWalk = walks.get(key);
+            isWalking = existingWalk == null;
+            walk = isWalking ? new Walk() : existingWalk;
+            if (isWalking) {
+                walks.put(key, walk);
+            }
+        }
+        if (!isWalking) {
+            walk.replay(consumer);
+            return;
+        }
+        boolean isCompleted = false;
+        try {
+            MediaDirectorySync.walkMediaDirectories(directories, directory -> {
+                walk.add(directory);
+                consumer.accept(directory);
+            });
+            isCompleted = true;
+        } finally {
+            if (!isCompleted) {
+                // an interrupted walk is not replayed, the next walk starts over
+                synchronized (walks) {
+                    walks.remove(key);
+                }
+            }
+            walk.finish();
+        }
+    }
+
+    /**
+     * Get all media files in a given directory, the files are listed just once.
+     *
+     * @param directory the directory
+     * @return the collection of the media files ordered by their names
+     * @throws FileNotFoundException cannot find the directory
+     */
+    @NotNull
+    public Collection<MediaFile> getMediaFiles(@NotNull File directory) throws FileNotFoundException {
+        return getNameMediaFileMap(directory).values();
+    }
+
+    /**
+     * Get a media file of a given name in a given directory, the scanned instance is provided if the media file has been listed.
+     *
+     * @param directory the directory
+     * @param fileName  the file name
+     * @return the media file
+     * @throws FileNotFoundException cannot find the directory
+     */
+    @NotNull
+    public MediaFile getMediaFile(@NotNull File directory, @NotNull String fileName) throws FileNotFoundException {
+        final MediaFile mediaFile = getNameMediaFileMap(directory).get(fileName);
+        return mediaFile != null ? mediaFile : new MediaFile(directory, fileName);
+    }
+
+    /**
+     * Release a given directory by a synchronization which is done with it.
+     * The media files of the directory are forgotten when the directory is released by all the synchronizations sharing the scan.
+     *
+     * @param directory the directory
+     */
+    public void release(@NotNull File directory) {
+        final File absoluteDirectory = directory.getAbsoluteFile();
+        final AtomicInteger releases = directoryReleases.computeIfAbsent(absoluteDirectory, key -> new AtomicInteger());
+        if (releases.incrementAndGet() >= consumers) {
+            directoryReleases.remove(absoluteDirectory, releases);
+            directoryMediaFiles.remove(absoluteDirectory);
+        }
+    }
+
+    /**
+     * Forget the media files listed in given directories, e.g., if the directories have been changed, so they are listed again.
+     *
+     * @param directories the directories
+     */
+    public void invalidate(@NotNull Collection<File> directories) {
+        for (File directory : directories) {
+            directoryMediaFiles.remove(directory.getAbsoluteFile());
+            directoryReleases.remove(directory.getAbsoluteFile());
+        }
+    }
+
+    @NotNull
+    private Map<String, MediaFile> getNameMediaFileMap(@NotNull File directory) throws FileNotFoundException {
+        try {
+            return directoryMediaFiles.computeIfAbsent(directory.getAbsoluteFile(), absoluteDirectory -> {
+                try {
+                    return Collections.unmodifiableMap(MediaFile.fileFinder(absoluteDirectory)
+                            .collect(Collectors.toMap(MediaFile::getName, mediaFile -> mediaFile, (v1, v2) -> v1, LinkedHashMap::new)));
+                } catch (FileNotFoundException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw (FileNotFoundException) e.getCause();
+        }
+    }
+
+    /**
+     * Directories found by a walk of directory trees, which can be followed by other walks while it is running.
+     */
+    private static class Walk {
+        private final List<File> directories = new ArrayList<>();
+        private boolean isFinished = false;
+
+        private synchronized void add(@NotNull File directory) {
+            directories.add(directory);
+            notifyAll();
+        }
+
+        private synchronized void finish() {
+            isFinished = true;
+            notifyAll();
+        }
+
+        private void replay(@NotNull Consumer<File> consumer) {
+            int index = 0;
+            while (true) {
+                final File directory;
+                synchronized (this) {
+                    while (index == directories.size() && !isFinished) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                    if (index == directories.size()) {
+                        return;
+                    }
+                    directory = directories.get(index++);
+                }
+                // the consumer is called without the lock, so it does not block the walk
+                consumer.accept(directory);
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package io.gitlab.rychly.gphotos_uploader.sync;
+
+import io.gitlab.rychly.gphotos_uploader.logger.LoggerFactory;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * A pipeline of stages connected by bounded queues where each stage processes items by its own pool of worker threads.
+ * An item is passed from a stage to the next stage only if the stage function accepts it.
+ *
+ * @param <T> the type of items processed by the pipeline
+ */
+public class StagedPipeline<T> {
+    /**
+     * Marker of the end of items in a queue (one marker for each worker thread of the consuming stage).
+     */
+    private static final Object END_OF_ITEMS = new Object();
+
+    /**
+     * Maximal time to wait for the worker threads to stop when the pipeline is interrupted.
+     */
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+
+    private final String name;
+    private final int queueCapacity;
+    private final List<Stage> stages = new ArrayList<>();
+
+    /**
+     * Create a new pipeline without any stages.
+     *
+     * @param name          the name of the pipeline (for the names of its worker threads)
+     * @param queueCapacity the capacity of each queue between the stages
+     */
+    public StagedPipeline(@NotNull String name, int queueCapacity) {
+        this.name = name;
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * Add a new stage at the end of the pipeline.
+     *
+     * @param stageName     the name of the stage
+     * @param threads       the number of worker threads of the stage
+     * @param stageFunction the function of the stage processing the items
+     * @return this pipeline
+     */
+    @NotNull
+    public StagedPipeline<T> addStage(@NotNull String stageName, int threads, @NotNull StageFunction<T> stageFunction) {
+        stages.add(new Stage(stageName, Math.max(1, threads), stageFunction));
+        return this;
+    }
+
+    /**
+     * Run the pipeline on items provided by a given producer and wait until all the items are processed by all the stages.
+     * The producer is running in the calling thread and it is blocked if the first queue is full.
+     *
+     * @param producer the producer of the items which get a consumer to feed the items into the pipeline
+     * @throws InterruptedException the calling thread has been interrupted
+     */
+    public void run(@NotNull Consumer<Consumer<T>> producer) throws InterruptedException {
+        if (stages.isEmpty()) {
+            return;
+        }
+        // connect the stages by queues and start their worker threads
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < stages.size(); i++) {
+            final Stage stage = stages.get(i);
+            final Stage nextStage = i + 1 < stages.size() ? stages.get(i + 1) : null;
+            for (int j = 0; j < stage.threads; j++) {
+                final Thread thread = new Thread(() -> stage.work(nextStage), name + "-" + stage.stageName + "-" + j);
+                thread.setDaemon(true);
+                threads.add(thread);
+            }
+        }
+        threads.forEach(Thread::start);
+        final Stage firstStage = stages.get(0);
+        try {
+            producer.accept(item -> {
+                try {
+                    firstStage.queue.put(item);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            });
+            // the end of items for all the worker threads of the first stage
+            firstStage.finishInput();
+            // wait for the last stage
+            stages.get(stages.size() - 1).finished.await();
+        } catch (InterruptedException e) {
+            // the worker threads would wait for more items forever
+            stopWorkers(threads);
+            throw e;
+        } catch (RuntimeException e) {
+            stopWorkers(threads);
+            if (e instanceof IllegalStateException && e.getCause() instanceof InterruptedException) {
+                // the producer has been interrupted while feeding the pipeline
+                Thread.interrupted();
+                throw (InterruptedException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Interrupt given worker threads and wait for them to stop (for a limited time).
+     * The interrupt status of the calling thread is preserved.
+     *
+     * @param threads the worker threads
+     */
+    private static void stopWorkers(@NotNull List<Thread> threads) {
+        threads.forEach(Thread::interrupt);
+        boolean interrupted = Thread.interrupted();
+        final long deadlineMillis = System.currentTimeMillis() + STOP_TIMEOUT_MILLIS;
+        for (Thread thread : threads) {
+            long remainingMillis;
+            while (thread.isAlive() && (remainingMillis = deadlineMillis - System.currentTimeMillis()) > 0) {
+                try {
+                    thread.join(remainingMillis);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A function processing items in a stage.
+     *
+     * @param <T> the type of the items
+     */
+    @FunctionalInterface
+    public interface StageFunction<T> {
+        /**
+         * Process a given item.
+         *
+         * @param item the item to process
+         * @return <code>true</code> to pass the item into the next stage, <code>false</code> to drop it
+         * @throws Exception the item cannot be processed (it is dropped)
+         */
+        boolean process(T item) throws Exception;
+    }
+
+    private class Stage {
+        private final String stageName;
+        private final int threads;
+        private final StageFunction<T> stageFunction;
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicInteger runningThreads;
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        private Stage(@NotNull String stageName, int threads, @NotNull StageFunction<T> stageFunction) {
+            this.stageName = stageName;
+            this.threads = threads;
+            this.stageFunction = stageFunction;
+            this.runningThreads = new AtomicInteger(threads);
+        }
+
+        private void finishInput() throws InterruptedException {
+            for (int i = 0; i < threads; i++) {
+                queue.put(END_OF_ITEMS);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void work(Stage nextStage) {
+            try {
+                Object item;
+                while ((item = queue.take()) != END_OF_ITEMS) {
+                    boolean passed;
+                    try {
+                        passed = stageFunction.process((T) item);
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        LoggerFactory.getLogger().log(Level.SEVERE, e.getMessage(), e);
+                        passed = false;
+                    }
+                    if (passed && nextStage != null) {
+                        nextStage.queue.put(item);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // the last worker thread of the stage finishes the input of the next stage, even if the stage has been interrupted or failed
+                if (runningThreads.decrementAndGet() == 0) {
+                    try {
+                        if (nextStage != null) {
+                            nextStage.finishInput();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }
+        }
+    }
+}